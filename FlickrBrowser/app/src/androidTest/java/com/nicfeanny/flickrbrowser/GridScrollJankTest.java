@@ -0,0 +1,67 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Flings the photo grid up and down on a device and reports the frame timings collected by
+ * {@link FrameMonitor}, so scrolling regressions show up as numbers in the test output.
+ *
+ * Needs network access for the feed and thumbnails.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GridScrollJankTest {
+    private static final String TAG = "GridScrollJankTest";
+
+    private static final int FLINGS = 10;
+    //generous, this is here to catch a regression, not to grade the device
+    private static final double MAX_JANK_PERCENT = 25;
+
+    @Rule
+    public final ActivityTestRule<MainActivity> activityRule = new ActivityTestRule<>(MainActivity.class);
+
+    @Test
+    public void scrollingTheGrid_staysSmooth() throws Throwable {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return;
+        }
+        MainActivity activity = activityRule.getActivity();
+        final RecyclerView recyclerView = (RecyclerView) activity.findViewById(R.id.recycler_view);
+
+        long deadline = SystemClock.uptimeMillis() + 20000;
+        while (recyclerView.getAdapter().getItemCount() == 0 && SystemClock.uptimeMillis() < deadline) {
+            SystemClock.sleep(100);
+        }
+        assertTrue("no photos loaded", recyclerView.getAdapter().getItemCount() > 0);
+
+        FrameStats stats = activity.getScrollFrameStats();
+        stats.reset();
+        for (int i = 0; i < FLINGS; i++) {
+            final int direction = i % 2 == 0 ? 1 : -1;
+            activityRule.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    recyclerView.smoothScrollBy(0, direction * recyclerView.getHeight() * 3);
+                }
+            });
+            SystemClock.sleep(1500);
+        }
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+        Log.i(TAG, "scrollingTheGrid: " + stats.summary());
+        System.out.println("grid scroll: " + stats.summary());
+        assertTrue("no frames were timed", stats.getFrameCount() > 0);
+        assertTrue(stats.summary(), stats.getJankPercent() < MAX_JANK_PERCENT);
+    }
+}
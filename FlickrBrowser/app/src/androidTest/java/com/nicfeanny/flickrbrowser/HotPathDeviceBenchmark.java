@@ -0,0 +1,103 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * The parse and model hot paths of {@link HotPathBenchmark}, on a device (ART rather than
+ * the JVM, real android.net.Uri and org.json). The network path isn't measured here, a
+ * phone's network is too noisy to compare runs with.
+ *
+ * The JSON results are written to the app's external files dir, benchmarks/; pull them with
+ * adb. Pass -e benchmark.baseline <dir on the device> to fail on regressions.
+ */
+@RunWith(AndroidJUnit4.class)
+public class HotPathDeviceBenchmark {
+    private static final String TAG = "HotPathDeviceBenchmark";
+    private static final String BASE_URL = "https://api.flickr.com/services/feeds/photos_public.gne";
+
+    private static final BenchmarkRunner runner = new BenchmarkRunner("HotPathDeviceBenchmark");
+
+    private static String smallFeed;
+    private static String mediumFeed;
+    private static String hugeFeed;
+
+    @BeforeClass
+    public static void loadFixtures() throws Exception {
+        byte[] recorded = Fixtures.read("feeds/feed_android_nougat.json");
+        smallFeed = new String(recorded, "UTF-8");
+        mediumFeed = new String(Fixtures.repeatItems(recorded, 10), "UTF-8");
+        hugeFeed = new String(Fixtures.repeatItems(recorded, 250), "UTF-8");
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        File output = InstrumentationRegistry.getTargetContext().getExternalFilesDir("benchmarks");
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        String baseline = arguments.getString(BenchmarkRunner.BASELINE_PROPERTY);
+        String tolerance = arguments.getString(BenchmarkRunner.TOLERANCE_PROPERTY);
+        Log.i(TAG, "writeResults: " + output);
+        runner.finish(output, baseline == null ? null : new File(baseline),
+                tolerance == null ? BenchmarkRunner.DEFAULT_TOLERANCE : Double.parseDouble(tolerance));
+    }
+
+    @Test
+    public void parse_smallMediumAndHugeFeeds() throws Exception {
+        parse("parse_20_photos", smallFeed, 20, 100, 20);
+        parse("parse_200_photos", mediumFeed, 200, 10, 20);
+        parse("parse_5000_photos", hugeFeed, 5000, 2, 5);
+    }
+
+    private static void parse(String name, final String feed, final int photos, int warmup, int samples) throws Exception {
+        runner.measure(name, warmup, samples, 1, new BenchmarkRunner.Body() {
+            @Override
+            public Object run() throws Exception {
+                int parsed = GetFlickrJSONData.parseJSONData(feed).size();
+                assertEquals(photos, parsed);
+                return parsed;
+            }
+        });
+    }
+
+    @Test
+    public void createUri() throws Exception {
+        runner.measure("create_uri", 10, 20, 1000, new BenchmarkRunner.Body() {
+            private int page;
+
+            @Override
+            public Object run() {
+                return GetFlickrJSONData.createUri(BASE_URL, "android, nougat", "en-us", true, ++page % 10);
+            }
+        });
+    }
+
+    @Test
+    public void photoConstruction() throws Exception {
+        final String image = "https://farm5.staticflickr.com/4353/36345416412_3b5ad5c87e_m.jpg";
+        final String link = Photo.largeImageUrl(image);
+        final String[] tags = {"android", "nougat", "pixel", "sdk"};
+        runner.measure("photo_from_strings", 10, 20, 10000, new BenchmarkRunner.Body() {
+            @Override
+            public Object run() {
+                return new Photo("title", "author", "1@N00", link, "android nougat pixel sdk", image);
+            }
+        });
+        runner.measure("photo_from_parser", 10, 20, 10000, new BenchmarkRunner.Body() {
+            @Override
+            public Object run() {
+                return new Photo("title", "author", "1@N00", tags, image);
+            }
+        });
+    }
+}
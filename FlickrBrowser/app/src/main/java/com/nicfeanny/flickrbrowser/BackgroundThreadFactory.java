@@ -0,0 +1,30 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.os.Process;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+*   Names the worker threads (so they are easy to spot in a trace) and drops them to
+*   background priority so downloads and decoding don't compete with the UI thread.
+* */
+class BackgroundThreadFactory implements ThreadFactory {
+    private final String name;
+    private final AtomicInteger count = new AtomicInteger();
+
+    BackgroundThreadFactory(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+        return new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }
+        }, name + "-" + count.incrementAndGet());
+    }
+}
@@ -0,0 +1,94 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+*   First tier of the image cache: decoded bitmaps kept in memory.
+*
+*   LruCache normally counts entries; sizeOf makes it count bytes instead so the limit
+*   means the same thing whether the cells hold tiny or large thumbnails.
+*
+*   Bitmaps are decoded to fit a view, so the same URL can be wanted bigger than it was
+*   decoded for the first time. Each entry's inSampleSize is kept beside it and get(url,
+*   width, height) only returns a bitmap that was decoded at full size or is at least as big
+*   as asked for; anything else is a miss and is decoded again.
+*
+*   Under memory pressure (see MemoryGovernor) it is trimmed to a part of maxSize and kept
+*   there until the pressure is over. LruCache.resize is API 21, so add() does the keeping.
+* */
+class BitmapMemoryCache extends LruCache<String, Bitmap> implements MemoryGovernor.Trimmable {
+    private final ImageCacheStats stats;
+    //maxSize() unless there is memory pressure
+    private volatile int limit;
+    //inSampleSize of each entry which wasn't decoded at full size; guarded by this, as LruCache is
+    private final Map<String, Integer> sampleSizes = new HashMap<>();
+
+    BitmapMemoryCache(int maxBytes, ImageCacheStats stats) {
+        super(maxBytes);
+        this.stats = stats;
+        limit = maxBytes;
+    }
+
+    //a bitmap at full size
+    void add(String url, Bitmap bitmap) {
+        add(url, bitmap, 1);
+    }
+
+    //put, then back down to the lowered limit if there is one
+    synchronized void add(String url, Bitmap bitmap, int sampleSize) {
+        //before the put, which may evict (and forget) it straight away if it's too big
+        if (sampleSize > 1) {
+            sampleSizes.put(url, sampleSize);
+        } else {
+            sampleSizes.remove(url);
+        }
+        put(url, bitmap);
+        int current = limit;
+        if (current < maxSize() && size() > current) {
+            trimToSize(current);
+        }
+    }
+
+    //url's bitmap if it is big enough for width x height (0 for full size), else null
+    synchronized Bitmap get(String url, int width, int height) {
+        Bitmap bitmap = get(url);
+        if (bitmap == null || !sampleSizes.containsKey(url)) {
+            return bitmap;
+        }
+        if (width > 0 && height > 0 && bitmap.getWidth() >= width && bitmap.getHeight() >= height) {
+            return bitmap;
+        }
+        return null;
+    }
+
+    @Override
+    public void onMemoryPressure(MemoryGovernor.Pressure pressure) {
+        limit = pressure.scale(maxSize());
+        trimToSize(limit);
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    @Override
+    protected int sizeOf(String url, Bitmap bitmap) {
+        //getByteCount is API 12, getAllocationByteCount would need 19
+        return bitmap.getByteCount();
+    }
+
+    @Override
+    protected synchronized void entryRemoved(boolean evicted, String url, Bitmap oldValue, Bitmap newValue) {
+        //a replaced entry's size was set by add
+        if (newValue == null) {
+            sampleSizes.remove(url);
+        }
+        if (evicted) {
+            stats.memoryEviction();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+*   A small pool of byte arrays that downloads read into.
+*
+*   Every feed download needs a buffer roughly the size of the response, and allocating
+*   a fresh one each time means a large short-lived array for the garbage collector to
+*   clean up on every fetch. Instead we hand arrays back here once the body has been
+*   decoded/parsed and give them out again on the next download.
+*
+*   Only a few buffers are kept and anything bigger than maxBufferSize is left for the
+*   garbage collector so one enormous response can't pin that much memory for ever.
+*   Under memory pressure (MemoryGovernor) it keeps half as many, and from LOW on none.
+* */
+class ByteBufferPool implements MemoryGovernor.Trimmable {
+    private final int maxBuffers;
+    //maxBuffers unless there is memory pressure
+    private int limit;
+    private final int maxBufferSize;
+    private final List<byte[]> freeBuffers = new ArrayList<>();
+
+    ByteBufferPool(int maxBuffers, int maxBufferSize) {
+        this.maxBuffers = maxBuffers;
+        this.maxBufferSize = maxBufferSize;
+        limit = maxBuffers;
+    }
+
+    /*
+    * Returns a buffer of at least minSize bytes; the smallest pooled one that fits,
+    * or a new one if none do. The contents are NOT cleared.
+    * */
+    synchronized byte[] acquire(int minSize) {
+        int best = -1;
+        for (int i = 0; i < freeBuffers.size(); i++) {
+            byte[] candidate = freeBuffers.get(i);
+            if (candidate.length >= minSize && (best == -1 || candidate.length < freeBuffers.get(best).length)) {
+                best = i;
+            }
+        }
+        if (best != -1) {
+            return freeBuffers.remove(best);
+        }
+        return new byte[minSize];
+    }
+
+    synchronized void release(byte[] buffer) {
+        if (buffer == null || buffer.length > maxBufferSize || limit == 0) {
+            return;
+        }
+        for (byte[] pooled : freeBuffers) {
+            if (pooled == buffer) {
+                //already returned, don't hand the same array out twice
+                return;
+            }
+        }
+        if (freeBuffers.size() >= limit) {
+            //drop the smallest, a bigger buffer is more likely to fit the next response
+            int smallest = 0;
+            for (int i = 1; i < freeBuffers.size(); i++) {
+                if (freeBuffers.get(i).length < freeBuffers.get(smallest).length) {
+                    smallest = i;
+                }
+            }
+            if (freeBuffers.get(smallest).length >= buffer.length) {
+                return;
+            }
+            freeBuffers.remove(smallest);
+        }
+        freeBuffers.add(buffer);
+    }
+
+    @Override
+    public synchronized void onMemoryPressure(MemoryGovernor.Pressure pressure) {
+        limit = pressure.ordinal() >= MemoryGovernor.Pressure.LOW.ordinal() ? 0 : pressure.scale(maxBuffers);
+        //the biggest go first, they're the most memory
+        while (freeBuffers.size() > limit) {
+            int largest = 0;
+            for (int i = 1; i < freeBuffers.size(); i++) {
+                if (freeBuffers.get(i).length > freeBuffers.get(largest).length) {
+                    largest = i;
+                }
+            }
+            freeBuffers.remove(largest);
+        }
+    }
+
+    synchronized int pooledBytes() {
+        int total = 0;
+        for (byte[] buffer : freeBuffers) {
+            total += buffer.length;
+        }
+        return total;
+    }
+}
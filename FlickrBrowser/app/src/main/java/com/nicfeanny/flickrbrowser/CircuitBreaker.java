@@ -0,0 +1,136 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+*   Stops us hammering a host which is down.
+*
+*   - CLOSED: requests go through. failureThreshold failures in a row (timeouts, network
+*     errors, 5xx; see DownloadResult.isTransient) open the circuit.
+*   - OPEN: requests fail straight away with CIRCUIT_OPEN instead of each waiting for a
+*     timeout, until openMillis have passed.
+*   - HALF_OPEN: one trial request is let through. If it works the circuit closes again,
+*     if not it opens for another openMillis.
+*
+*   GetRawData uses one breaker per host (forUrl), so the feed API being down doesn't stop
+*   thumbnails coming from the image servers and vice versa.
+* */
+class CircuitBreaker {
+    private static final String TAG = "CircuitBreaker";
+
+    static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    static final long DEFAULT_OPEN_MILLIS = 30 * 1000;
+
+    private static final Map<String, CircuitBreaker> byHost = new HashMap<>();
+
+    enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    //the shared breaker for the host (and port) of url
+    static CircuitBreaker forUrl(String url) {
+        String host;
+        try {
+            host = new URL(url).getAuthority();
+        } catch (MalformedURLException e) {
+            //the download will fail on it anyway, it doesn't need a breaker of its own
+            host = "";
+        }
+        synchronized (byHost) {
+            CircuitBreaker breaker = byHost.get(host);
+            if (breaker == null) {
+                breaker = new CircuitBreaker(host, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+                byHost.put(host, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    //false means fail the request now without sending it
+    synchronized boolean allowRequest() {
+        switch (state) {
+            case OPEN:
+                if (now() - openedAt < openMillis) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                DebugLog.d(TAG, "%s: half open, letting a trial request through", name);
+                trialInFlight = true;
+                return true;
+            case HALF_OPEN:
+                //only the one trial at a time
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    //the host answered, whatever it said
+    synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            DebugLog.d(TAG, "%s: closed again", name);
+        }
+        state = State.CLOSED;
+        failures = 0;
+        trialInFlight = false;
+    }
+
+    synchronized void onFailure() {
+        trialInFlight = false;
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            if (state != State.OPEN) {
+                DebugLog.d(TAG, "%s: open for %dms after %d failures", name, openMillis, failures);
+            }
+            state = State.OPEN;
+            openedAt = now();
+        }
+    }
+
+    //records how a request allowed by allowRequest() ended
+    void record(DownloadResult result) {
+        if (result.isTransient()) {
+            onFailure();
+        } else if (result.getHttpCode() != -1) {
+            onSuccess();
+        } else {
+            //never got as far as the host (bad URL, no permission): says nothing about its health
+            synchronized (this) {
+                trialInFlight = false;
+            }
+        }
+    }
+
+    synchronized State getState() {
+        //an expired OPEN is reported as what the next request will see
+        if (state == State.OPEN && now() - openedAt >= openMillis) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    //overridden by tests to move time along
+    long now() {
+        return System.currentTimeMillis();
+    }
+}
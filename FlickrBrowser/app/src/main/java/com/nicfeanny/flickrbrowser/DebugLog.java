@@ -0,0 +1,84 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.util.Log;
+
+import java.util.Locale;
+
+/*
+*   Debug logging which costs (next to) nothing when it's turned off.
+*
+*   Log.d(TAG, "..." + photo) builds its String before Log even gets to decide whether to
+*   print it, and in a loop over a feed that's a lot of garbage for nothing. Here the
+*   message is a format plus its arguments and is only put together if logging is on,
+*   which is one static boolean check otherwise. Don't concatenate in the call, pass the
+*   values as arguments:
+*       DebugLog.d(TAG, "save: %d photos for %s", photos.size(), uri);
+*
+*   It's on in debug builds. In a release build it can be turned on without a rebuild with
+*       adb shell setprop log.tag.FlickrBrowser DEBUG
+*   (read once, when the app starts). Errors still go straight to Log.e.
+*
+*   An int or long argument would be boxed before the check, so one or two of them go to
+*   the long overloads below, which only box once logging is on. A call with more or mixed
+*   arguments on a path that runs every frame should sit inside if (DebugLog.isEnabled()).
+* */
+final class DebugLog {
+    static final String APP_TAG = "FlickrBrowser";
+
+    private static boolean enabled = BuildConfig.DEBUG || Log.isLoggable(APP_TAG, Log.DEBUG);
+
+    private DebugLog() {
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    //for tests and benchmarks
+    static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    static void d(String tag, String message) {
+        if (enabled) {
+            Log.d(tag, message);
+        }
+    }
+
+    static void d(String tag, String format, Object arg) {
+        if (enabled) {
+            Log.d(tag, String.format(Locale.US, format, arg));
+        }
+    }
+
+    static void d(String tag, String format, long arg) {
+        if (enabled) {
+            Log.d(tag, String.format(Locale.US, format, arg));
+        }
+    }
+
+    static void d(String tag, String format, long arg1, long arg2) {
+        if (enabled) {
+            Log.d(tag, String.format(Locale.US, format, arg1, arg2));
+        }
+    }
+
+    static void d(String tag, String format, Object arg1, Object arg2) {
+        if (enabled) {
+            Log.d(tag, String.format(Locale.US, format, arg1, arg2));
+        }
+    }
+
+    static void d(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (enabled) {
+            Log.d(tag, String.format(Locale.US, format, arg1, arg2, arg3));
+        }
+    }
+
+    //more than three arguments; the array is only a cost when there is that much to say
+    static void d(String tag, String format, Object... args) {
+        if (enabled) {
+            Log.d(tag, String.format(Locale.US, format, args));
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+*   Second tier of the image cache: the encoded image bytes (jpg as downloaded) stored as
+*   files in the app's cache directory, one file per URL.
+*
+*   The total size is capped; when a new image would push us over, the least recently
+*   used files are deleted first. Which file was used last is tracked in memory in an
+*   access ordered LinkedHashMap and rebuilt from the files' lastModified times on start.
+* */
+class DiskImageCache {
+    private final File directory;
+    private final long maxBytes;
+
+    //file name -> size in bytes, least recently used first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long currentBytes;
+    private int evictionCount;
+
+    DiskImageCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IllegalStateException("Unable to create image cache directory " + directory);
+        }
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            //oldest first so that the map's iteration order matches "least recently used"
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File a, File b) {
+                    return a.lastModified() < b.lastModified() ? -1 : (a.lastModified() == b.lastModified() ? 0 : 1);
+                }
+            });
+            for (File file : files) {
+                if (file.getName().endsWith(".tmp")) {
+                    //left over from a write that never finished
+                    file.delete();
+                    continue;
+                }
+                entries.put(file.getName(), file.length());
+                currentBytes += file.length();
+            }
+        }
+        trimToSize(maxBytes);
+    }
+
+    /*
+    * Returns the cached bytes for url, or null if we don't have them.
+    * */
+    synchronized byte[] get(String url) {
+        String name = fileName(url);
+        if (entries.get(name) == null) {
+            return null;
+        }
+
+        File file = new File(directory, name);
+        try {
+            byte[] data = readFully(file);
+            //so the order survives a restart
+            file.setLastModified(System.currentTimeMillis());
+            return data;
+        } catch (IOException e) {
+            //file went missing or is unreadable, forget about it
+            remove(name);
+            return null;
+        }
+    }
+
+    synchronized void put(String url, byte[] data, int length) {
+        if (length > maxBytes) {
+            return;
+        }
+        String name = fileName(url);
+        File file = new File(directory, name);
+        File temp = new File(directory, name + ".tmp");
+
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            out.write(data, 0, length);
+            out.close();
+            out = null;
+
+            remove(name);
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                return;
+            }
+            entries.put(name, (long) length);
+            currentBytes += length;
+            trimToSize(maxBytes);
+        } catch (IOException e) {
+            temp.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    synchronized boolean contains(String url) {
+        return entries.containsKey(fileName(url));
+    }
+
+    /*
+    * Deletes least recently used files until no more than targetBytes are stored.
+    * */
+    synchronized void trimToSize(long targetBytes) {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (currentBytes > targetBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            new File(directory, eldest.getKey()).delete();
+            currentBytes -= eldest.getValue();
+            evictionCount++;
+            iterator.remove();
+        }
+    }
+
+    synchronized long size() {
+        return currentBytes;
+    }
+
+    long maxSize() {
+        return maxBytes;
+    }
+
+    synchronized int evictionCount() {
+        return evictionCount;
+    }
+
+    private void remove(String name) {
+        Long size = entries.remove(name);
+        if (size != null) {
+            currentBytes -= size;
+            new File(directory, name).delete();
+        }
+    }
+
+    /*
+    * URLs contain characters which aren't allowed in file names so we store each
+    * image under the hex MD5 of its URL instead.
+    * */
+    static String fileName(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            //both are guaranteed to exist on every platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read == -1) {
+                    throw new IOException("Truncated cache file " + file);
+                }
+                offset += read;
+            }
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Locale;
+
+/*
+*   How a download went, in more detail than DownloadStatus: what kind of failure it was,
+*   the HTTP code (-1 if we never got one), how long it took in total and how many attempts
+*   RetryPolicy made. getStatus() is the old enum, for callers which only care about that.
+* */
+class DownloadResult {
+
+    enum Failure {
+        NONE,
+        //no URL (or no consumer) was given
+        NOT_INITIALIZED,
+        INVALID_URL,
+        //no INTERNET permission
+        NO_PERMISSION,
+        //connect or read took longer than the Transport's timeouts
+        TIMEOUT,
+        //no network, host not found, connection refused/reset
+        NETWORK,
+        //4xx apart from 408 and 429: asking again won't help
+        HTTP_CLIENT_ERROR,
+        //5xx, 408 Request Timeout or 429 Too Many Requests
+        HTTP_SERVER_ERROR,
+        //the server answered but the body couldn't be read or parsed
+        BAD_RESPONSE,
+        //CircuitBreaker is failing requests to this host fast
+        CIRCUIT_OPEN,
+        //the thread was interrupted while waiting to retry
+        INTERRUPTED
+    }
+
+    private final Failure failure;
+    private final int httpCode;
+    private final long latencyMillis;
+    private final int attempts;
+
+    DownloadResult(Failure failure, int httpCode, long latencyMillis, int attempts) {
+        this.failure = failure;
+        this.httpCode = httpCode;
+        this.latencyMillis = latencyMillis;
+        this.attempts = attempts;
+    }
+
+    static DownloadResult notInitialized() {
+        return new DownloadResult(Failure.NOT_INITIALIZED, -1, 0, 0);
+    }
+
+    DownloadStatus getStatus() {
+        switch (failure) {
+            case NONE:
+                return DownloadStatus.OK;
+            case NOT_INITIALIZED:
+                return DownloadStatus.NOT_INITIALIZED;
+            default:
+                return DownloadStatus.FAILED_OR_EMPTY;
+        }
+    }
+
+    boolean isOk() {
+        return failure == Failure.NONE;
+    }
+
+    Failure getFailure() {
+        return failure;
+    }
+
+    //-1 if no response arrived
+    int getHttpCode() {
+        return httpCode;
+    }
+
+    //from the first attempt starting to the last one finishing, retry waits included
+    long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    int getAttempts() {
+        return attempts;
+    }
+
+    //a failure which might well not happen if the same GET is sent again a little later
+    boolean isTransient() {
+        return failure == Failure.TIMEOUT || failure == Failure.NETWORK || failure == Failure.HTTP_SERVER_ERROR;
+    }
+
+    static Failure failureFor(int httpCode) {
+        if (httpCode >= 500 || httpCode == HttpURLConnection.HTTP_CLIENT_TIMEOUT || httpCode == 429) {
+            return Failure.HTTP_SERVER_ERROR;
+        }
+        return httpCode >= 400 ? Failure.HTTP_CLIENT_ERROR : Failure.NONE;
+    }
+
+    /*
+    * What an IOException from the Transport means. readingBody is true if it came out of
+    * reading (or parsing) the body, where anything that isn't clearly the network is taken
+    * to be a body we can't make sense of.
+    * */
+    static Failure failureFor(IOException e, boolean readingBody) {
+        if (e instanceof SocketTimeoutException) {
+            return Failure.TIMEOUT;
+        }
+        if (e instanceof UnknownHostException || e instanceof ConnectException
+                || e instanceof NoRouteToHostException || e instanceof SocketException) {
+            return Failure.NETWORK;
+        }
+        if (e instanceof InterruptedIOException) {
+            return Failure.INTERRUPTED;
+        }
+        return readingBody ? Failure.BAD_RESPONSE : Failure.NETWORK;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "DownloadResult{%s, http=%d, %dms, attempts=%d}",
+                failure, httpCode, latencyMillis, attempts);
+    }
+}
@@ -0,0 +1,243 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+*   Remembers the parsed photos for recently fetched feed URLs, so that the same
+*   tags/lang/tagmode (which createUri always turns into the same URL) don't get
+*   downloaded and parsed again on every onResume.
+*
+*   - Fresh (younger than the TTL): returned straight away, no network and no parsing.
+*   - Stale: we ask the server whether it changed using the ETag / Last-Modified it gave
+*     us last time. A 304 Not Modified reuses the photos we already have.
+*   - Missing: a normal download + streaming parse.
+*   If several threads want the same URL at once only one of them fetches, the rest
+*   wait for and share its result.
+*
+*   Feeds come from a FeedSource, flickr over HTTP unless the cache is given another one.
+*   Every photo parsed goes to the OnPhotoParsed it is given, if any (FetchScheduler's
+*   shared cache indexes them for searching by tag).
+*   Under memory pressure (MemoryGovernor) fewer feeds are kept, none when it's critical.
+*
+*   get() blocks, so call it from a background thread (FetchScheduler does).
+* */
+class FeedCache implements MemoryGovernor.Trimmable {
+    private static final String TAG = "FeedCache";
+
+    static final long DEFAULT_TTL_MILLIS = 2 * 60 * 1000;
+    static final int DEFAULT_MAX_ENTRIES = 10;
+
+    private static class Entry {
+        final List<Photo> photos;
+        final String eTag;
+        final String lastModified;
+        volatile long fetchedAt;
+
+        Entry(List<Photo> photos, String eTag, String lastModified, long fetchedAt) {
+            this.photos = photos;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    private final FeedSource source;
+    //may be null
+    private final FlickrFeedParser.OnPhotoParsed onPhotoParsed;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Map<String, Entry> entries;
+    //maxEntries unless there is memory pressure; only touched holding the lock
+    private int limit;
+    private final Map<String, FutureTask<FeedResult>> inFlight = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    FeedCache() {
+        this(new HttpFeedSource(), DEFAULT_TTL_MILLIS, DEFAULT_MAX_ENTRIES);
+    }
+
+    FeedCache(long ttlMillis, int maxEntries) {
+        this(new HttpFeedSource(), ttlMillis, maxEntries);
+    }
+
+    FeedCache(FeedSource source, long ttlMillis, int maxEntries) {
+        this(source, ttlMillis, maxEntries, null);
+    }
+
+    FeedCache(FeedSource source, long ttlMillis, final int maxEntries, FlickrFeedParser.OnPhotoParsed onPhotoParsed) {
+        this.source = source;
+        this.onPhotoParsed = onPhotoParsed;
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+        limit = maxEntries;
+        //access ordered so the least recently used feed is the one that gets dropped
+        this.entries = new LinkedHashMap<String, Entry>(maxEntries, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > limit;
+            }
+        };
+    }
+
+    FeedResult get(FeedRequest request) {
+        return get(request.getUri());
+    }
+
+    //the feed at uri, as built by GetFlickrJSONData.createUri
+    FeedResult get(final String key) {
+        FutureTask<FeedResult> task;
+        boolean fetchHere = false;
+
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            if (entry != null && now() - entry.fetchedAt < ttlMillis) {
+                hits.incrementAndGet();
+                return new FeedResult(entry.photos, DownloadStatus.OK);
+            }
+
+            task = inFlight.get(key);
+            if (task == null) {
+                task = new FutureTask<>(new Callable<FeedResult>() {
+                    @Override
+                    public FeedResult call() {
+                        return fetch(key, entry);
+                    }
+                });
+                inFlight.put(key, task);
+                fetchHere = true;
+            } else {
+                coalesced.incrementAndGet();
+            }
+        }
+
+        if (fetchHere) {
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    inFlight.remove(key);
+                }
+            }
+        }
+
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "get: fetch of " + key + " failed " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new FeedResult(null, DownloadStatus.FAILED_OR_EMPTY);
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public synchronized void onMemoryPressure(MemoryGovernor.Pressure pressure) {
+        limit = pressure.scale(maxEntries);
+        //least recently used first
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > limit && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getRevalidations() {
+        return revalidations.get();
+    }
+
+    long getCoalesced() {
+        return coalesced.get();
+    }
+
+    String summary() {
+        return String.format(Locale.US, "hits=%d misses=%d revalidations=%d coalesced=%d",
+                hits.get(), misses.get(), revalidations.get(), coalesced.get());
+    }
+
+    //overridden by tests to move time along
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    private FeedResult fetch(String uri, Entry stale) {
+        Map<String, String> headers = new HashMap<>();
+        if (stale != null && stale.eTag != null) {
+            headers.put("If-None-Match", stale.eTag);
+        }
+        if (stale != null && stale.lastModified != null) {
+            headers.put("If-Modified-Since", stale.lastModified);
+        }
+
+        final List<Photo> photos = new ArrayList<>();
+        FeedResponse response = source.fetch(uri, headers, new GetRawData.OnStreamAvailable() {
+            @Override
+            public void onStreamAvailable(InputStream stream) throws IOException {
+                photos.addAll(new FlickrFeedParser(onPhotoParsed).parse(stream));
+            }
+        });
+
+        DownloadStatus status = response.getStatus();
+        if (status != DownloadStatus.OK) {
+            Log.w(TAG, "fetch: " + uri + " failed, " + response.getResult());
+            //stale-while-revalidate: what we had is still better than nothing
+            if (stale != null) {
+                return new FeedResult(stale.photos, status, true);
+            }
+            return new FeedResult(null, status);
+        }
+
+        if (response.getCode() == HttpURLConnection.HTTP_NOT_MODIFIED && stale != null) {
+            DebugLog.d(TAG, "fetch: %s not modified, reusing cached photos", uri);
+            revalidations.incrementAndGet();
+            synchronized (this) {
+                stale.fetchedAt = now();
+                //it may have been evicted while we were asking
+                entries.put(uri, stale);
+            }
+            return new FeedResult(stale.photos, DownloadStatus.OK);
+        }
+
+        misses.incrementAndGet();
+        Entry entry = new Entry(Collections.unmodifiableList(photos), response.getETag(), response.getLastModified(), now());
+        synchronized (this) {
+            entries.put(uri, entry);
+        }
+        return new FeedResult(entry.photos, status);
+    }
+}
@@ -0,0 +1,254 @@
+package com.nicfeanny.flickrbrowser;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+*   Builds up one ever growing list of photos for an endless list, a page at a time.
+*
+*   - Each page is its own FeedRequest (forPage) fetched through the FetchScheduler, so
+*     a page costs one download + one parse of a single page however long the list is.
+*   - Pages are never swapped in for the list we already have. Only the photos we haven't
+*     seen yet are appended to the end and the Listener is told which positions are new,
+*     so the list view can insert just those rows.
+*   - When the user scrolls to within PREFETCH_DISTANCE of the end the next page is
+*     fetched at PREFETCH priority. Its thumbnails are left to the grid's
+*     ThumbnailPrefetcher, which fetches the ones the scrolling is heading for.
+*   - A page which brings nothing new means we've reached the end of the feed.
+*   - A page whose fetch failed but which the FeedCache had an older copy of (a stale
+*     FeedResult) is shown like any other, and the failure still goes to onPageFailed.
+*   - Not every feed pages: flickr's public feed ignores page and answers every page with
+*     the first one. Such a pager is made with paged false and stops after the first page,
+*     rather than spend a download finding out.
+*   - refresh() starts again from the first page. The list we have stays on screen until
+*     the new first page arrives and then replaces it in one go (onFeedReplaced).
+*   - With a FeedStore, start() shows the first page we stored last time as soon as it has
+*     been read from disk and refreshes from the network at the same time. Each new first
+*     page is stored for next time.
+*
+*   Everything here happens on the main thread.
+* */
+class FeedPager implements FetchScheduler.FeedListener {
+    private static final String TAG = "FeedPager";
+
+    static final int PREFETCH_DISTANCE = 10;
+
+    interface Listener {
+        //photos positionStart .. positionStart + itemCount - 1 of getPhotos() are new
+        void onPhotosAppended(int positionStart, int itemCount);
+
+        //getPhotos() now holds a fresh first page instead of everything loaded before
+        void onFeedReplaced();
+
+        void onPageFailed(FeedRequest request, DownloadStatus status);
+    }
+
+    private final FetchScheduler scheduler;
+    private final FeedRequest firstPage;
+    private final FeedStore store;
+    private final Listener listener;
+    private final boolean paged;
+
+    private final List<Photo> photos = new ArrayList<>();
+    private final List<Photo> photosView = Collections.unmodifiableList(photos);
+    //image URLs of every photo in the list, a feed page often repeats photos we already have
+    private final Set<String> seen = new HashSet<>();
+
+    private int nextPage = 1;
+    private FeedRequest loading;
+    private FetchScheduler.Priority loadingPriority;
+    private boolean exhausted;
+    private boolean refreshing;
+    private boolean restoreStarted;
+
+    //store may be null, in which case nothing is kept between runs
+    FeedPager(FetchScheduler scheduler, FeedRequest firstPage, FeedStore store, Listener listener) {
+        this(scheduler, firstPage, store, true, listener);
+    }
+
+    //paged false for a feed which only ever has its first page
+    FeedPager(FetchScheduler scheduler, FeedRequest firstPage, FeedStore store, boolean paged, Listener listener) {
+        this.scheduler = scheduler;
+        this.firstPage = firstPage;
+        this.store = store;
+        this.paged = paged;
+        this.listener = listener;
+    }
+
+    //loads the first page, or (after cancel) picks up where we left off
+    void start() {
+        if (!photos.isEmpty()) {
+            return;
+        }
+        if (store != null && !restoreStarted) {
+            restoreStarted = true;
+            store.loadAsync(firstPage.getUri(), new FeedStore.OnFeedLoaded() {
+                @Override
+                public void onFeedLoaded(String uri, List<Photo> stored) {
+                    restore(stored);
+                }
+            });
+            //not waiting for the disk: whichever arrives first is shown, the network copy wins
+            refresh();
+            return;
+        }
+        loadNextPage(FetchScheduler.Priority.VISIBLE);
+    }
+
+    /*
+    * Call whenever the list scrolls with the position of the last photo on screen.
+    * */
+    void onViewportChanged(int lastVisiblePosition) {
+        if (lastVisiblePosition >= photos.size() - 1) {
+            //the user is already looking at the end, it isn't a prefetch any more
+            loadNextPage(FetchScheduler.Priority.VISIBLE);
+        } else if (lastVisiblePosition >= photos.size() - PREFETCH_DISTANCE) {
+            loadNextPage(FetchScheduler.Priority.PREFETCH);
+        }
+    }
+
+    //throws away the pages loaded so far (once the new first page is here) and starts again
+    void refresh() {
+        scheduler.cancelAll(this);
+        refreshing = true;
+        loading = firstPage;
+        loadingPriority = FetchScheduler.Priority.VISIBLE;
+        DebugLog.d(TAG, "refresh: %s", loading);
+        scheduler.fetch(loading, loadingPriority, this, this);
+    }
+
+    //stops listening (e.g. onPause); the photos loaded so far are kept
+    void cancel() {
+        scheduler.cancelAll(this);
+        loading = null;
+        refreshing = false;
+    }
+
+    List<Photo> getPhotos() {
+        return photosView;
+    }
+
+    int getPagesLoaded() {
+        return nextPage - 1;
+    }
+
+    boolean isLoading() {
+        return loading != null;
+    }
+
+    boolean isExhausted() {
+        return exhausted;
+    }
+
+    private void restore(List<Photo> stored) {
+        if (!photos.isEmpty() || stored.isEmpty()) {
+            //the network got here first (or there was nothing stored)
+            return;
+        }
+        DebugLog.d(TAG, "restore: showing %d stored photos while the feed refreshes", stored.size());
+        for (Photo photo : stored) {
+            if (seen.add(photo.getImage())) {
+                photos.add(photo);
+            }
+        }
+        listener.onPhotosAppended(0, photos.size());
+    }
+
+    private void loadNextPage(FetchScheduler.Priority priority) {
+        if (exhausted) {
+            return;
+        }
+        if (loading != null) {
+            if (refreshing) {
+                //the next page depends on the first one the refresh brings back
+                return;
+            }
+            if (priority.ordinal() < loadingPriority.ordinal()) {
+                //asking again at the higher priority moves it up the scheduler's queue
+                loadingPriority = priority;
+                scheduler.fetch(loading, priority, this, this);
+            }
+            return;
+        }
+
+        loading = firstPage.forPage(nextPage);
+        loadingPriority = priority;
+        DebugLog.d(TAG, "loadNextPage: %s %s", loading, priority);
+        scheduler.fetch(loading, priority, this, this);
+    }
+
+    @Override
+    public void onFeedLoaded(FeedRequest request, FeedResult result) {
+        if (loading == null || request.getPage() != loading.getPage()) {
+            //a second delivery of the same page (we asked for it twice), or one we no longer want
+            return;
+        }
+        loading = null;
+
+        if (!result.hasPhotos()) {
+            //nextPage stays where it is so the next scroll tries this page again
+            refreshing = false;
+            listener.onPageFailed(request, result.getStatus());
+            return;
+        }
+
+        if (result.isStale()) {
+            //the copy the FeedCache had is shown, and the failure still reported
+            show(request, result);
+            listener.onPageFailed(request, result.getStatus());
+            return;
+        }
+
+        if (request.getPage() == 1 && store != null) {
+            store.saveAsync(firstPage.getUri(), result.getPhotos());
+        }
+        show(request, result);
+    }
+
+    private void show(FeedRequest request, FeedResult result) {
+        boolean stale = result.isStale();
+        if (refreshing) {
+            refreshing = false;
+            photos.clear();
+            seen.clear();
+            exhausted = !paged;
+            nextPage = 2;
+            for (Photo photo : result.getPhotos()) {
+                if (seen.add(photo.getImage())) {
+                    photos.add(photo);
+                }
+            }
+            listener.onFeedReplaced();
+            return;
+        }
+        //a stale page is asked for again on the next scroll, it may have more by then
+        if (!stale) {
+            nextPage++;
+            if (!paged) {
+                exhausted = true;
+            }
+        }
+
+        int positionStart = photos.size();
+        for (Photo photo : result.getPhotos()) {
+            if (seen.add(photo.getImage())) {
+                photos.add(photo);
+            }
+        }
+        int itemCount = photos.size() - positionStart;
+        DebugLog.d(TAG, "onFeedLoaded: page %d added %d of %d photos",
+                request.getPage(), itemCount, result.getPhotos().size());
+
+        if (itemCount == 0) {
+            if (!stale) {
+                exhausted = true;
+            }
+            return;
+        }
+        listener.onPhotosAppended(positionStart, itemCount);
+    }
+}
@@ -0,0 +1,66 @@
+package com.nicfeanny.flickrbrowser;
+
+/*
+*   Everything needed to ask Flickr for one feed: the values GetFlickrJSONData.createUri
+*   builds the feed URL from.
+*
+*   Two requests with the same values produce the same URL, which is what the
+*   FetchScheduler uses to spot duplicates.
+*
+*   page is 1 for the first page of a feed; later pages add a page parameter (see FeedPager).
+* */
+class FeedRequest {
+    private final String baseURL;
+    private final String searchCriteria;
+    private final String language;
+    private final boolean matchAll;
+    private final int page;
+    private final String uri;
+
+    FeedRequest(String baseURL, String searchCriteria, String language, boolean matchAll) {
+        this(baseURL, searchCriteria, language, matchAll, 1);
+    }
+
+    FeedRequest(String baseURL, String searchCriteria, String language, boolean matchAll, int page) {
+        this.baseURL = baseURL;
+        this.searchCriteria = searchCriteria;
+        this.language = language;
+        this.matchAll = matchAll;
+        this.page = page;
+        this.uri = GetFlickrJSONData.createUri(baseURL, searchCriteria, language, matchAll, page);
+    }
+
+    //the same feed, another page of it
+    FeedRequest forPage(int page) {
+        return new FeedRequest(baseURL, searchCriteria, language, matchAll, page);
+    }
+
+    String getBaseURL() {
+        return baseURL;
+    }
+
+    String getSearchCriteria() {
+        return searchCriteria;
+    }
+
+    String getLanguage() {
+        return language;
+    }
+
+    boolean isMatchAll() {
+        return matchAll;
+    }
+
+    int getPage() {
+        return page;
+    }
+
+    String getUri() {
+        return uri;
+    }
+
+    @Override
+    public String toString() {
+        return "FeedRequest{" + uri + '}';
+    }
+}
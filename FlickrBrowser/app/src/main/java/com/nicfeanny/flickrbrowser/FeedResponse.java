@@ -0,0 +1,39 @@
+package com.nicfeanny.flickrbrowser;
+
+/*
+*   What a FeedSource says about one fetch: the DownloadResult (status, HTTP code, latency,
+*   attempts) plus the validators to send next time to ask whether the feed changed.
+* */
+class FeedResponse {
+    private final DownloadResult result;
+    private final String eTag;
+    private final String lastModified;
+
+    FeedResponse(DownloadResult result, String eTag, String lastModified) {
+        this.result = result;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+
+    DownloadResult getResult() {
+        return result;
+    }
+
+    DownloadStatus getStatus() {
+        return result.getStatus();
+    }
+
+    int getCode() {
+        return result.getHttpCode();
+    }
+
+    //null if the source didn't send one
+    String getETag() {
+        return eTag;
+    }
+
+    //null if the source didn't send one
+    String getLastModified() {
+        return lastModified;
+    }
+}
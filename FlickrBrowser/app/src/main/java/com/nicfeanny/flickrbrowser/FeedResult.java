@@ -0,0 +1,51 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.util.Collections;
+import java.util.List;
+
+/*
+*   What a feed fetch hands back: the photos (never null, empty on failure) and how the
+*   download went. The list can't be modified because the same result may be given to
+*   several listeners.
+*
+*   A failed fetch of a feed the FeedCache had an older copy of is stale: the status is the
+*   failure, but the photos are that copy and are worth showing until the next try works.
+* */
+class FeedResult {
+    private final List<Photo> photos;
+    private final DownloadStatus status;
+    private final boolean stale;
+
+    FeedResult(List<Photo> photos, DownloadStatus status) {
+        this(photos, status, false);
+    }
+
+    FeedResult(List<Photo> photos, DownloadStatus status, boolean stale) {
+        this.photos = photos == null ? Collections.<Photo>emptyList() : Collections.unmodifiableList(photos);
+        this.status = status;
+        this.stale = stale;
+    }
+
+    List<Photo> getPhotos() {
+        return photos;
+    }
+
+    DownloadStatus getStatus() {
+        return status;
+    }
+
+    //the fetch failed (see getStatus) but getPhotos() is the last copy we had
+    boolean isStale() {
+        return stale;
+    }
+
+    //photos worth showing, fresh or stale
+    boolean hasPhotos() {
+        return status == DownloadStatus.OK || stale;
+    }
+
+    @Override
+    public String toString() {
+        return "FeedResult{status=" + status + (stale ? ", stale" : "") + ", photos=" + photos.size() + '}';
+    }
+}
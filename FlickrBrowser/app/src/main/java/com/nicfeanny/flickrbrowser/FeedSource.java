@@ -0,0 +1,22 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.util.Map;
+
+/*
+*   Where the feeds come from. FeedCache (and so FetchScheduler, FeedPager, TagSearch and
+*   FeedSync) only ask a FeedSource for a feed URL, so the app can be
+*   pointed at something other than flickr:
+*       HttpFeedSource  - flickr over HTTP through GetRawData, what the app normally uses
+*       LocalFeedSource - recorded or generated (SyntheticFeed) feeds of any size, replayed
+*                         with a chosen latency and speed, for load tests without a network
+* */
+interface FeedSource {
+
+    /*
+    * Fetches the feed at uri (as built by GetFlickrJSONData.createUri) with the given extra
+    * request headers (may be null) and hands its body to consumer as a stream. Blocks, so call
+    * it from a background thread. A 304 Not Modified answer to If-None-Match/If-Modified-Since
+    * has no body, the consumer isn't called.
+    * */
+    FeedResponse fetch(String uri, Map<String, String> requestHeaders, GetRawData.OnStreamAvailable consumer);
+}
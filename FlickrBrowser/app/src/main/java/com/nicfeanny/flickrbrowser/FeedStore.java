@@ -0,0 +1,334 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+*   Keeps the first page of the last few feeds we showed in a SQLite database, so that
+*   on a cold start there is something to show straight away instead of a blank screen
+*   for a whole network round trip + parse. FeedPager shows what's stored here and then
+*   refreshes from the network in the background.
+*
+*   One row per feed (by URI) in "feeds" and one row per photo in "photos". Only the
+*   maxFeeds most recently saved feeds are kept (DEFAULT_MAX_FEEDS for the app).
+*   Each photo row also has the photo's Placeholder once one has been worked out, so the
+*   grid can paint it on the next start before any thumbnail is loaded (see Placeholders).
+*
+*   load()/save() do disk I/O so the *Async versions are the ones to call from the main
+*   thread; their callbacks come back on the main thread.
+* */
+class FeedStore extends SQLiteOpenHelper {
+    private static final String TAG = "FeedStore";
+
+    static final String DATABASE_NAME = "feeds.db";
+    /*
+    * Bump this whenever the tables change and add a step for the old version to onUpgrade.
+    *   1 - feeds + photos
+    *   2 - photos.placeholder_color + photos.aspect_ratio
+    * */
+    static final int DATABASE_VERSION = 2;
+    static final int DEFAULT_MAX_FEEDS = 5;
+
+    private static final String TABLE_FEEDS = "feeds";
+    private static final String TABLE_PHOTOS = "photos";
+
+    private static FeedStore instance;
+
+    interface OnFeedLoaded {
+        //photos is empty if nothing was stored for the uri
+        void onFeedLoaded(String uri, List<Photo> photos);
+    }
+
+    private final int maxFeeds;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new BackgroundThreadFactory("FeedStore"));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    static synchronized FeedStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new FeedStore(context.getApplicationContext(), DATABASE_NAME, DEFAULT_MAX_FEEDS);
+        }
+        return instance;
+    }
+
+    //name may be null for an in-memory database (tests)
+    FeedStore(Context context, String name, int maxFeeds) {
+        super(context, name, null, DATABASE_VERSION);
+        this.maxFeeds = maxFeeds;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        DebugLog.d(TAG, "onCreate: version %d", DATABASE_VERSION);
+        db.execSQL("CREATE TABLE " + TABLE_FEEDS + " ("
+                + "uri TEXT PRIMARY KEY NOT NULL, "
+                + "saved_at INTEGER NOT NULL)");
+        db.execSQL("CREATE TABLE " + TABLE_PHOTOS + " ("
+                + "feed_uri TEXT NOT NULL, "
+                + "position INTEGER NOT NULL, "
+                + "title TEXT NOT NULL, "
+                + "author TEXT NOT NULL, "
+                + "author_id TEXT NOT NULL, "
+                + "tags TEXT NOT NULL, "
+                + "image TEXT NOT NULL, "
+                //null when it is just the image URL with _m swapped for _b, like Photo
+                + "link TEXT, "
+                //both null until the thumbnail has been decoded once, see Placeholder
+                + "placeholder_color INTEGER, "
+                + "aspect_ratio REAL, "
+                + "PRIMARY KEY (feed_uri, position))");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        DebugLog.d(TAG, "onUpgrade: %d -> %d", oldVersion, newVersion);
+        //each case takes the schema from its version to the next and falls through to the next
+        //step, so a database several versions old gets every step in order
+        switch (oldVersion) {
+            case 1:
+                db.execSQL("ALTER TABLE " + TABLE_PHOTOS + " ADD COLUMN placeholder_color INTEGER");
+                db.execSQL("ALTER TABLE " + TABLE_PHOTOS + " ADD COLUMN aspect_ratio REAL");
+                //fall through
+            case 2:
+                //DATABASE_VERSION, up to date; a new step goes above this and this moves down
+                return;
+            default:
+                //a version we don't know how to move on from; it's only a cache, start again
+                dropTables(db);
+                onCreate(db);
+                break;
+        }
+    }
+
+    @Override
+    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        //written by a newer version of the app, we can't read its tables
+        dropTables(db);
+        onCreate(db);
+    }
+
+    private static void dropTables(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PHOTOS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_FEEDS);
+    }
+
+    /*
+    * Replaces whatever was stored for uri with photos and forgets the oldest feeds beyond
+    * maxFeeds. All in one transaction, so a crash halfway through leaves the old feed.
+    * */
+    void save(String uri, List<Photo> photos) {
+        write(uri, photos, true);
+    }
+
+    /*
+    * Like save() but a feed that is already stored keeps its place among the maxFeeds, the
+    * way FeedSync refreshing it in the background isn't the user looking at it.
+    * */
+    void update(String uri, List<Photo> photos) {
+        write(uri, photos, false);
+    }
+
+    private void write(String uri, List<Photo> photos, boolean touch) {
+        long start = System.nanoTime();
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_PHOTOS, "feed_uri = ?", new String[]{uri});
+
+            //one compiled statement re-bound for every row is much cheaper than insert(ContentValues)
+            SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_PHOTOS
+                    + " (feed_uri, position, title, author, author_id, tags, image, link, placeholder_color, aspect_ratio)"
+                    + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            Placeholders placeholders = Placeholders.getShared();
+            try {
+                for (int i = 0; i < photos.size(); i++) {
+                    Photo photo = photos.get(i);
+                    insert.clearBindings();
+                    insert.bindString(1, uri);
+                    insert.bindLong(2, i);
+                    insert.bindString(3, photo.getTitle());
+                    insert.bindString(4, photo.getAuthor());
+                    insert.bindString(5, photo.getAuthorID());
+                    insert.bindString(6, photo.getTags());
+                    insert.bindString(7, photo.getImage());
+                    String link = photo.getLink();
+                    if (link != null && !link.equals(Photo.largeImageUrl(photo.getImage()))) {
+                        insert.bindString(8, link);
+                    }
+                    Placeholder placeholder = placeholders.get(photo.getImage());
+                    if (placeholder != null) {
+                        insert.bindLong(9, placeholder.getColor());
+                        insert.bindDouble(10, placeholder.getAspectRatio());
+                    }
+                    insert.executeInsert();
+                }
+            } finally {
+                insert.close();
+            }
+
+            ContentValues feed = new ContentValues();
+            feed.put("uri", uri);
+            feed.put("saved_at", System.currentTimeMillis());
+            db.insertWithOnConflict(TABLE_FEEDS, null, feed,
+                    touch ? SQLiteDatabase.CONFLICT_REPLACE : SQLiteDatabase.CONFLICT_IGNORE);
+
+            trim(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        DebugLog.d(TAG, "write: %d photos for %s in %dus", photos.size(), uri, (System.nanoTime() - start) / 1000);
+    }
+
+    List<Photo> load(String uri) {
+        long start = System.nanoTime();
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor cursor = db.query(TABLE_PHOTOS, new String[]{"title", "author", "author_id", "tags", "image", "link",
+                        "placeholder_color", "aspect_ratio"},
+                "feed_uri = ?", new String[]{uri}, null, null, "position");
+        List<Photo> photos = new ArrayList<>(cursor.getCount());
+        StringPool pool = StringPool.getShared();
+        Placeholders placeholders = Placeholders.getShared();
+        try {
+            while (cursor.moveToNext()) {
+                Photo photo;
+                if (cursor.isNull(5)) {
+                    photo = new Photo(cursor.getString(0), pool.get(cursor.getString(1)), pool.get(cursor.getString(2)),
+                            Photo.splitTags(cursor.getString(3), pool), cursor.getString(4));
+                } else {
+                    photo = new Photo(cursor.getString(0), cursor.getString(1), cursor.getString(2),
+                            cursor.getString(5), cursor.getString(3), cursor.getString(4));
+                }
+                photos.add(photo);
+                if (!cursor.isNull(6)) {
+                    placeholders.putStored(photo.getImage(), new Placeholder(cursor.getInt(6), cursor.getFloat(7)));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        //these are loaded photos too, as far as filtering by tag goes
+        TagIndex.getShared().addAll(photos);
+        DebugLog.d(TAG, "load: %d photos for %s in %dus", photos.size(), uri, (System.nanoTime() - start) / 1000);
+        return Collections.unmodifiableList(photos);
+    }
+
+    void loadAsync(final String uri, final OnFeedLoaded callBack) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Photo> photos = load(uri);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callBack.onFeedLoaded(uri, photos);
+                    }
+                });
+            }
+        });
+    }
+
+    void saveAsync(final String uri, List<Photo> photos) {
+        //copied now, the caller's list may keep changing
+        final List<Photo> copy = new ArrayList<>(photos);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                save(uri, copy);
+            }
+        });
+    }
+
+    /*
+    * Writes the Placeholders worked out since last time into the stored photos with the same
+    * image. Ones for photos that aren't stored are dropped; write() picks up any that are
+    * still in Placeholders if the photo is saved later.
+    * */
+    void savePlaceholders() {
+        Map<String, Placeholder> unsaved = Placeholders.getShared().takeUnsaved();
+        if (unsaved.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_PHOTOS
+                    + " SET placeholder_color = ?, aspect_ratio = ? WHERE image = ?");
+            try {
+                for (Map.Entry<String, Placeholder> entry : unsaved.entrySet()) {
+                    update.bindLong(1, entry.getValue().getColor());
+                    update.bindDouble(2, entry.getValue().getAspectRatio());
+                    update.bindString(3, entry.getKey());
+                    update.executeUpdateDelete();
+                }
+            } finally {
+                update.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        DebugLog.d(TAG, "savePlaceholders: %d in %dus", unsaved.size(), (System.nanoTime() - start) / 1000);
+    }
+
+    void savePlaceholdersAsync() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                savePlaceholders();
+            }
+        });
+    }
+
+    //the stored feeds, most recently saved first
+    List<String> getFeedUris() {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT uri FROM " + TABLE_FEEDS
+                + " ORDER BY saved_at DESC, rowid DESC", null);
+        try {
+            List<String> uris = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                uris.add(cursor.getString(0));
+            }
+            return uris;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    int getFeedCount() {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT COUNT(*) FROM " + TABLE_FEEDS, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    //drops the oldest feeds (and their photos) beyond maxFeeds
+    private void trim(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT uri FROM " + TABLE_FEEDS
+                + " ORDER BY saved_at DESC, rowid DESC LIMIT -1 OFFSET " + maxFeeds, null);
+        try {
+            while (cursor.moveToNext()) {
+                String[] uri = new String[]{cursor.getString(0)};
+                db.delete(TABLE_PHOTOS, "feed_uri = ?", uri);
+                db.delete(TABLE_FEEDS, "uri = ?", uri);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+*   Brings the feeds kept in the FeedStore up to date in the background (see FeedSyncWorker),
+*   so the stored copy FeedPager shows on start is already fresh and the app doesn't have to
+*   wait for the network to show something new.
+*
+*   - The feeds synced are the ones the FeedStore kept, i.e. the tag queries the user looked
+*     at most recently.
+*   - A photo is new if its link isn't among the stored photos' links. A feed with nothing
+*     new isn't written at all; one with new photos is stored with FeedStore.update, so the
+*     sync doesn't change which feeds the store keeps.
+*   - Only the new photos' thumbnails are downloaded, into the ImageLoader's disk cache at
+*     the URL the grid will ask for. The rest were downloaded when they were new.
+*
+*   Everything blocks, so run it on a background thread.
+* */
+class FeedSync {
+    private static final String TAG = "FeedSync";
+
+    private final FeedStore store;
+    private final FeedCache feedCache;
+    private final ImageLoader thumbnails;
+    private final int thumbnailSize;
+
+    //thumbnails may be null, in which case nothing is downloaded ahead of time
+    FeedSync(FeedStore store, FeedCache feedCache, ImageLoader thumbnails, int thumbnailSize) {
+        this.store = store;
+        this.feedCache = feedCache;
+        this.thumbnails = thumbnails;
+        this.thumbnailSize = thumbnailSize;
+    }
+
+    List<String> getFeedUris() {
+        return store.getFeedUris();
+    }
+
+    /*
+    * Fetches the feed at uri and stores it if it has anything new. Returns the new photos,
+    * or null if the feed couldn't be fetched (what was stored is left alone).
+    * */
+    List<Photo> sync(String uri) {
+        long start = System.nanoTime();
+        FeedResult result = feedCache.get(uri);
+        if (result.getStatus() != DownloadStatus.OK) {
+            Log.w(TAG, "sync: couldn't fetch " + uri + ", status " + result.getStatus());
+            return null;
+        }
+
+        List<Photo> fresh = newPhotos(store.load(uri), result.getPhotos());
+        if (!fresh.isEmpty()) {
+            store.update(uri, result.getPhotos());
+            warmThumbnails(fresh);
+        }
+        if (DebugLog.isEnabled()) {
+            DebugLog.d(TAG, "sync: %d of %d photos new in %s, %dms", fresh.size(), result.getPhotos().size(), uri,
+                    (System.nanoTime() - start) / 1000000);
+        }
+        return fresh;
+    }
+
+    //the photos in fetched whose link isn't one of stored's, in fetched's order
+    static List<Photo> newPhotos(List<Photo> stored, List<Photo> fetched) {
+        Set<String> storedLinks = new HashSet<>(stored.size() * 2);
+        for (Photo photo : stored) {
+            storedLinks.add(photo.getLink());
+        }
+        List<Photo> fresh = new ArrayList<>();
+        for (Photo photo : fetched) {
+            //add() also drops a photo the feed itself repeats
+            if (storedLinks.add(photo.getLink())) {
+                fresh.add(photo);
+            }
+        }
+        return fresh;
+    }
+
+    private void warmThumbnails(List<Photo> photos) {
+        if (thumbnails == null) {
+            return;
+        }
+        int failed = 0;
+        for (Photo photo : photos) {
+            //the same URL the grid and FeedPager ask for
+            if (!thumbnails.warm(thumbnails.urlFor(photo, thumbnailSize, thumbnailSize, true))) {
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            Log.w(TAG, "warmThumbnails: " + failed + " of " + photos.size() + " thumbnails failed to download");
+        }
+    }
+}
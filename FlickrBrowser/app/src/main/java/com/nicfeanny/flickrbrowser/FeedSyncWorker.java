@@ -0,0 +1,69 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.content.Context;
+
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+*   Runs FeedSync every few hours, but only on an unmetered network while the device is
+*   charging, so keeping the stored feeds fresh costs the user neither data nor battery.
+*
+*   WorkManager keeps the schedule across reboots and app updates; schedule() is safe to
+*   call on every start, an existing schedule is kept as it is.
+* */
+public class FeedSyncWorker extends Worker {
+    private static final String TAG = "FeedSyncWorker";
+
+    static final String UNIQUE_NAME = "feed-sync";
+    static final long INTERVAL_HOURS = 3;
+
+    static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.UNMETERED)
+                .setRequiresCharging(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(FeedSyncWorker.class, INTERVAL_HOURS, TimeUnit.HOURS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance().enqueueUniquePeriodicWork(UNIQUE_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    public FeedSyncWorker(Context context, WorkerParameters params) {
+        super(context, params);
+    }
+
+    //on one of WorkManager's background threads
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        //we may be the only thing running in this process
+        MemoryGovernor.getShared().install(context);
+        FeedSync sync = new FeedSync(FeedStore.getInstance(context), FetchScheduler.getInstance().getFeedCache(),
+                ImageLoader.getInstance(context),
+                context.getResources().getDimensionPixelSize(R.dimen.grid_thumbnail_height));
+
+        List<String> uris = sync.getFeedUris();
+        int failed = 0;
+        for (String uri : uris) {
+            if (isStopped()) {
+                //the constraints no longer hold, the rest wait for the next run
+                return Result.success();
+            }
+            if (sync.sync(uri) == null) {
+                failed++;
+            }
+        }
+        DebugLog.d(TAG, "doWork: synced %d feeds, %d failed", uris.size() - failed, failed);
+        //all of them failing looks like the network rather than a feed, try again sooner
+        return failed > 0 && failed == uris.size() ? Result.retry() : Result.success();
+    }
+}
@@ -0,0 +1,191 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.app.Application;
+import android.arch.lifecycle.AndroidViewModel;
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.List;
+
+/*
+*   Owns the FeedPager for MainActivity, outliving the Activity across rotations.
+*
+*   Before, every MainActivity made its own FeedPager and was its Listener, so a rotation
+*   kept the old Activity reachable from whatever fetch was in flight and then threw the
+*   result away, and the new Activity fetched the feed all over again. Now:
+*   - The FeedPager (and so the photos loaded so far and any fetch in flight) lives here
+*     and only this ViewModel listens to it; no Activity is ever held on to.
+*   - What happened to the list is published as an Update through LiveData, which only
+*     delivers to a started Activity and forgets it when it is destroyed. An Activity
+*     observing after a rotation gets the latest Update straight away.
+*   - Fetches are only cancelled in onCleared, i.e. when the user has really left (finish or
+*     back), not on rotation or pause.
+*   - search() swaps the feed for a TagSearch's results, as a new generation which then grows
+*     as each tag's request lands; clearSearch() goes back to the feed as it was.
+*
+*   Everything here happens on the main thread.
+* */
+public class FeedViewModel extends AndroidViewModel implements FeedPager.Listener, TagSearch.Listener {
+    private static final String TAG = "FeedViewModel";
+
+    static final String FEED_URL = "http://api.flickr.com/services/feeds/photos_public.gne";
+    //the public feed ignores page, every page would be the first one again
+    static final boolean FEED_PAGED = false;
+
+    /*
+    * The list is getPhotos() of the FeedPager: photos positionStart .. positionStart +
+    * itemCount - 1 are new, and everything before them is unchanged since the last Update
+    * with the same generation. Each refresh that replaces the list starts a new generation.
+    * An observer which has shown everything up to positionStart of this generation only
+    * needs the new photos; anyone else (a new Activity) should show the whole list.
+    * */
+    static final class Update {
+        final List<Photo> photos;
+        final int generation;
+        final int positionStart;
+        final int itemCount;
+
+        Update(List<Photo> photos, int generation, int positionStart, int itemCount) {
+            this.photos = photos;
+            this.generation = generation;
+            this.positionStart = positionStart;
+            this.itemCount = itemCount;
+        }
+
+        //whether an observer showing shown photos of the given generation only needs newPhotos()
+        boolean follows(int shownGeneration, int shown) {
+            return positionStart == shown && (generation == shownGeneration || shown == 0);
+        }
+
+        List<Photo> newPhotos() {
+            return photos.subList(positionStart, positionStart + itemCount);
+        }
+
+        List<Photo> allPhotos() {
+            return photos.subList(0, positionStart + itemCount);
+        }
+    }
+
+    private final FeedPager feedPager;
+    private final TagSearch tagSearch;
+    private final MutableLiveData<Update> updates = new MutableLiveData<>();
+    private int generation;
+    //what the user searched for, null while the feed is shown
+    private String query;
+
+    public FeedViewModel(Application application) {
+        super(application);
+        //the last copy of the feed is shown from the FeedStore while the network catches up
+        feedPager = new FeedPager(FetchScheduler.getInstance(),
+                new FeedRequest(FEED_URL, "android, nougat", "en-us", true),
+                FeedStore.getInstance(application), FEED_PAGED, this);
+        //the photos we already have that match are shown before the network answers
+        tagSearch = new TagSearch(FetchScheduler.getInstance(), FEED_URL, TagIndex.getShared(), this);
+    }
+
+    //for tests; store may be null as for FeedPager
+    FeedViewModel(Application application, FetchScheduler scheduler, FeedRequest firstPage, FeedStore store) {
+        super(application);
+        feedPager = new FeedPager(scheduler, firstPage, store, FEED_PAGED, this);
+        tagSearch = new TagSearch(scheduler, firstPage.getBaseURL(), this);
+    }
+
+    LiveData<Update> getUpdates() {
+        return updates;
+    }
+
+    //loads the first page unless it is here already or on its way; call from onResume
+    void start() {
+        feedPager.start();
+    }
+
+    void refresh() {
+        if (query != null) {
+            search(query);
+        } else {
+            feedPager.refresh();
+        }
+    }
+
+    /*
+    * Shows the photos for query (tags separated by commas and/or spaces) instead of the feed.
+    * The list starts out empty and the photos are appended as each tag's request answers.
+    * */
+    void search(String query) {
+        this.query = query;
+        generation++;
+        updates.setValue(new Update(Collections.<Photo>emptyList(), generation, 0, 0));
+        tagSearch.search(query);
+    }
+
+    //back to the feed, which has carried on where it was
+    void clearSearch() {
+        if (query == null) {
+            return;
+        }
+        query = null;
+        tagSearch.cancel();
+        generation++;
+        updates.setValue(new Update(feedPager.getPhotos(), generation, 0, feedPager.getPhotos().size()));
+    }
+
+    String getQuery() {
+        return query;
+    }
+
+    boolean isSearching() {
+        return tagSearch.isSearching();
+    }
+
+    void onViewportChanged(int lastVisiblePosition) {
+        //search results come all at once per tag, there are no more pages of them
+        if (query == null) {
+            feedPager.onViewportChanged(lastVisiblePosition);
+        }
+    }
+
+    List<Photo> getPhotos() {
+        return query != null ? tagSearch.getResults() : feedPager.getPhotos();
+    }
+
+    @Override
+    protected void onCleared() {
+        DebugLog.d(TAG, "onCleared: %d photos", feedPager.getPhotos().size());
+        feedPager.cancel();
+        tagSearch.cancel();
+    }
+
+    @Override
+    public void onPhotosAppended(int positionStart, int itemCount) {
+        //the feed keeps loading behind a search; it's shown in full when the search is cleared
+        if (query == null) {
+            updates.setValue(new Update(feedPager.getPhotos(), generation, positionStart, itemCount));
+        }
+    }
+
+    @Override
+    public void onFeedReplaced() {
+        if (query == null) {
+            generation++;
+            updates.setValue(new Update(feedPager.getPhotos(), generation, 0, feedPager.getPhotos().size()));
+        }
+    }
+
+    @Override
+    public void onResultsUpdated(List<Photo> results, int added) {
+        updates.setValue(new Update(results, generation, results.size() - added, added));
+    }
+
+    @Override
+    public void onSearchComplete(List<Photo> results, int failed) {
+        DebugLog.d(TAG, "onSearchComplete: '%s' found %d photos, %d requests failed", query, results.size(), failed);
+    }
+
+    @Override
+    public void onPageFailed(FeedRequest request, DownloadStatus status) {
+        //download or processing failed; the next scroll or refresh tries again
+        Log.e(TAG, "onPageFailed: " + request + " failed with status " + status);
+    }
+}
@@ -0,0 +1,291 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+*   Runs feed downloads (download + streaming parse) for the whole app on a small, fixed
+*   pool of background threads instead of one AsyncTask per call.
+*
+*   - Priority: work for what is on screen (VISIBLE) is taken off the queue before
+*     PREFETCH work, whatever order it was submitted in.
+*   - Deduplication: asking for a feed URL which is already queued or downloading just
+*     adds another listener to that fetch; it is never downloaded twice at the same time.
+*   - Cancellation: every fetch is made on behalf of an owner (normally an Activity).
+*     cancelAll(owner) drops that owner's listeners and removes fetches nobody else is
+*     waiting for from the queue. A fetch which has already started is left to finish so
+*     that, e.g., a quick pause/resume picks it back up instead of starting again.
+*
+*   Listeners are always called on the main thread, and only ever get the finished,
+*   unmodifiable result: nothing of the download or the parse is left for the main thread.
+* */
+class FetchScheduler {
+    private static final String TAG = "FetchScheduler";
+
+    //feed fetches mostly wait on the network; four lets a TagSearch's requests overlap
+    private static final int THREAD_COUNT = 4;
+
+    private static FetchScheduler instance;
+    private static FeedSource defaultFeedSource = new HttpFeedSource();
+
+    enum Priority {VISIBLE, PREFETCH}
+
+    /*
+    * Replaces the OnDataAvailable/OnDownLoadComplete pair: one callback, on the main
+    * thread, with the request it answers (so one listener can make several requests).
+    * */
+    interface FeedListener {
+        void onFeedLoaded(FeedRequest request, FeedResult result);
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, FetchTask> inFlight = new HashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final FeedCache feedCache;
+
+    static synchronized FetchScheduler getInstance() {
+        if (instance == null) {
+            //every photo parsed is indexed by tag as it is parsed, for TagSearch
+            instance = new FetchScheduler(THREAD_COUNT, new FeedCache(defaultFeedSource,
+                    FeedCache.DEFAULT_TTL_MILLIS, FeedCache.DEFAULT_MAX_ENTRIES, TagIndex.getShared()));
+            MemoryGovernor.getShared().register(instance.feedCache);
+        }
+        return instance;
+    }
+
+    /*
+    * Where getInstance()'s feeds come from, e.g. a LocalFeedSource to load test the app
+    * without a network. Only before the first getInstance(), after that it is too late.
+    * */
+    static synchronized void setDefaultFeedSource(FeedSource source) {
+        if (instance != null) {
+            throw new IllegalStateException("FetchScheduler already created with " + defaultFeedSource);
+        }
+        defaultFeedSource = source;
+    }
+
+    FetchScheduler(int threadCount, FeedCache feedCache) {
+        this.feedCache = feedCache;
+        executor = new ThreadPoolExecutor(threadCount, threadCount, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new BackgroundThreadFactory("FetchScheduler"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /*
+    * Queues the request (or joins the identical one already in flight) and returns a
+    * Future for this caller. Cancelling that Future only detaches this caller.
+    * listener may be null if the caller only wants the Future.
+    * */
+    Future<FeedResult> fetch(FeedRequest request, Priority priority, Object owner, FeedListener listener) {
+        synchronized (this) {
+            FetchTask task = inFlight.get(request.getUri());
+            if (task == null) {
+                task = new FetchTask(request, priority);
+                inFlight.put(request.getUri(), task);
+                executor.execute(task);
+            } else {
+                DebugLog.d(TAG, "fetch: joining in-flight %s", request);
+                if (priority.ordinal() < task.priority.ordinal() && !task.started && executor.remove(task)) {
+                    //it's needed on screen now, re-queue it ahead of the prefetches
+                    task.priority = priority;
+                    executor.execute(task);
+                }
+            }
+
+            FeedCall call = new FeedCall(task, owner, listener);
+            task.calls.add(call);
+            return call;
+        }
+    }
+
+    /*
+    * Call from onPause/onDestroy: no listener belonging to owner will be called after this.
+    * */
+    synchronized void cancelAll(Object owner) {
+        for (FetchTask task : new ArrayList<>(inFlight.values())) {
+            Iterator<FeedCall> calls = task.calls.iterator();
+            while (calls.hasNext()) {
+                FeedCall call = calls.next();
+                if (call.owner == owner) {
+                    call.cancelled = true;
+                    calls.remove();
+                }
+            }
+            dropIfUnwanted(task);
+        }
+    }
+
+    private synchronized void detach(FeedCall call) {
+        call.cancelled = true;
+        call.task.calls.remove(call);
+        dropIfUnwanted(call.task);
+    }
+
+    private void dropIfUnwanted(FetchTask task) {
+        if (task.calls.isEmpty() && !task.started && executor.remove(task)) {
+            DebugLog.d(TAG, "dropIfUnwanted: nobody is waiting for %s, removed from queue", task.request);
+            inFlight.remove(task.request.getUri());
+            task.cancel(false);
+        }
+    }
+
+    FeedCache getFeedCache() {
+        return feedCache;
+    }
+
+    private class FetchTask extends FutureTask<FeedResult> implements Comparable<FetchTask> {
+        final FeedRequest request;
+        final long order = sequence.getAndIncrement();
+        final long queuedAt = System.nanoTime();
+        final List<FeedCall> calls = new ArrayList<>();
+        volatile Priority priority;
+        boolean started;
+
+        FetchTask(final FeedRequest request, Priority priority) {
+            super(new Callable<FeedResult>() {
+                @Override
+                public FeedResult call() {
+                    //download + streaming parse, unless the cache can answer (or revalidate) it
+                    return feedCache.get(request);
+                }
+            });
+            this.request = request;
+            this.priority = priority;
+        }
+
+        @Override
+        public void run() {
+            synchronized (FetchScheduler.this) {
+                if (isCancelled()) {
+                    return;
+                }
+                started = true;
+            }
+            super.run();
+        }
+
+        @Override
+        protected void done() {
+            final List<FeedCall> waiting;
+            synchronized (FetchScheduler.this) {
+                if (inFlight.get(request.getUri()) == this) {
+                    inFlight.remove(request.getUri());
+                }
+                waiting = new ArrayList<>(calls);
+            }
+            if (isCancelled() || waiting.isEmpty()) {
+                return;
+            }
+
+            FeedResult loaded;
+            try {
+                loaded = get();
+            } catch (InterruptedException | ExecutionException e) {
+                //e.g. the parser threw; the listeners still hear about it, or they'd wait for ever
+                Log.e(TAG, "done: fetch of " + request + " failed " + e);
+                loaded = new FeedResult(null, DownloadStatus.FAILED_OR_EMPTY);
+            }
+            final FeedResult result = loaded;
+
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    /*
+                    * All a feed load costs the main thread. Timed (PerfCounters MAIN_THREAD_NANOS
+                    * per FEEDS_DELIVERED) so any work creeping back onto it shows up.
+                    * */
+                    long start = PerfCounters.start();
+                    for (FeedCall call : waiting) {
+                        //re-check, the owner may have been paused since the fetch finished
+                        if (!call.cancelled && call.listener != null) {
+                            call.listener.onFeedLoaded(request, result);
+                        }
+                    }
+                    PerfCounters.stop(PerfCounters.Counter.MAIN_THREAD_NANOS, start);
+                    PerfCounters.increment(PerfCounters.Counter.FEEDS_DELIVERED);
+                    if (DebugLog.isEnabled()) {
+                        DebugLog.d(TAG, "done: %s delivered, %dus on the main thread, %dms since queued", result,
+                                (System.nanoTime() - start) / 1000, (System.nanoTime() - queuedAt) / 1000000);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public int compareTo(FetchTask other) {
+            int byPriority = priority.compareTo(other.priority);
+            if (byPriority != 0) {
+                return byPriority;
+            }
+            //first come first served within a priority
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+    }
+
+    //one caller's view of a (possibly shared) FetchTask
+    private class FeedCall implements Future<FeedResult> {
+        final FetchTask task;
+        final Object owner;
+        final FeedListener listener;
+        volatile boolean cancelled;
+
+        FeedCall(FetchTask task, Object owner, FeedListener listener) {
+            this.task = task;
+            this.owner = owner;
+            this.listener = listener;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (cancelled || task.isDone()) {
+                return false;
+            }
+            detach(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return cancelled || task.isDone();
+        }
+
+        @Override
+        public FeedResult get() throws InterruptedException, ExecutionException {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            return task.get();
+        }
+
+        @Override
+        public FeedResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            return task.get(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+*   Streaming version of getFlickrJSONData.parseJSONData, the original org.json parse.
+*
+*   Instead of turning the whole response into one big String and then building a
+*   JSONObject tree out of it, we read the JSON a token at a time straight off the
+*   connection's InputStream. Each item in the "items" array becomes a Photo as soon
+*   as its closing brace has been read, so at no point do we hold the raw text,
+*   the DOM and the photo list in memory all at once.
+*
+*   Authors, author ids and tags go through a StringPool so that repeats share one String.
+* */
+class FlickrFeedParser {
+
+    /*
+    * Optional callback which is told about each photo the moment it has been parsed,
+    * i.e., before the rest of the feed has even been read.
+    * */
+    interface OnPhotoParsed {
+        void onPhotoParsed(Photo photo);
+    }
+
+    private final OnPhotoParsed onPhotoParsed;
+    private final StringPool pool;
+
+    FlickrFeedParser() {
+        this(null);
+    }
+
+    FlickrFeedParser(OnPhotoParsed onPhotoParsed) {
+        this(onPhotoParsed, StringPool.getShared());
+    }
+
+    FlickrFeedParser(OnPhotoParsed onPhotoParsed, StringPool pool) {
+        this.onPhotoParsed = onPhotoParsed;
+        this.pool = pool;
+    }
+
+    /*
+    * Reads the feed and returns the photos found in "items".
+    * Any syntax error, or an item missing one of the fields we rely on, comes back as
+    * an IOException which the caller treats the same way as a JSONException.
+    * */
+    List<Photo> parse(InputStream stream) throws IOException {
+        //when stream comes straight off the connection this includes waiting for the network
+        long start = PerfCounters.start();
+        JsonReader reader = new JsonReader(new InputStreamReader(stream, "UTF-8"));
+        //the flickr feed escapes single quotes (\') which strict mode rejects
+        reader.setLenient(true);
+
+        List<Photo> photoList = new ArrayList<>();
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("items")) {
+                    readItems(reader, photoList);
+                } else {
+                    //title, link, modified etc. describe the feed itself, not a photo
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException e) {
+            //JsonReader signals an unexpected token with IllegalStateException
+            throw new IOException("Unexpected token in feed: " + e.getMessage());
+        } finally {
+            reader.close();
+        }
+
+        PerfCounters.stop(PerfCounters.Counter.PARSE_NANOS, start);
+        PerfCounters.increment(PerfCounters.Counter.FEEDS_PARSED);
+        PerfCounters.add(PerfCounters.Counter.ITEMS_PARSED, photoList.size());
+        Metrics.record(Metrics.Metric.PARSE_MICROS, (System.nanoTime() - start) / 1000);
+        Metrics.record(Metrics.Metric.FEED_ITEMS, photoList.size());
+        return photoList;
+    }
+
+    private void readItems(JsonReader reader, List<Photo> photoList) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Photo photo = readPhoto(reader);
+            photoList.add(photo);
+            if (onPhotoParsed != null) {
+                onPhotoParsed.onPhotoParsed(photo);
+            }
+        }
+        reader.endArray();
+    }
+
+    private Photo readPhoto(JsonReader reader) throws IOException {
+        String title = null;
+        String author = null;
+        String authorID = null;
+        String tags = null;
+        String photoUrl = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "title":
+                    title = readString(reader);
+                    break;
+                case "author":
+                    author = readString(reader);
+                    break;
+                case "author_id":
+                    authorID = readString(reader);
+                    break;
+                case "tags":
+                    tags = readString(reader);
+                    break;
+                case "media":
+                    photoUrl = readMediaUrl(reader);
+                    break;
+                default:
+                    //description, date_taken etc. are never used so we don't even build the Strings
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        //same fields org.json's getString would have insisted on
+        if (title == null || author == null || authorID == null || tags == null || photoUrl == null) {
+            throw new IOException("Feed item is missing a required field");
+        }
+
+        //no link: Photo works out the large image URL from photoUrl when it's asked for
+        return new Photo(title, pool.get(author), pool.get(authorID), Photo.splitTags(tags, pool), photoUrl);
+    }
+
+    private String readMediaUrl(JsonReader reader) throws IOException {
+        String url = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("m")) {
+                url = readString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return url;
+    }
+
+    private String readString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
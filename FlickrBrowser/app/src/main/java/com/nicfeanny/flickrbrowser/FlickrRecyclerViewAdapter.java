@@ -0,0 +1,256 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+*   Shows the photos as a grid of thumbnails.
+*
+*   - Stable ids (from Photo.getLink()) let the RecyclerView keep the same view for the same
+*     photo across updates instead of rebinding everything.
+*   - New pages arrive through appendPhotos(), which only inserts the new cells.
+*   - A whole new list (e.g. a refresh) goes through loadNewData(): the DiffUtil comparison
+*     of the old and new lists runs on a background thread and only the result is applied
+*     on the main thread, so a long list doesn't cost us frames.
+*   - Thumbnails come from the ImageLoader, at the size it picks for a cell (urlFor; the
+*     ThumbnailPrefetcher asks for the same size so the URLs match). When a view is recycled or rebound to another
+*     photo its outstanding load is cancelled, so a fast fling doesn't leave a queue of
+*     downloads for photos that have already scrolled away.
+*   - Until its thumbnail arrives a cell shows the photo's Placeholder colour, if one is known
+*     (stored from an earlier session or worked out by an earlier decode).
+*
+*   Everything apart from the diff itself happens on the main thread.
+* */
+class FlickrRecyclerViewAdapter extends RecyclerView.Adapter<FlickrRecyclerViewAdapter.FlickrImageViewHolder>
+        implements ThumbnailPrefetcher.Photos {
+    private static final String TAG = "FlickrRecyclerViewAdapt";
+
+    private static final ExecutorService diffExecutor =
+            Executors.newSingleThreadExecutor(new BackgroundThreadFactory("PhotoDiff"));
+
+    interface OnPhotoClickListener {
+        //photos is the list as the grid shows it right now
+        void onPhotoClick(List<Photo> photos, int position);
+    }
+
+    private final ImageLoader imageLoader;
+    private final int thumbnailSize;
+    private OnPhotoClickListener onPhotoClickListener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private List<Photo> photoList = new ArrayList<>();
+    //bumped by every loadNewData so that a diff which is overtaken by a newer one is dropped
+    private int diffGeneration;
+    //photos appended while a diff was running; they go on the end once it has been applied
+    private List<Photo> pendingAppends;
+
+    FlickrRecyclerViewAdapter(ImageLoader imageLoader, int thumbnailSize) {
+        this.imageLoader = imageLoader;
+        this.thumbnailSize = thumbnailSize;
+        setHasStableIds(true);
+    }
+
+    static class FlickrImageViewHolder extends RecyclerView.ViewHolder implements ImageLoader.OnImageLoaded {
+        final ImageView thumbnail;
+        private ImageLoader.Request request;
+        private String url;
+
+        FlickrImageViewHolder(View itemView) {
+            super(itemView);
+            thumbnail = (ImageView) itemView.findViewById(R.id.thumbnail);
+        }
+
+        void bind(ImageLoader imageLoader, Photo photo, String url, int size) {
+            if (url.equals(this.url) && request != null && !request.isCancelled()) {
+                //rebound to the same photo (e.g. after an item move), its load is still wanted
+                return;
+            }
+            unbind();
+            this.url = url;
+
+            Bitmap cached = imageLoader.getCached(url, size, size);
+            if (cached != null) {
+                thumbnail.setImageBitmap(cached);
+                return;
+            }
+            Placeholder placeholder = Placeholders.getShared().get(photo.getImage());
+            if (placeholder != null) {
+                thumbnail.setImageDrawable(placeholder.newDrawable());
+            }
+            request = imageLoader.load(url, photo.getImage(), size, size, this);
+        }
+
+        void unbind() {
+            if (request != null) {
+                request.cancel();
+                request = null;
+            }
+            url = null;
+            thumbnail.setImageDrawable(null);
+        }
+
+        @Override
+        public void onImageLoaded(String url, Bitmap bitmap) {
+            //the view may have moved on to another photo since the load started
+            if (url.equals(this.url) && bitmap != null) {
+                thumbnail.setImageBitmap(bitmap);
+            }
+            request = null;
+        }
+    }
+
+    void setOnPhotoClickListener(OnPhotoClickListener listener) {
+        onPhotoClickListener = listener;
+    }
+
+    @Override
+    public FlickrImageViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.photo_grid_item, parent, false);
+        final FlickrImageViewHolder holder = new FlickrImageViewHolder(view);
+        view.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                int position = holder.getAdapterPosition();
+                //NO_POSITION while the cell is being removed
+                if (onPhotoClickListener != null && position != RecyclerView.NO_POSITION) {
+                    onPhotoClickListener.onPhotoClick(photoList, position);
+                }
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(FlickrImageViewHolder holder, int position) {
+        //cells are square and crop the photo to fill them
+        Photo photo = photoList.get(position);
+        String url = imageLoader.urlFor(photo, thumbnailSize, thumbnailSize, true);
+        holder.bind(imageLoader, photo, url, thumbnailSize);
+    }
+
+    @Override
+    public void onViewRecycled(FlickrImageViewHolder holder) {
+        holder.unbind();
+    }
+
+    @Override
+    public int getItemCount() {
+        return photoList.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return stableId(photoList.get(position).getLink());
+    }
+
+    @Override
+    public Photo getPhoto(int position) {
+        return photoList.get(position);
+    }
+
+    void appendPhotos(List<Photo> photos) {
+        if (pendingAppends != null) {
+            pendingAppends.addAll(photos);
+            return;
+        }
+        int positionStart = photoList.size();
+        photoList.addAll(photos);
+        notifyItemRangeInserted(positionStart, photos.size());
+    }
+
+    /*
+    * Replaces the whole list. The old and new lists are compared on a background thread
+    * and only the differences are passed on to the RecyclerView.
+    * */
+    void loadNewData(List<Photo> newPhotos) {
+        final List<Photo> oldList = photoList;
+        final List<Photo> newList = new ArrayList<>(newPhotos);
+        final int generation = ++diffGeneration;
+        pendingAppends = new ArrayList<>();
+
+        diffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                final DiffUtil.DiffResult result = DiffUtil.calculateDiff(new PhotoDiffCallback(oldList, newList));
+                DebugLog.d(TAG, "loadNewData: diff of %d -> %d photos took %dus",
+                        oldList.size(), newList.size(), (System.nanoTime() - start) / 1000);
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != diffGeneration) {
+                            //a newer list has been given to us since, its diff will be applied instead
+                            return;
+                        }
+                        List<Photo> appended = pendingAppends;
+                        pendingAppends = null;
+                        photoList = newList;
+                        result.dispatchUpdatesTo(FlickrRecyclerViewAdapter.this);
+                        if (!appended.isEmpty()) {
+                            appendPhotos(appended);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /*
+    * 64 bit FNV-1a hash of the link. String.hashCode() is only 32 bits, which makes two
+    * photos sharing an id (and the RecyclerView mixing their views up) far more likely.
+    * */
+    static long stableId(String link) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < link.length(); i++) {
+            hash ^= link.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        //NO_ID is -1, never hand that out
+        return hash == RecyclerView.NO_ID ? 0 : hash;
+    }
+
+    static class PhotoDiffCallback extends DiffUtil.Callback {
+        private final List<Photo> oldList;
+        private final List<Photo> newList;
+
+        PhotoDiffCallback(List<Photo> oldList, List<Photo> newList) {
+            this.oldList = oldList;
+            this.newList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            //the image URL is what identifies a photo, the same thing FeedPager de-duplicates on
+            return oldList.get(oldItemPosition).getImage().equals(newList.get(newItemPosition).getImage());
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            //only the thumbnail is shown, so a photo only looks different if its image changed
+            return areItemsTheSame(oldItemPosition, newItemPosition);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+
+/*
+*   Times every frame the UI thread draws, using the Choreographer's vsync callbacks, and
+*   feeds them into a FrameStats.
+*
+*   Only run it while something is animating (e.g. while the grid is scrolling): posting a
+*   frame callback asks for the next vsync, so leaving it running keeps the screen awake
+*   and fills the stats with idle frames.
+*
+*   Choreographer is API 16, so only create one on Jelly Bean and up.
+* */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+class FrameMonitor implements Choreographer.FrameCallback {
+    private final FrameStats stats;
+    private boolean running;
+    private long lastFrameTimeNanos;
+
+    FrameMonitor(float refreshRate) {
+        stats = new FrameStats((long) (1e9 / refreshRate));
+    }
+
+    //main thread only
+    void start() {
+        if (!running) {
+            running = true;
+            lastFrameTimeNanos = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    //main thread only
+    void stop() {
+        if (running) {
+            running = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    FrameStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running) {
+            return;
+        }
+        //the gap between two vsync timestamps is how long the frame in between took
+        if (lastFrameTimeNanos != 0) {
+            stats.addFrame(frameTimeNanos - lastFrameTimeNanos);
+        }
+        lastFrameTimeNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+}
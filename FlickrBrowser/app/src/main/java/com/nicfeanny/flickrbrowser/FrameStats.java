@@ -0,0 +1,101 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/*
+*   Adds up how long each frame took (see FrameMonitor) so that jank is a number we can
+*   compare between builds rather than a feeling.
+*
+*   A frame counts as janky when it took more than one and a half refresh intervals, i.e.
+*   at least one vsync went by without a new frame. droppedFrames is how many vsyncs in
+*   total were missed. Frame times are also kept in a per millisecond histogram for the
+*   percentiles.
+* */
+class FrameStats {
+    //frames slower than this all go in the last bucket
+    private static final int MAX_BUCKET_MILLIS = 200;
+
+    private final long refreshIntervalNanos;
+    private final int[] histogram = new int[MAX_BUCKET_MILLIS + 1];
+
+    private long frames;
+    private long jankyFrames;
+    private long droppedFrames;
+    private long worstFrameNanos;
+    private long totalNanos;
+
+    FrameStats(long refreshIntervalNanos) {
+        this.refreshIntervalNanos = refreshIntervalNanos;
+    }
+
+    synchronized void addFrame(long frameNanos) {
+        frames++;
+        totalNanos += frameNanos;
+        worstFrameNanos = Math.max(worstFrameNanos, frameNanos);
+
+        if (frameNanos * 2 > refreshIntervalNanos * 3) {
+            jankyFrames++;
+            //rounded to the nearest whole number of vsyncs, minus the one we did draw in
+            droppedFrames += (frameNanos + refreshIntervalNanos / 2) / refreshIntervalNanos - 1;
+        }
+
+        int bucket = (int) Math.min(MAX_BUCKET_MILLIS, frameNanos / 1000000);
+        histogram[bucket]++;
+    }
+
+    synchronized long getFrameCount() {
+        return frames;
+    }
+
+    synchronized long getJankyFrameCount() {
+        return jankyFrames;
+    }
+
+    synchronized long getDroppedFrameCount() {
+        return droppedFrames;
+    }
+
+    synchronized double getJankPercent() {
+        return frames == 0 ? 0 : jankyFrames * 100.0 / frames;
+    }
+
+    synchronized long getWorstFrameMillis() {
+        return worstFrameNanos / 1000000;
+    }
+
+    /*
+    * The frame time (in whole milliseconds) that percentile percent of frames were at or
+    * under, e.g. percentileMillis(90).
+    * */
+    synchronized int percentileMillis(double percent) {
+        if (frames == 0) {
+            return 0;
+        }
+        long wanted = (long) Math.ceil(frames * percent / 100.0);
+        long seen = 0;
+        for (int millis = 0; millis < histogram.length; millis++) {
+            seen += histogram[millis];
+            if (seen >= wanted) {
+                return millis;
+            }
+        }
+        return MAX_BUCKET_MILLIS;
+    }
+
+    synchronized void reset() {
+        frames = 0;
+        jankyFrames = 0;
+        droppedFrames = 0;
+        worstFrameNanos = 0;
+        totalNanos = 0;
+        Arrays.fill(histogram, 0);
+    }
+
+    synchronized String summary() {
+        return String.format(Locale.US, "frames=%d janky=%d (%.1f%%) dropped=%d avg=%.1fms p50=%dms p90=%dms p99=%dms worst=%dms",
+                frames, jankyFrames, getJankPercent(), droppedFrames,
+                frames == 0 ? 0 : totalNanos / 1e6 / frames,
+                percentileMillis(50), percentileMillis(90), percentileMillis(99), getWorstFrameMillis());
+    }
+}
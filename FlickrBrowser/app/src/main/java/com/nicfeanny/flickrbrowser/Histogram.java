@@ -0,0 +1,115 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+*   Counts how often each value was recorded, for percentiles of things like download times
+*   where the average hides the slow ones. Cheap enough to leave on in release builds:
+*   record() is a few atomic adds, no locks and no allocation.
+*
+*   Values (>= 0, e.g. milliseconds or bytes) go in log-linear buckets: 0-15 each get their
+*   own, above that every power of two is split into 16, so a bucket is never more than
+*   1/16th (~6%) wider than its lowest value. Percentiles are the top of their bucket, i.e.
+*   never under the real value. Values past 2^MAX_EXPONENT all go in the last bucket, max
+*   is still exact.
+*
+*   Reads while other threads record can be a value or two out, fine for telemetry.
+* */
+class Histogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(bucketFor(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    static int bucketFor(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        //the SUB_BUCKET_BITS bits under the top one
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+    }
+
+    //the highest value that goes in bucket
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        if (bucket >= BUCKET_COUNT - 1) {
+            return Long.MAX_VALUE;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    long getSum() {
+        return sum.get();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /*
+    * The value percent of the recorded values were at or under, e.g. percentile(99).
+    * 0 if nothing has been recorded.
+    * */
+    long percentile(double percent) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(n * percent / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= wanted) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
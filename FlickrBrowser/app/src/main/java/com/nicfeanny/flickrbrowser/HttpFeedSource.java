@@ -0,0 +1,27 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.util.Map;
+
+/*
+*   The feeds from flickr itself: GetRawData over a Transport, with its retries and per host
+*   circuit breaker.
+* */
+class HttpFeedSource implements FeedSource {
+    private final Transport transport;
+
+    HttpFeedSource() {
+        this(GetRawData.DEFAULT_TRANSPORT);
+    }
+
+    HttpFeedSource(Transport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    public FeedResponse fetch(String uri, Map<String, String> requestHeaders, GetRawData.OnStreamAvailable consumer) {
+        GetRawData getRawData = new GetRawData(transport);
+        getRawData.streamInSameThread(uri, requestHeaders, consumer);
+        return new FeedResponse(getRawData.getLastResult(), getRawData.getResponseHeader("ETag"),
+                getRawData.getResponseHeader("Last-Modified"));
+    }
+}
@@ -0,0 +1,209 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/*
+*   Transport built on HttpURLConnection.
+*
+*   HttpURLConnection already keeps a pool of idle keep-alive connections per host, but it
+*   can only put a connection back in the pool if the body was read to the end and the
+*   stream closed WITHOUT calling disconnect(). GetRawData used to disconnect() after every
+*   request, which throws the socket away and means a new TCP connect (and TLS handshake,
+*   once the feed is fetched over https) every time.
+*
+*   With keepAlive on (the default) close() finishes reading any small remainder of the
+*   body and closes the stream so the socket goes back in the pool. With it off every
+*   request asks for "Connection: close" and disconnects, the old behaviour.
+*
+*   Timeouts are always set; without them a stalled server can block a thread for ever.
+* */
+class HttpURLConnectionTransport implements Transport {
+    static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    static final int DEFAULT_READ_TIMEOUT_MILLIS = 20 * 1000;
+
+    //bodies with more than this left unread aren't worth draining just to reuse the socket
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final boolean keepAlive;
+
+    HttpURLConnectionTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS, true);
+    }
+
+    HttpURLConnectionTransport(int connectTimeoutMillis, int readTimeoutMillis, boolean keepAlive) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.keepAlive = keepAlive;
+    }
+
+    @Override
+    public TransportResponse get(String s, Map<String, String> requestHeaders) throws IOException {
+        RequestTiming timing = new RequestTiming();
+        URL url = new URL(s);
+
+        /*
+        * There's no separate DNS time. Looking the host up ourselves to time it was a second
+        * blocking lookup on every request: outside the timeouts, and even when a pooled
+        * connection meant no lookup was needed at all. Any lookup is part of connect instead.
+        * */
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        boolean connected = false;
+        try {
+            connection.setConnectTimeout(connectTimeoutMillis);
+            connection.setReadTimeout(readTimeoutMillis);
+            connection.setRequestMethod("GET");
+            //asking for gzip ourselves means HttpURLConnection will NOT unzip it for us, see below
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (!keepAlive) {
+                connection.setRequestProperty("Connection", "close");
+            }
+            if (requestHeaders != null) {
+                for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+
+            long start = System.nanoTime();
+            connection.connect();
+            timing.setConnectNanos(System.nanoTime() - start);
+
+            start = System.nanoTime();
+            int code = connection.getResponseCode();
+            timing.setTtfbNanos(System.nanoTime() - start);
+
+            InputStream raw;
+            if (code >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                //getInputStream() would throw and lose the code; callers decide what an error means
+                raw = connection.getErrorStream();
+            } else if (code == HttpURLConnection.HTTP_NOT_MODIFIED || code == HttpURLConnection.HTTP_NO_CONTENT) {
+                raw = null;
+            } else {
+                raw = connection.getInputStream();
+            }
+            if (raw == null) {
+                raw = new ByteArrayInputStream(new byte[0]);
+            }
+
+            final TimedBody timedBody = new TimedBody(raw, timing);
+            InputStream body = timedBody;
+            if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+                body = new GZIPInputStream(timedBody);
+            }
+
+            TransportResponse response = new TransportResponse(code, connection.getHeaderFields(),
+                    connection.getContentLength(), body, timing, new Closeable() {
+                @Override
+                public void close() throws IOException {
+                    release(connection, timedBody);
+                }
+            });
+            connected = true;
+            return response;
+        } finally {
+            if (!connected) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private void release(HttpURLConnection connection, TimedBody body) throws IOException {
+        try {
+            //the socket only goes back to the pool if the body was read to the end
+            if (keepAlive && body.drain(MAX_DRAIN_BYTES)) {
+                body.close();
+            } else {
+                body.close();
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    //measures from the first read of the body until it is used up or closed
+    private static class TimedBody extends FilterInputStream {
+        private final RequestTiming timing;
+        private long start = -1;
+        private long bytes;
+        private boolean finished;
+
+        TimedBody(InputStream in, RequestTiming timing) {
+            super(in);
+            this.timing = timing;
+        }
+
+        @Override
+        public int read() throws IOException {
+            begin();
+            int b = super.read();
+            if (b == -1) {
+                finish();
+            } else {
+                PerfCounters.increment(PerfCounters.Counter.BYTES_READ);
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            begin();
+            int read = super.read(buffer, offset, count);
+            if (read == -1) {
+                finish();
+            } else {
+                PerfCounters.add(PerfCounters.Counter.BYTES_READ, read);
+                bytes += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            super.close();
+        }
+
+        //returns true if the end of the body was reached within maxBytes
+        boolean drain(int maxBytes) throws IOException {
+            if (finished) {
+                return true;
+            }
+            byte[] skip = new byte[4096];
+            int total = 0;
+            while (total <= maxBytes) {
+                int read = read(skip, 0, skip.length);
+                if (read == -1) {
+                    return true;
+                }
+                total += read;
+            }
+            return false;
+        }
+
+        private void begin() {
+            if (start == -1) {
+                start = System.nanoTime();
+            }
+        }
+
+        private void finish() {
+            if (!finished) {
+                finished = true;
+                timing.setBodyNanos(start == -1 ? 0 : System.nanoTime() - start);
+                Metrics.record(Metrics.Metric.DOWNLOAD_BYTES, bytes);
+            }
+        }
+    }
+}
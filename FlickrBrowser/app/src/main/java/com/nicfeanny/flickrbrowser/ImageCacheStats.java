@@ -0,0 +1,93 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+*   Counters for the image pipeline so we can see how well the caches are sized,
+*   particularly on low RAM devices where the memory cache is small.
+* */
+class ImageCacheStats {
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong networkLoads = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong memoryEvictions = new AtomicLong();
+    private final AtomicLong decodes = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+
+    void memoryHit() {
+        memoryHits.incrementAndGet();
+    }
+
+    void diskHit() {
+        diskHits.incrementAndGet();
+    }
+
+    void networkLoad() {
+        networkLoads.incrementAndGet();
+    }
+
+    void failure() {
+        failures.incrementAndGet();
+    }
+
+    //a request for a URL which was already being loaded, so it shared that load
+    void coalesced() {
+        coalesced.incrementAndGet();
+    }
+
+    void memoryEviction() {
+        memoryEvictions.incrementAndGet();
+    }
+
+    void decoded(long nanos) {
+        decodes.incrementAndGet();
+        decodeNanos.addAndGet(nanos);
+    }
+
+    long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    long getDiskHits() {
+        return diskHits.get();
+    }
+
+    long getNetworkLoads() {
+        return networkLoads.get();
+    }
+
+    long getCoalesced() {
+        return coalesced.get();
+    }
+
+    long getMemoryEvictions() {
+        return memoryEvictions.get();
+    }
+
+    long getDecodes() {
+        return decodes.get();
+    }
+
+    //fraction of requests answered without going to the network
+    double hitRate() {
+        long hits = memoryHits.get() + diskHits.get();
+        long total = hits + networkLoads.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    double averageDecodeMillis() {
+        long count = decodes.get();
+        return count == 0 ? 0 : decodeNanos.get() / 1e6 / count;
+    }
+
+    String summary(int diskEvictions) {
+        return String.format(Locale.US,
+                "hitRate=%.2f memoryHits=%d diskHits=%d network=%d failures=%d coalesced=%d " +
+                        "memoryEvictions=%d diskEvictions=%d decodes=%d avgDecodeMs=%.2f",
+                hitRate(), memoryHits.get(), diskHits.get(), networkLoads.get(), failures.get(), coalesced.get(),
+                memoryEvictions.get(), diskEvictions, decodes.get(), averageDecodeMillis());
+    }
+}
@@ -0,0 +1,441 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+*   Downloads, caches and decodes the photo images (Photo.getImage() for the thumbnails,
+*   Photo.getLink() for the large ones).
+*
+*   As the Photo class says, images are fetched "just before we need it"; this class makes
+*   that cheap when the same image is needed again:
+*       1. memory cache  - decoded bitmaps, limited by bytes (BitmapMemoryCache)
+*       2. disk cache    - the downloaded jpg files, limited by bytes (DiskImageCache)
+*       3. network       - GetRawData's byte level download
+*   Everything is keyed by the image URL. Bitmaps are decoded with inSampleSize so that we
+*   never hold many more pixels than the view that shows them, and if the same URL is
+*   requested while it is already loading the second caller just waits for the first load.
+*   A bitmap decoded for a smaller view than the one asking doesn't count as a memory hit
+*   (see BitmapMemoryCache), nor does a load in flight for a smaller one; the jpg is decoded
+*   again at the bigger size, from the disk cache normally.
+*   Which of flickr's sizes to ask for in the first place is up to the ImageSizeSelector
+*   (urlFor), which is told how fast each download was.
+*   The first decode of a photo's thumbnail also works out its Placeholder (dominant colour +
+*   aspect ratio) for Placeholders, when the load says which photo it is for.
+*   Under memory pressure (MemoryGovernor) the memory cache shrinks, queued prefetches are
+*   dropped and, from LOW on, images are decoded at half the size asked for.
+*
+*   load() must be called on the main thread and callbacks are delivered on it.
+* */
+class ImageLoader implements MemoryGovernor.Trimmable {
+    private static final String TAG = "ImageLoader";
+
+    private static final int THREAD_COUNT = 3;
+    private static final long DISK_CACHE_BYTES = 20 * 1024 * 1024;
+
+    private static ImageLoader instance;
+
+    interface OnImageLoaded {
+        //bitmap is null if the image could not be downloaded or decoded
+        void onImageLoaded(String url, Bitmap bitmap);
+    }
+
+    private static final OnImageLoaded NO_CALLBACK = new OnImageLoaded() {
+        @Override
+        public void onImageLoaded(String url, Bitmap bitmap) {
+        }
+    };
+
+    /*
+    * Handle for one call to load(); cancel() it when the view no longer wants the image
+    * (e.g. it has been recycled for a different photo). A load that is already running
+    * still finishes and fills the caches, we just don't call back.
+    * */
+    class Request {
+        private final Load load;
+        private final OnImageLoaded callBack;
+        //from prefetch(), nothing is on screen waiting for it
+        private final boolean prefetch;
+        private boolean cancelled;
+
+        private Request(Load load, OnImageLoaded callBack, boolean prefetch) {
+            this.load = load;
+            this.callBack = callBack;
+            this.prefetch = prefetch;
+        }
+
+        void cancel() {
+            cancelled = true;
+            if (load != null) {
+                ImageLoader.this.detach(this);
+            }
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    //one in-flight download + decode, shared by every Request for the same URL
+    private static class Load {
+        final String url;
+        final int targetWidth;
+        final int targetHeight;
+        final List<Request> waiting = new ArrayList<>();
+        Future<?> future;
+        //the Photo.getImage() to work out a Placeholder for, if any
+        String placeholderFor;
+
+        Load(String url, String placeholderFor, int targetWidth, int targetHeight) {
+            this.url = url;
+            this.placeholderFor = placeholderFor;
+            this.targetWidth = targetWidth;
+            this.targetHeight = targetHeight;
+        }
+    }
+
+    private final BitmapMemoryCache memoryCache;
+    private final DiskImageCache diskCache;
+    private final ImageCacheStats stats = new ImageCacheStats();
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, Load> inFlight = new HashMap<>();
+    private final ImageSizeSelector sizeSelector;
+    private final Placeholders placeholders = Placeholders.getShared();
+    //1, or 2 to decode at half the size while memory is low
+    private volatile int decodeDownscale = 1;
+
+    static synchronized ImageLoader getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            ActivityManager activityManager = (ActivityManager) appContext.getSystemService(Context.ACTIVITY_SERVICE);
+            //an eighth of what this app is allowed, memoryClass is in MB
+            int memoryCacheBytes = activityManager.getMemoryClass() * 1024 * 1024 / 8;
+            instance = new ImageLoader(memoryCacheBytes, new File(appContext.getCacheDir(), "images"), DISK_CACHE_BYTES,
+                    new ImageSizeSelector(appContext.getResources().getDisplayMetrics().density));
+            MemoryGovernor.getShared().register(instance);
+        }
+        return instance;
+    }
+
+    ImageLoader(int memoryCacheBytes, File diskCacheDirectory, long diskCacheBytes) {
+        this(memoryCacheBytes, diskCacheDirectory, diskCacheBytes, new ImageSizeSelector(1f));
+    }
+
+    ImageLoader(int memoryCacheBytes, File diskCacheDirectory, long diskCacheBytes, ImageSizeSelector sizeSelector) {
+        this.sizeSelector = sizeSelector;
+        memoryCache = new BitmapMemoryCache(memoryCacheBytes, stats);
+        diskCache = new DiskImageCache(diskCacheDirectory, diskCacheBytes);
+        executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new BackgroundThreadFactory("ImageLoader"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /*
+    * Loads url decoded to (roughly) targetWidth x targetHeight pixels.
+    * A memory cache hit calls back straight away, before this method returns.
+    * */
+    Request load(String url, int targetWidth, int targetHeight, OnImageLoaded callBack) {
+        return load(url, null, targetWidth, targetHeight, callBack);
+    }
+
+    /*
+    * As above, for the thumbnail of the photo whose Photo.getImage() is placeholderFor: if
+    * it has no Placeholder yet one is made from the decode.
+    * */
+    Request load(String url, String placeholderFor, int targetWidth, int targetHeight, OnImageLoaded callBack) {
+        return load(url, placeholderFor, targetWidth, targetHeight, callBack, false);
+    }
+
+    private Request load(String url, String placeholderFor, int targetWidth, int targetHeight, OnImageLoaded callBack,
+                         boolean prefetch) {
+        Bitmap cached = getCached(url, targetWidth, targetHeight);
+        if (cached != null) {
+            stats.memoryHit();
+            callBack.onImageLoaded(url, cached);
+            return new Request(null, callBack, prefetch);
+        }
+
+        synchronized (this) {
+            Load load = inFlight.get(url);
+            if (load != null && !covers(load, targetWidth, targetHeight)) {
+                //that one carries on for its own callers, the next ones for url join this bigger one
+                load = null;
+            }
+            if (load != null) {
+                stats.coalesced();
+                if (load.placeholderFor == null) {
+                    load.placeholderFor = placeholderFor;
+                }
+            } else {
+                load = new Load(url, placeholderFor, targetWidth, targetHeight);
+                inFlight.put(url, load);
+                final Load newLoad = load;
+                load.future = executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        runLoad(newLoad);
+                    }
+                });
+            }
+            Request request = new Request(load, callBack, prefetch);
+            load.waiting.add(request);
+            return request;
+        }
+    }
+
+    /*
+    * Loads url into the caches without anyone waiting for it, e.g. the thumbnails of a
+    * page of photos which isn't on screen yet. Cancel the Request if it stops being wanted.
+    * */
+    Request prefetch(String url, int targetWidth, int targetHeight) {
+        return load(url, null, targetWidth, targetHeight, NO_CALLBACK, true);
+    }
+
+    Request prefetch(String url, String placeholderFor, int targetWidth, int targetHeight) {
+        return load(url, placeholderFor, targetWidth, targetHeight, NO_CALLBACK, true);
+    }
+
+    /*
+    * As above, calling done once it is in the caches (or has failed, or been dropped by
+    * dropPrefetches, with a null bitmap), for a prefetcher that keeps count of its downloads.
+    * */
+    Request prefetch(String url, String placeholderFor, int targetWidth, int targetHeight, OnImageLoaded done) {
+        return load(url, placeholderFor, targetWidth, targetHeight, done, true);
+    }
+
+    /*
+    * Makes sure url is in the disk cache, downloading it on the calling thread if it isn't.
+    * Nothing is decoded or kept in memory; this is for filling the cache ahead of time from
+    * a background job (FeedSync), so call it off the main thread. False if the download failed.
+    * */
+    boolean warm(String url) {
+        if (diskCache.contains(url)) {
+            return true;
+        }
+        RawResponse body = new GetRawData().downloadInSameThread(url);
+        if (body == null) {
+            return false;
+        }
+        //not reported to the sizeSelector, a background job on wifi says nothing about the link the user will be on
+        try {
+            diskCache.put(url, body.array(), body.length());
+        } finally {
+            body.release();
+        }
+        return true;
+    }
+
+    /*
+    * The URL of photo at the size to load for a view of widthPx x heightPx. Everything
+    * loading or prefetching the same photo for the same view size should ask here, so they
+    * all end up with the same URL and share one cache entry.
+    * */
+    String urlFor(Photo photo, int widthPx, int heightPx, boolean cropToSquare) {
+        return photo.getImageUrl(sizeSelector.select(widthPx, heightPx, cropToSquare));
+    }
+
+    @Override
+    public void onMemoryPressure(MemoryGovernor.Pressure pressure) {
+        memoryCache.onMemoryPressure(pressure);
+        if (pressure != MemoryGovernor.Pressure.NONE) {
+            dropPrefetches();
+        }
+        decodeDownscale = pressure.ordinal() >= MemoryGovernor.Pressure.LOW.ordinal() ? 2 : 1;
+    }
+
+    /*
+    * Takes the loads nobody is waiting to see (only prefetch() asked for them) off the queue.
+    * One already running is left to finish. Returns how many were dropped.
+    * */
+    synchronized int dropPrefetches() {
+        int dropped = 0;
+        Iterator<Load> loads = inFlight.values().iterator();
+        while (loads.hasNext()) {
+            Load load = loads.next();
+            boolean prefetchOnly = true;
+            for (Request request : load.waiting) {
+                if (!request.prefetch) {
+                    prefetchOnly = false;
+                    break;
+                }
+            }
+            if (prefetchOnly && load.future.cancel(false)) {
+                loads.remove();
+                dropped++;
+                //so a prefetcher counting its downloads knows these are over
+                deliver(new ArrayList<>(load.waiting), load.url, null);
+            }
+        }
+        //otherwise the cancelled ones sit in the queue until a thread gets to them
+        executor.purge();
+        DebugLog.d(TAG, "dropPrefetches: %d dropped", dropped);
+        return dropped;
+    }
+
+    BitmapMemoryCache getMemoryCache() {
+        return memoryCache;
+    }
+
+    ImageSizeSelector getSizeSelector() {
+        return sizeSelector;
+    }
+
+    //url's bitmap at whatever size it was decoded, e.g. to show until a bigger one is loaded
+    Bitmap getCached(String url) {
+        return memoryCache.get(url);
+    }
+
+    //url's bitmap if it is big enough for a targetWidth x targetHeight view, as load() would find it
+    Bitmap getCached(String url, int targetWidth, int targetHeight) {
+        int downscale = decodeDownscale;
+        return memoryCache.get(url, targetWidth / downscale, targetHeight / downscale);
+    }
+
+    ImageCacheStats getStats() {
+        return stats;
+    }
+
+    void logStats() {
+        if (!DebugLog.isEnabled()) {
+            return;
+        }
+        DebugLog.d(TAG, "logStats: memory %d/%d bytes, disk %d/%d bytes, %s", memoryCache.size(), memoryCache.maxSize(),
+                diskCache.size(), diskCache.maxSize(), stats.summary(diskCache.evictionCount()));
+    }
+
+    //whether a load decoding for targetWidth x targetHeight (0 for full size) is big enough
+    private static boolean covers(Load load, int targetWidth, int targetHeight) {
+        if (load.targetWidth <= 0 || load.targetHeight <= 0) {
+            return true;
+        }
+        return targetWidth > 0 && targetHeight > 0
+                && load.targetWidth >= targetWidth && load.targetHeight >= targetHeight;
+    }
+
+    private synchronized void detach(Request request) {
+        Load load = request.load;
+        load.waiting.remove(request);
+        if (load.waiting.isEmpty() && inFlight.get(load.url) == load) {
+            //nobody wants it any more; if it hasn't started yet it never will
+            inFlight.remove(load.url);
+            load.future.cancel(false);
+        }
+    }
+
+    //runs on one of the executor's threads
+    private void runLoad(Load load) {
+        Bitmap bitmap = null;
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        String placeholderFor;
+        synchronized (this) {
+            placeholderFor = load.placeholderFor;
+        }
+
+        byte[] data = diskCache.get(load.url);
+        if (data != null) {
+            stats.diskHit();
+            bitmap = decode(data, data.length, load.targetWidth, load.targetHeight, placeholderFor, options);
+        } else {
+            stats.networkLoad();
+            GetRawData getRawData = new GetRawData();
+            RawResponse body = getRawData.downloadInSameThread(load.url);
+            if (body != null) {
+                sizeSelector.recordDownload(body.length(), getRawData.getLastTiming().getBodyNanos());
+                try {
+                    diskCache.put(load.url, body.array(), body.length());
+                    bitmap = decode(body.array(), body.length(), load.targetWidth, load.targetHeight, placeholderFor,
+                            options);
+                } finally {
+                    body.release();
+                }
+            }
+        }
+
+        if (bitmap != null) {
+            memoryCache.add(load.url, bitmap, options.inSampleSize);
+        } else {
+            stats.failure();
+        }
+
+        final List<Request> waiting;
+        synchronized (this) {
+            if (inFlight.get(load.url) == load) {
+                inFlight.remove(load.url);
+            }
+            waiting = new ArrayList<>(load.waiting);
+        }
+
+        deliver(waiting, load.url, bitmap);
+    }
+
+    //calls back the requests which haven't been cancelled, on the main thread
+    private void deliver(final List<Request> waiting, final String url, final Bitmap bitmap) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Request request : waiting) {
+                    if (!request.cancelled) {
+                        request.callBack.onImageLoaded(url, bitmap);
+                    }
+                }
+            }
+        });
+    }
+
+    //options.inSampleSize is what it was decoded with
+    private Bitmap decode(byte[] data, int length, int targetWidth, int targetHeight, String placeholderFor,
+                          BitmapFactory.Options options) {
+        long start = System.nanoTime();
+
+        //first pass only reads the header so we know the size without allocating pixels
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, length, options);
+        int width = options.outWidth;
+        int height = options.outHeight;
+
+        int downscale = decodeDownscale;
+        options.inSampleSize = calculateInSampleSize(width, height, targetWidth / downscale, targetHeight / downscale);
+        options.inJustDecodeBounds = false;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, length, options);
+
+        long nanos = System.nanoTime() - start;
+        stats.decoded(nanos);
+        Metrics.record(Metrics.Metric.IMAGE_DECODE_MICROS, nanos / 1000);
+        //a few dozen getPixel()s, next to nothing beside the decode
+        if (bitmap != null && placeholderFor != null && !placeholders.contains(placeholderFor)) {
+            placeholders.put(placeholderFor, Placeholder.of(bitmap, width, height));
+        }
+        return bitmap;
+    }
+
+    /*
+    * Largest power of two that still leaves the image at least as big as the target in
+    * both directions. A target of 0 means "full size".
+    * */
+    static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int inSampleSize = 1;
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return inSampleSize;
+        }
+        while (width / (inSampleSize * 2) >= targetWidth && height / (inSampleSize * 2) >= targetHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+}
@@ -0,0 +1,33 @@
+package com.nicfeanny.flickrbrowser;
+
+/*
+*   The sizes flickr serves every photo at, smallest first. The size is picked by the
+*   suffix before .jpg: .../{id}_{secret}_m.jpg is SMALL_240 (what the feed gives us),
+*   .../{id}_{secret}_b.jpg is LARGE_1024, and no suffix at all is MEDIUM_500.
+*
+*   longestSide is the longer edge in pixels; the square sizes are cropped to exactly that.
+* */
+enum ImageSize {
+    SQUARE_75("_s", 75, true),
+    THUMBNAIL_100("_t", 100, false),
+    SQUARE_150("_q", 150, true),
+    SMALL_240("_m", 240, false),
+    SMALL_320("_n", 320, false),
+    MEDIUM_500("", 500, false),
+    MEDIUM_640("_z", 640, false),
+    MEDIUM_800("_c", 800, false),
+    LARGE_1024("_b", 1024, false);
+
+    //what the feed's media.m URL is
+    static final ImageSize FEED = SMALL_240;
+
+    final String suffix;
+    final int longestSide;
+    final boolean square;
+
+    ImageSize(String suffix, int longestSide, boolean square) {
+        this.suffix = suffix;
+        this.longestSide = longestSide;
+        this.square = square;
+    }
+}
@@ -0,0 +1,106 @@
+package com.nicfeanny.flickrbrowser;
+
+/*
+*   Picks which of flickr's sizes (ImageSize) to download for a view, instead of always
+*   the feed's _m thumbnail and the _b large image.
+*
+*   - The smallest size that still covers the view is chosen, so a small grid cell on a
+*     low density screen gets a 150px square rather than a 240px image it would only
+*     shrink again, and a big cell on a dense screen doesn't get stretched.
+*   - centerCrop views only show the middle of a photo, so they need the photo's SHORT side
+*     to cover the view. We don't know a photo's shape before downloading it, so the square
+*     sizes are used when they are big enough and otherwise the short side is taken to be
+*     3/4 of the long one (most photos are 4:3 or 3:2).
+*   - While the measured download throughput is low the view is allowed to be covered at
+*     up to 1/density of its pixels (at most half), i.e. roughly one image pixel per dp.
+*     On a dense screen that looks a little soft but arrives a lot sooner.
+*
+*   Throughput is a moving average of the image downloads ImageLoader reports. To keep the
+*   chosen URLs (and so the cache keys) from flapping between two sizes, the slow state
+*   is only left again once throughput is clearly above the threshold.
+* */
+class ImageSizeSelector {
+    private static final String TAG = "ImageSizeSelector";
+
+    //below this an image download is slow enough to be worth fewer pixels
+    static final long SLOW_BYTES_PER_SECOND = 150 * 1024;
+    //...and it has to get back above this to count as fast again
+    static final long FAST_BYTES_PER_SECOND = 250 * 1024;
+
+    //bodies smaller than this are over before the throughput shows, they'd only add noise
+    private static final int MIN_SAMPLE_BYTES = 4 * 1024;
+    //weight of the newest download in the moving average
+    private static final double SMOOTHING = 0.3;
+    //assumed short side / long side of a photo we haven't seen yet
+    private static final float ASSUMED_ASPECT = 0.75f;
+
+    private final float density;
+
+    //bytes per second, -1 until the first download has been measured
+    private double throughput = -1;
+    private boolean slow;
+
+    //density as in DisplayMetrics.density: 1 on mdpi, 2 on xhdpi, 3 on xxhdpi...
+    ImageSizeSelector(float density) {
+        this.density = density;
+    }
+
+    /*
+    * The size to download for a view of widthPx x heightPx pixels. cropToSquare is for
+    * views which crop the photo to fill them (scaleType centerCrop).
+    * */
+    ImageSize select(int widthPx, int heightPx, boolean cropToSquare) {
+        float needed = Math.max(widthPx, heightPx);
+        if (isSlow()) {
+            needed /= Math.max(1f, Math.min(density, 2f));
+        }
+
+        ImageSize[] sizes = ImageSize.values();
+        for (ImageSize size : sizes) {
+            if (cropToSquare && size.square) {
+                if (size.longestSide >= needed) {
+                    return size;
+                }
+            } else if (!size.square) {
+                float covers = cropToSquare ? size.longestSide * ASSUMED_ASPECT : size.longestSide;
+                if (covers >= needed) {
+                    return size;
+                }
+            }
+        }
+        //bigger than anything flickr has for every photo
+        return ImageSize.LARGE_1024;
+    }
+
+    /*
+    * Reports one download of bytes that took nanos (from the first body byte to the last,
+    * see RequestTiming). Called from ImageLoader's threads.
+    * */
+    synchronized void recordDownload(long bytes, long nanos) {
+        if (bytes < MIN_SAMPLE_BYTES || nanos <= 0) {
+            return;
+        }
+        double sample = bytes * 1e9 / nanos;
+        throughput = throughput < 0 ? sample : throughput + SMOOTHING * (sample - throughput);
+
+        boolean wasSlow = slow;
+        if (throughput < SLOW_BYTES_PER_SECOND) {
+            slow = true;
+        } else if (throughput > FAST_BYTES_PER_SECOND) {
+            slow = false;
+        }
+        if (slow != wasSlow) {
+            DebugLog.d(TAG, "recordDownload: %s at %d bytes/s", slow ? "slow" : "fast", (long) throughput);
+        }
+    }
+
+    //bytes per second, -1 if nothing has been measured yet
+    synchronized long getThroughput() {
+        return (long) throughput;
+    }
+
+    //until we know otherwise the link is assumed to be fast
+    synchronized boolean isSlow() {
+        return slow;
+    }
+}
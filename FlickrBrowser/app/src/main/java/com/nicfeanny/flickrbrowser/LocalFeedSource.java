@@ -0,0 +1,158 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.net.Uri;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+*   Feeds without a network, for load testing the parsing, caching and the grid with feeds
+*   10-100x bigger than flickr sends (see FetchScheduler.setDefaultFeedSource).
+*
+*   - recorded(): the same feed bytes for every URL, e.g. a feed saved from flickr.
+*   - synthetic(): a SyntheticFeed of itemsPerFeed photos for the URL's tags and page, so
+*     every page is different. The last few generated feeds are kept, so a load test
+*     measures the app rather than the generator.
+*   - latencyMillis is waited before the "response" and, if bytesPerSecond isn't 0, the body
+*     trickles out at that rate so streaming parsers see it arrive in pieces like they would
+*     from a socket.
+*   - Every feed has an ETag; If-None-Match with it gets a 304, as flickr does.
+* */
+class LocalFeedSource implements FeedSource {
+    private static final String TAG = "LocalFeedSource";
+
+    private static final int MAX_GENERATED = 8;
+
+    interface Feeds {
+        byte[] get(String uri);
+    }
+
+    private final Feeds feeds;
+    private final long latencyMillis;
+    private final long bytesPerSecond;
+
+    static LocalFeedSource recorded(final byte[] feed, long latencyMillis, long bytesPerSecond) {
+        return new LocalFeedSource(new Feeds() {
+            @Override
+            public byte[] get(String uri) {
+                return feed;
+            }
+        }, latencyMillis, bytesPerSecond);
+    }
+
+    static LocalFeedSource synthetic(final SyntheticFeed generator, final int itemsPerFeed, long latencyMillis,
+                                     long bytesPerSecond) {
+        final Map<String, byte[]> generated = new LinkedHashMap<String, byte[]>(MAX_GENERATED, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > MAX_GENERATED;
+            }
+        };
+        return new LocalFeedSource(new Feeds() {
+            @Override
+            public byte[] get(String uri) {
+                synchronized (generated) {
+                    byte[] feed = generated.get(uri);
+                    if (feed == null) {
+                        Uri parsed = Uri.parse(uri);
+                        String page = parsed.getQueryParameter("page");
+                        feed = generator.generate(parsed.getQueryParameter("tags"),
+                                page == null ? 1 : Integer.parseInt(page), itemsPerFeed);
+                        generated.put(uri, feed);
+                    }
+                    return feed;
+                }
+            }
+        }, latencyMillis, bytesPerSecond);
+    }
+
+    LocalFeedSource(Feeds feeds, long latencyMillis, long bytesPerSecond) {
+        this.feeds = feeds;
+        this.latencyMillis = latencyMillis;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    @Override
+    public FeedResponse fetch(String uri, Map<String, String> requestHeaders, GetRawData.OnStreamAvailable consumer) {
+        long start = System.nanoTime();
+        byte[] feed = feeds.get(uri);
+        String eTag = String.format(Locale.US, "\"%08x-%d\"", Arrays.hashCode(feed), feed.length);
+
+        DownloadResult.Failure failure = DownloadResult.Failure.NONE;
+        int code = HttpURLConnection.HTTP_OK;
+        try {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            if (requestHeaders != null && eTag.equals(requestHeaders.get("If-None-Match"))) {
+                code = HttpURLConnection.HTTP_NOT_MODIFIED;
+            } else {
+                InputStream body = new ByteArrayInputStream(feed);
+                consumer.onStreamAvailable(bytesPerSecond > 0 ? new ThrottledInputStream(body, bytesPerSecond) : body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = DownloadResult.Failure.INTERRUPTED;
+        } catch (IOException e) {
+            failure = DownloadResult.failureFor(e, true);
+        }
+
+        DownloadResult result = new DownloadResult(failure, code, (System.nanoTime() - start) / 1000000, 1);
+        DebugLog.d(TAG, "fetch: %s %d bytes %s", uri, feed.length, result);
+        return new FeedResponse(result, eTag, null);
+    }
+
+    //hands out at most bytesPerSecond, sleeping in between
+    private static class ThrottledInputStream extends InputStream {
+        //read() hands out at most this much at a time, a socket read wouldn't be bigger
+        private static final int CHUNK_BYTES = 1460;
+
+        private final InputStream in;
+        private final long bytesPerSecond;
+        private final long start = System.nanoTime();
+        private long read;
+
+        ThrottledInputStream(InputStream in, long bytesPerSecond) {
+            this.in = in;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            //when the bytes handed out so far are due at this rate
+            long dueNanos = read * 1000000000L / bytesPerSecond;
+            long waitNanos = dueNanos - (System.nanoTime() - start);
+            if (waitNanos > 0) {
+                try {
+                    Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            int count = in.read(buffer, offset, Math.min(length, CHUNK_BYTES));
+            if (count > 0) {
+                read += count;
+            }
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return 0;
+        }
+    }
+}
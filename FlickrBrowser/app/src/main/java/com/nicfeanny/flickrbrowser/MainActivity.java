@@ -1,14 +1,23 @@
 package com.nicfeanny.flickrbrowser;
 
+import android.arch.lifecycle.Observer;
+import android.arch.lifecycle.ViewModelProviders;
+import android.content.Intent;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.design.widget.FloatingActionButton;
 import android.support.design.widget.Snackbar;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.support.v7.widget.Toolbar;
 import android.util.Log;
 import android.view.View;
 import android.view.Menu;
 import android.view.MenuItem;
+
 import java.util.List;
 
 /*MISC NOTES
@@ -25,10 +34,23 @@ import java.util.List;
 *
 * */
 
-public class MainActivity extends AppCompatActivity implements GetFlickrJSONData.OnDataAvailable{
+public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = "MainActivity";
 
+    //survives rotations, this Activity only shows what it has loaded
+    private FeedViewModel feedViewModel;
+    private FlickrRecyclerViewAdapter flickrRecyclerViewAdapter;
+    //loads the thumbnails the grid is scrolling towards
+    private ThumbnailPrefetcher thumbnailPrefetcher;
+    //how much of which FeedViewModel.Update generation the adapter has been given
+    private int shownGeneration = -1;
+    private int photosShown;
+    //null before API 16, see FrameMonitor
+    private FrameMonitor frameMonitor;
+    //main thread stalls for the Metrics, only while we're on screen
+    private final StallMonitor stallMonitor = new StallMonitor();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         Log.d(TAG, "onCreate: Starts...");
@@ -52,6 +74,76 @@ public class MainActivity extends AppCompatActivity implements GetFlickrJSONData
         //GetRawData getRawData = new GetRawData(this);
         //getRawData.execute("https://api.flickr.com/services/feeds/photos_public.gne?tags=android,nougat,sdk&tagmode=any&format=json&jsoncallback=1");
 
+        //the feed (one page of it, flickr's public feed has no more) or a search, see FeedPager and TagSearch
+        feedViewModel = ViewModelProviders.of(this).get(FeedViewModel.class);
+        //and the feeds in the FeedStore are kept fresh in the background, see FeedSyncWorker
+        FeedSyncWorker.schedule(this);
+        //the caches give memory back when the system asks
+        MemoryGovernor.getShared().install(this);
+
+        int spanCount = getResources().getInteger(R.integer.grid_span_count);
+        int thumbnailSize = getResources().getDimensionPixelSize(R.dimen.grid_thumbnail_height);
+        flickrRecyclerViewAdapter = new FlickrRecyclerViewAdapter(ImageLoader.getInstance(this), thumbnailSize);
+        //prefetched at the size the grid will show them, see ImageLoader.urlFor
+        thumbnailPrefetcher = new ThumbnailPrefetcher(ImageLoader.getInstance(this), flickrRecyclerViewAdapter,
+                spanCount, thumbnailSize);
+        flickrRecyclerViewAdapter.setOnPhotoClickListener(new FlickrRecyclerViewAdapter.OnPhotoClickListener() {
+            @Override
+            public void onPhotoClick(List<Photo> photos, int position) {
+                startActivity(PhotoDetailActivity.intentFor(MainActivity.this, photos, position));
+            }
+        });
+
+        RecyclerView recyclerView = (RecyclerView) findViewById(R.id.recycler_view);
+        final GridLayoutManager layoutManager = new GridLayoutManager(this, spanCount);
+        recyclerView.setLayoutManager(layoutManager);
+        //every cell is the same size, so adding photos never needs the RecyclerView itself re-measured
+        recyclerView.setHasFixedSize(true);
+        //a fling throws away whole rows at a time; keep enough spare cells that new rows don't inflate
+        recyclerView.getRecycledViewPool().setMaxRecycledViews(0, spanCount * 4);
+        //and the rows just scrolled off stay bound, so scrolling back doesn't rebind them
+        recyclerView.setItemViewCacheSize(spanCount * 2);
+        recyclerView.setAdapter(flickrRecyclerViewAdapter);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            frameMonitor = new FrameMonitor(getWindowManager().getDefaultDisplay().getRefreshRate());
+        }
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                //also called with dy 0 after a layout changes what's on screen
+                int lastVisible = layoutManager.findLastVisibleItemPosition();
+                feedViewModel.onViewportChanged(lastVisible);
+                thumbnailPrefetcher.onScrolled(layoutManager.findFirstVisibleItemPosition(), lastVisible, dy,
+                        SystemClock.uptimeMillis());
+            }
+
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    thumbnailPrefetcher.onScrollIdle(layoutManager.findFirstVisibleItemPosition(),
+                            layoutManager.findLastVisibleItemPosition());
+                }
+                //frames are only timed while the grid is moving
+                if (frameMonitor == null) {
+                    return;
+                }
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    frameMonitor.stop();
+                } else {
+                    frameMonitor.start();
+                }
+            }
+        });
+
+        //delivered while we're started; after a rotation the latest one arrives straight away
+        feedViewModel.getUpdates().observe(this, new Observer<FeedViewModel.Update>() {
+            @Override
+            public void onChanged(FeedViewModel.Update update) {
+                show(update);
+            }
+        });
+
         Log.d(TAG, "onCreate: Ends...");
     }
 
@@ -61,18 +153,50 @@ public class MainActivity extends AppCompatActivity implements GetFlickrJSONData
      * This is done because because when we pause the current activity and return we want
      * to resume what we were initially doing.
      * */
+     /*
+     * The feed is now fetched through the shared FetchScheduler rather than a new
+     * GetFlickrJSONData AsyncTask each time, by the FeedViewModel which outlives us. Once
+     * the first page has been loaded (or is on its way, even from before a rotation) this
+     * does nothing.
+     * */
      @Override
      protected void onResume(){
          Log.d(TAG, "onResume: starts...");
          super.onResume();
-         GetFlickrJSONData getFlickrJSONData = new GetFlickrJSONData(this, "http://api.flickr.com/services/feeds/photos_public.gne", "en-us", true);
-         getFlickrJSONData.execute("android, nougat");
+         stallMonitor.start();
+         //checked again each time we come back, the user may have left wifi meanwhile
+         thumbnailPrefetcher.setMetered(ThumbnailPrefetcher.isMetered(this));
+         feedViewModel.start();
      }
 
+    //fetches carry on, FeedViewModel only cancels them once we are finished for good
+    @Override
+    protected void onPause(){
+        Log.d(TAG, "onPause: starts...");
+        stallMonitor.stop();
+        thumbnailPrefetcher.cancelAll();
+        if (frameMonitor != null) {
+            frameMonitor.stop();
+        }
+        //the summaries are built up front, so only when they'll actually be printed
+        if (DebugLog.isEnabled()) {
+            if (frameMonitor != null) {
+                DebugLog.d(TAG, "onPause: scrolling %s", frameMonitor.getStats().summary());
+            }
+            DebugLog.d(TAG, "onPause: %s", PerfCounters.dump());
+        }
+        //the thumbnails' placeholders, so next time the grid has colours before any images
+        FeedStore.getInstance(this).savePlaceholdersAsync();
+        super.onPause();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.menu_main, menu);
+        //the debug screen, see MetricsActivity
+        menu.findItem(R.id.action_metrics).setVisible(DebugLog.isEnabled());
+        setUpSearch(menu.findItem(R.id.action_search));
 
         Log.d(TAG, "onCreateOptionsMenu: returned" + true);
         return true;
@@ -90,20 +214,77 @@ public class MainActivity extends AppCompatActivity implements GetFlickrJSONData
             return true;
         }
 
+        if (id == R.id.action_refresh) {
+            feedViewModel.refresh();
+            return true;
+        }
+
+        if (id == R.id.action_metrics) {
+            startActivity(new Intent(this, MetricsActivity.class));
+            return true;
+        }
+
         Log.d(TAG, "onOptionsItemSelected: returned ");
         return super.onOptionsItemSelected(item);
     }
 
 
-    //This method is created to verify that everything is working as expected
-    //it will not be used once everything is deployed but is a mechanism created
-    //to assist in the development process.
-    public void onDataAvailable(List<Photo> data, DownloadStatus status){
-        if(status == DownloadStatus.OK){
-            Log.d(TAG, "onDownloadComplete: Data is " + data);
-        } else{
-            //download or processing failed
-            Log.e(TAG, "onDownloadComplete failed with status " + status);
+    //tags typed in here are searched for by FeedViewModel, see TagSearch
+    private void setUpSearch(MenuItem item) {
+        final SearchView searchView = (SearchView) item.getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+        //still searching from before a rotation
+        String query = feedViewModel.getQuery();
+        if (query != null) {
+            item.expandActionView();
+            searchView.setQuery(query, false);
+            searchView.clearFocus();
         }
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                feedViewModel.search(query);
+                //the keyboard goes, so the results can be seen
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                return false;
+            }
+        });
+        item.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                feedViewModel.clearSearch();
+                return true;
+            }
+        });
+    }
+
+    //only the new page is handed over when we have everything before it, the cells already on screen are left alone
+    private void show(FeedViewModel.Update update){
+        if (update.follows(shownGeneration, photosShown)) {
+            Log.d(TAG, "show: " + update.itemCount + " photos at " + update.positionStart);
+            flickrRecyclerViewAdapter.appendPhotos(update.newPhotos());
+        } else {
+            //a fresh first page, or we're a new Activity after a rotation
+            Log.d(TAG, "show: all " + (update.positionStart + update.itemCount) + " photos");
+            flickrRecyclerViewAdapter.loadNewData(update.allPhotos());
+        }
+        shownGeneration = update.generation;
+        photosShown = update.positionStart + update.itemCount;
+        thumbnailPrefetcher.onPhotosChanged();
+    }
+
+    //for the frame timing test
+    FrameStats getScrollFrameStats(){
+        return frameMonitor == null ? null : frameMonitor.getStats();
     }
 }
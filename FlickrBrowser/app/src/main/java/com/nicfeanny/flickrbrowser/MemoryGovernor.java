@@ -0,0 +1,156 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+*   One place that hears the system's onTrimMemory / onLowMemory and passes them on to the
+*   caches and pools that hold memory we could give back (ImageLoader, FeedCache, the
+*   download ByteBufferPool, StringPool), so that under pressure we shrink instead of being
+*   killed.
+*
+*   The many trim levels are boiled down to a Pressure, each level keeping less:
+*       MODERATE  - the UI is hidden or the system is starting to run low: caches to half,
+*                   image prefetches dropped
+*       LOW       - running low, or we're in the background LRU list: caches to a quarter,
+*                   pools emptied, images decoded at half the size
+*       CRITICAL  - about to be killed: everything we can rebuild goes
+*   Nothing tells us when the pressure is over, so after RELAX_MILLIS without another signal
+*   everyone is told NONE and the caches may grow back to their full size.
+*
+*   Caches stay lowered (not just emptied once) while the pressure lasts, otherwise they'd
+*   fill straight back up. Trimmables are called on the main thread and must be thread safe.
+* */
+class MemoryGovernor implements ComponentCallbacks2 {
+    private static final String TAG = "MemoryGovernor";
+
+    static final long RELAX_MILLIS = 60 * 1000;
+
+    private static final MemoryGovernor shared = new MemoryGovernor();
+
+    enum Pressure {
+        NONE(1f),
+        MODERATE(0.5f),
+        LOW(0.25f),
+        CRITICAL(0f);
+
+        //how much of its normal size a cache should keep
+        final float keep;
+
+        Pressure(float keep) {
+            this.keep = keep;
+        }
+
+        //size scaled down by keep, never below 0
+        int scale(int size) {
+            return (int) (size * keep);
+        }
+    }
+
+    interface Trimmable {
+        void onMemoryPressure(Pressure pressure);
+    }
+
+    private final List<Trimmable> trimmables = new CopyOnWriteArrayList<>();
+    //made on the first signal, so the shared one can be created on any thread (or the JVM)
+    private Handler mainHandler;
+    private volatile Pressure pressure = Pressure.NONE;
+    private boolean installed;
+
+    private final Runnable relax = new Runnable() {
+        @Override
+        public void run() {
+            apply(Pressure.NONE);
+        }
+    };
+
+    static MemoryGovernor getShared() {
+        return shared;
+    }
+
+    //starts listening to the system's signals; safe to call more than once
+    synchronized void install(Context context) {
+        if (!installed) {
+            installed = true;
+            context.getApplicationContext().registerComponentCallbacks(this);
+        }
+    }
+
+    //trimmable is told the current pressure straight away if there is any
+    void register(Trimmable trimmable) {
+        trimmables.add(trimmable);
+        Pressure current = pressure;
+        if (current != Pressure.NONE) {
+            trimmable.onMemoryPressure(current);
+        }
+    }
+
+    void unregister(Trimmable trimmable) {
+        trimmables.remove(trimmable);
+    }
+
+    Pressure getPressure() {
+        return pressure;
+    }
+
+    static Pressure pressureFor(int level) {
+        if (level >= TRIM_MEMORY_COMPLETE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            //the next step is our process being killed
+            return Pressure.CRITICAL;
+        }
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+            return Pressure.LOW;
+        }
+        //RUNNING_MODERATE, UI_HIDDEN, or a level added after we were written
+        return Pressure.MODERATE;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        DebugLog.d(TAG, "onTrimMemory: %d", level);
+        signal(pressureFor(level));
+    }
+
+    @Override
+    public void onLowMemory() {
+        DebugLog.d(TAG, "onLowMemory");
+        signal(Pressure.CRITICAL);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /*
+    * A new signal: goes up to pressure if that is higher than what we're at (a milder
+    * signal doesn't undo a harsher one) and restarts the RELAX_MILLIS countdown.
+    * */
+    void signal(Pressure signalled) {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        mainHandler.removeCallbacks(relax);
+        if (signalled.ordinal() > pressure.ordinal()) {
+            apply(signalled);
+        }
+        mainHandler.postDelayed(relax, RELAX_MILLIS);
+    }
+
+    private void apply(Pressure newPressure) {
+        long start = System.nanoTime();
+        pressure = newPressure;
+        for (Trimmable trimmable : trimmables) {
+            trimmable.onMemoryPressure(newPressure);
+        }
+        if (DebugLog.isEnabled()) {
+            DebugLog.d(TAG, "apply: %s to %d trimmables in %dus", newPressure, trimmables.size(),
+                    (System.nanoTime() - start) / 1000);
+        }
+    }
+}
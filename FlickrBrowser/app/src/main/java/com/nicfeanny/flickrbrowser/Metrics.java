@@ -0,0 +1,160 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.os.Build;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/*
+*   App wide Histograms for the feed and image pipelines, next to PerfCounters' totals, so we
+*   can see how the app behaves in the field and not only in a debugger: download times and
+*   sizes, parse times, photos per feed, decode times and main thread stalls (StallMonitor).
+*   Recording is on in release builds too, it is a few atomic adds.
+*
+*   format() writes everything (these, PerfCounters and the cache hit rates) in the
+*   Prometheus text format, so exports from different builds and devices can be compared
+*   with the usual tools; each export starts with a build_info line saying which build and
+*   device it is from. MetricsActivity shows describe() and exports to a file.
+*
+*       Metrics.record(Metrics.Metric.DOWNLOAD_MILLIS, result.getLatencyMillis());
+* */
+final class Metrics {
+    private static final String PREFIX = "flickrbrowser_";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    enum Metric {
+        DOWNLOAD_MILLIS("download_ms", "Time to download a feed or image, retries included"),
+        DOWNLOAD_BYTES("download_bytes", "Size of each response body read"),
+        PARSE_MICROS("feed_parse_us", "Time to parse one feed, waiting for a streamed body included"),
+        FEED_ITEMS("feed_items", "Photos in each feed parsed"),
+        IMAGE_DECODE_MICROS("image_decode_us", "Time to decode one image"),
+        MAIN_THREAD_STALL_MILLIS("main_thread_stall_ms", "How late the main thread was when it stalled, see StallMonitor");
+
+        final String name;
+        final String help;
+
+        Metric(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+    }
+
+    private static final Histogram[] histograms = new Histogram[Metric.values().length];
+
+    static {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    private Metrics() {
+    }
+
+    static void record(Metric metric, long value) {
+        histograms[metric.ordinal()].record(value);
+    }
+
+    static Histogram get(Metric metric) {
+        return histograms[metric.ordinal()];
+    }
+
+    static void reset() {
+        for (Histogram histogram : histograms) {
+            histogram.reset();
+        }
+        PerfCounters.reset();
+    }
+
+    /*
+    * Everything in the Prometheus text format. imageStats and feedCache may be null, their
+    * hit rates are left out then.
+    * */
+    static String format(ImageCacheStats imageStats, FeedCache feedCache) {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# TYPE ").append(PREFIX).append("build_info gauge\n");
+        out.append(PREFIX).append("build_info{version=\"").append(escape(BuildConfig.VERSION_NAME))
+                .append("\",build_type=\"").append(escape(BuildConfig.BUILD_TYPE))
+                .append("\",device=\"").append(escape(Build.MANUFACTURER + " " + Build.MODEL))
+                .append("\",sdk=\"").append(Build.VERSION.SDK_INT).append("\"} 1\n");
+
+        for (Metric metric : Metric.values()) {
+            Histogram histogram = get(metric);
+            String name = PREFIX + metric.name;
+            out.append("# HELP ").append(name).append(' ').append(metric.help).append('\n');
+            out.append("# TYPE ").append(name).append(" summary\n");
+            for (double quantile : QUANTILES) {
+                out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                        .append(histogram.percentile(quantile * 100)).append('\n');
+            }
+            out.append(name).append("_sum ").append(histogram.getSum()).append('\n');
+            out.append(name).append("_count ").append(histogram.getCount()).append('\n');
+        }
+
+        for (PerfCounters.Counter counter : PerfCounters.Counter.values()) {
+            String name = PREFIX + counter.name().toLowerCase(Locale.US) + "_total";
+            out.append("# TYPE ").append(name).append(" counter\n");
+            out.append(name).append(' ').append(PerfCounters.get(counter)).append('\n');
+        }
+
+        if (imageStats != null) {
+            gauge(out, "image_cache_hit_ratio", "Image requests answered from memory or disk", imageStats.hitRate());
+        }
+        if (feedCache != null) {
+            long hits = feedCache.getHits();
+            long total = hits + feedCache.getMisses();
+            gauge(out, "feed_cache_hit_ratio", "Feed requests answered from the FeedCache",
+                    total == 0 ? 0 : (double) hits / total);
+        }
+        return out.toString();
+    }
+
+    //the histograms as a table, for reading on the device
+    static String describe() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.US, "%-22s %7s %8s %8s %8s %8s%n", "", "count", "p50", "p90", "p99", "max"));
+        for (Metric metric : Metric.values()) {
+            Histogram histogram = get(metric);
+            out.append(String.format(Locale.US, "%-22s %7d %8d %8d %8d %8d%n", metric.name, histogram.getCount(),
+                    histogram.percentile(50), histogram.percentile(90), histogram.percentile(99), histogram.getMax()));
+        }
+        return out.toString();
+    }
+
+    /*
+    * Writes text to a new metrics-<date>.prom file in directory and returns it. Disk I/O, so
+    * off the main thread.
+    * */
+    static File export(File directory, String text) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can't create " + directory);
+        }
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File file = new File(directory, "metrics-" + stamp + ".prom");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF_8);
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, double value) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(" gauge\n");
+        out.append(PREFIX).append(name).append(' ').append(String.format(Locale.US, "%.4f", value)).append('\n');
+    }
+
+    //label values are quoted, so quotes, backslashes and newlines are escaped
+    private static String escape(String value) {
+        return value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,117 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+*   Debug screen for the Metrics: the percentiles table and everything format() would export,
+*   refreshed every second while it is on screen. Export writes the Prometheus text to
+*   getExternalFilesDir(null)/metrics, from where
+*       adb pull /sdcard/Android/data/com.nicfeanny.flickrbrowser/files/metrics
+*   gets them off the device to compare with another build's.
+*
+*   MainActivity only offers it when DebugLog is on (debug builds, or setprop in release).
+* */
+public class MetricsActivity extends AppCompatActivity {
+    private static final String TAG = "MetricsActivity";
+
+    private static final long REFRESH_MILLIS = 1000;
+
+    private static final ExecutorService exportExecutor =
+            Executors.newSingleThreadExecutor(new BackgroundThreadFactory("MetricsExport"));
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private TextView text;
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            text.setText(Metrics.describe() + "\n" + format());
+            mainHandler.postDelayed(this, REFRESH_MILLIS);
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+        text = (TextView) findViewById(R.id.metrics_text);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        refresh.run();
+    }
+
+    @Override
+    protected void onPause() {
+        mainHandler.removeCallbacks(refresh);
+        super.onPause();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_metrics, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+        if (id == R.id.action_export_metrics) {
+            export();
+            return true;
+        }
+        if (id == R.id.action_reset_metrics) {
+            Metrics.reset();
+            mainHandler.removeCallbacks(refresh);
+            refresh.run();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private String format() {
+        return Metrics.format(ImageLoader.getInstance(this).getStats(), FetchScheduler.getInstance().getFeedCache());
+    }
+
+    private void export() {
+        //taken now, so the file is what was on screen when Export was tapped
+        final String metrics = format();
+        exportExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                //null if there's no external storage mounted
+                File external = getExternalFilesDir(null);
+                File directory = new File(external != null ? external : getFilesDir(), "metrics");
+                String message;
+                try {
+                    message = getString(R.string.metrics_exported, Metrics.export(directory, metrics).getPath());
+                } catch (IOException e) {
+                    Log.e(TAG, "export: " + e);
+                    message = getString(R.string.metrics_export_failed, e.getMessage());
+                }
+                final String toast = message;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Toast.makeText(MetricsActivity.this, toast, Toast.LENGTH_LONG).show();
+                    }
+                });
+            }
+        });
+    }
+}
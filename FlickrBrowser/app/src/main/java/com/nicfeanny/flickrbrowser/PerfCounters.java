@@ -0,0 +1,78 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+*   App wide running totals for the hot paths (downloads, parsing) that are cheap enough
+*   to leave on in release builds: adding to a counter is a single atomic add, nothing is
+*   formatted until dump() is called.
+*
+*   Timers are just counters of nanoseconds:
+*       long start = PerfCounters.start();
+*       ...
+*       PerfCounters.stop(PerfCounters.Counter.PARSE_NANOS, start);
+* */
+final class PerfCounters {
+
+    enum Counter {
+        DOWNLOADS,
+        BYTES_READ,
+        FEEDS_PARSED,
+        ITEMS_PARSED,
+        PARSE_NANOS,
+        //feed loads handed to the main thread, and the main thread time that took
+        FEEDS_DELIVERED,
+        MAIN_THREAD_NANOS
+    }
+
+    private static final AtomicLongArray values = new AtomicLongArray(Counter.values().length);
+
+    private PerfCounters() {
+    }
+
+    static void increment(Counter counter) {
+        values.incrementAndGet(counter.ordinal());
+    }
+
+    static void add(Counter counter, long amount) {
+        values.addAndGet(counter.ordinal(), amount);
+    }
+
+    static long get(Counter counter) {
+        return values.get(counter.ordinal());
+    }
+
+    static long start() {
+        return System.nanoTime();
+    }
+
+    static void stop(Counter timer, long start) {
+        values.addAndGet(timer.ordinal(), System.nanoTime() - start);
+    }
+
+    static void reset() {
+        for (int i = 0; i < values.length(); i++) {
+            values.set(i, 0);
+        }
+    }
+
+    static String dump() {
+        StringBuilder dump = new StringBuilder();
+        for (Counter counter : Counter.values()) {
+            if (dump.length() > 0) {
+                dump.append(' ');
+            }
+            dump.append(counter.name().toLowerCase(Locale.US)).append('=').append(get(counter));
+        }
+        long nanos = get(Counter.PARSE_NANOS);
+        if (nanos > 0) {
+            dump.append(String.format(Locale.US, " items/s=%.0f", get(Counter.ITEMS_PARSED) * 1e9 / nanos));
+        }
+        long delivered = get(Counter.FEEDS_DELIVERED);
+        if (delivered > 0) {
+            dump.append(String.format(Locale.US, " main_us/feed=%.1f", get(Counter.MAIN_THREAD_NANOS) / 1e3 / delivered));
+        }
+        return dump.toString();
+    }
+}
@@ -1,10 +1,28 @@
 package com.nicfeanny.flickrbrowser;
 
 
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /*
 *   This class exists to hold the data of a single photo.
+*
+*   A feed can hold a lot of these (and FeedCache keeps several feeds) so they are kept small:
+*   - link isn't stored when it is just the image URL with _m swapped for _b, getLink()
+*     works it out when asked.
+*   - tags are kept as the separate words rather than one space separated String.
+*   - FlickrFeedParser hands us shared copies of author, authorID and each tag (see
+*     StringPool), so the same author in twenty photos is one String, not twenty.
+*   - the URLs of the other sizes (getImageUrl) are only made when a size is asked for,
+*     and then kept so that the same size is always the same String (the image cache key).
+*
+*   Serializable so PhotoDetailActivity can be handed photos in its Intent.
 * */
-public class Photo {
+public class Photo implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     /*
      * These attributes represent the fields within the JSON Object
      * that we will be reading from and pulling.
@@ -12,9 +30,15 @@ public class Photo {
     private String title;
     private String author;
     private String authorID;
+    //null when it is just largeImageUrl(image)
     private String link;
-    private String tags;
+    private String[] tags;
     private String image;
+    //getImageUrl's URLs by ImageSize ordinal, null until one is asked for
+    private transient String[] sizedUrls;
+
+    private static final String[] NO_TAGS = new String[0];
+    private static final int SIZE_COUNT = ImageSize.values().length;
 
 
     /*
@@ -32,14 +56,73 @@ public class Photo {
 
     //CMD N for shortcut on the Mac to pre create the constructor with the params.
     public Photo(String title, String author, String authorID, String link, String tags, String image) {
+        this(title, author, authorID, splitTags(tags, null), image);
+        if (link != null && !link.equals(largeImageUrl(image))) {
+            this.link = link;
+        }
+    }
+
+    /*
+    * The compact version used by FlickrFeedParser: the tags are already split up and the
+    * large image link is always the one derived from the image URL.
+    * */
+    Photo(String title, String author, String authorID, String[] tags, String image) {
         this.title = title;
         this.author = author;
         this.authorID = authorID;
-        this.link = link;
-        this.tags = tags;
+        this.tags = tags == null ? NO_TAGS : tags;
         this.image = image;
     }
 
+    /*
+    * _m is the thumbnail, _b is the large image. Same swap as the old
+    * replaceFirst("_m.", "_b.") but without compiling a regex for every photo.
+    * */
+    static String largeImageUrl(String image) {
+        return imageUrl(image, ImageSize.LARGE_1024);
+    }
+
+    //the feed's _m image URL with the suffix for size instead
+    static String imageUrl(String image, ImageSize size) {
+        if (image == null) {
+            return null;
+        }
+        int index = image.indexOf("_m.");
+        if (index == -1) {
+            return image;
+        }
+        return image.substring(0, index) + size.suffix + image.substring(index + 2);
+    }
+
+    /*
+    * Splits the space separated tags from the feed. If pool isn't null each tag is
+    * swapped for its shared copy.
+    * */
+    static String[] splitTags(String tags, StringPool pool) {
+        if (tags == null || tags.isEmpty()) {
+            return NO_TAGS;
+        }
+        String[] words = new String[8];
+        int count = 0;
+        int start = 0;
+        int length = tags.length();
+        while (start < length) {
+            int end = tags.indexOf(' ', start);
+            if (end == -1) {
+                end = length;
+            }
+            if (end > start) {
+                if (count == words.length) {
+                    words = Arrays.copyOf(words, count * 2);
+                }
+                String tag = tags.substring(start, end);
+                words[count++] = pool == null ? tag : pool.get(tag);
+            }
+            start = end + 1;
+        }
+        return count == words.length ? words : Arrays.copyOf(words, count);
+    }
+
     /*
     * same command as the constructor on Mac (CMD N)
     * */
@@ -56,25 +139,59 @@ public class Photo {
     }
 
     public String getLink() {
-        return link;
+        return link != null ? link : getImageUrl(ImageSize.LARGE_1024);
     }
 
+    //the tags as the feed had them, space separated
     public String getTags() {
-        return tags;
+        if (tags.length == 0) {
+            return "";
+        }
+        StringBuilder joined = new StringBuilder(tags[0]);
+        for (int i = 1; i < tags.length; i++) {
+            joined.append(' ').append(tags[i]);
+        }
+        return joined.toString();
+    }
+
+    public List<String> getTagList() {
+        return Collections.unmodifiableList(Arrays.asList(tags));
     }
 
     public String getImage() {
         return image;
     }
 
+    /*
+    * This photo's image at the given size (see ImageSizeSelector). Asking twice for the same
+    * size gives the same String, so it can be used as a cache key.
+    * */
+    String getImageUrl(ImageSize size) {
+        if (size == ImageSize.FEED) {
+            return image;
+        }
+        //two threads racing here at worst both build an equal URL
+        String[] urls = sizedUrls;
+        if (urls == null) {
+            urls = new String[SIZE_COUNT];
+            sizedUrls = urls;
+        }
+        String url = urls[size.ordinal()];
+        if (url == null) {
+            url = imageUrl(image, size);
+            urls[size.ordinal()] = url;
+        }
+        return url;
+    }
+
     @Override
     public String toString() {
         return "Photo{" +
                 "title='" + title + '\'' +
                 ", author='" + author + '\'' +
                 ", authorID='" + authorID + '\'' +
-                ", link='" + link + '\'' +
-                ", tags='" + tags + '\'' +
+                ", link='" + getLink() + '\'' +
+                ", tags='" + getTags() + '\'' +
                 ", image='" + image + '\'' +
                 '}';
     }
@@ -0,0 +1,269 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.os.Bundle;
+import android.support.v4.view.PagerAdapter;
+import android.support.v4.view.ViewPager;
+import android.support.v7.app.AppCompatActivity;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.ProgressBar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+*   Full screen viewer for the large images, swiping left/right through the photos.
+*
+*   - A page shows the grid's thumbnail straight away (it is nearly always still in the
+*     ImageLoader's memory cache) and swaps in the large image when that arrives.
+*   - The large image is whichever flickr size covers the screen (ImageLoader.urlFor, _b on
+*     most phones) and it is decoded sampled down to the screen, so however big the image a
+*     page never holds more than about a screen's worth of pixels.
+*   - Only the page on screen loads its large image. Swiping away cancels that load; if it
+*     had already started it still finishes into the caches, so swiping back is quick.
+*   - The large images of the photos either side are prefetched, so a swipe normally
+*     lands on an image which is already loaded.
+* */
+public class PhotoDetailActivity extends AppCompatActivity {
+    private static final String TAG = "PhotoDetailActivity";
+
+    static final String EXTRA_PHOTOS = "com.nicfeanny.flickrbrowser.PHOTOS";
+    static final String EXTRA_POSITION = "com.nicfeanny.flickrbrowser.POSITION";
+    //photos either side of the tapped one that come along in the Intent; they all go through a Binder
+    static final int MAX_NEIGHBOURS = 50;
+
+    private ImageLoader imageLoader;
+    private List<Photo> photos;
+    private int thumbnailSize;
+    private int screenWidth;
+    private int screenHeight;
+
+    private final SparseArray<Page> pages = new SparseArray<>();
+    private List<ImageLoader.Request> neighbourPrefetches = new ArrayList<>();
+    private int selected = -1;
+
+    /*
+    * The Intent to show photos starting at position. Only up to MAX_NEIGHBOURS photos either
+    * side are passed on, an Intent holding a whole long feed would be too big to start.
+    * */
+    static Intent intentFor(Context context, List<Photo> photos, int position) {
+        int from = Math.max(0, position - MAX_NEIGHBOURS);
+        int to = Math.min(photos.size(), position + MAX_NEIGHBOURS + 1);
+        Intent intent = new Intent(context, PhotoDetailActivity.class);
+        intent.putExtra(EXTRA_PHOTOS, new ArrayList<>(photos.subList(from, to)));
+        intent.putExtra(EXTRA_POSITION, position - from);
+        return intent;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_photo_detail);
+
+        photos = (List<Photo>) getIntent().getSerializableExtra(EXTRA_PHOTOS);
+        if (photos == null || photos.isEmpty()) {
+            Log.e(TAG, "onCreate: started without any photos");
+            finish();
+            return;
+        }
+        int position = getIntent().getIntExtra(EXTRA_POSITION, 0);
+        if (savedInstanceState != null) {
+            position = savedInstanceState.getInt(EXTRA_POSITION, position);
+        }
+
+        imageLoader = ImageLoader.getInstance(this);
+        thumbnailSize = getResources().getDimensionPixelSize(R.dimen.grid_thumbnail_height);
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        screenWidth = metrics.widthPixels;
+        screenHeight = metrics.heightPixels;
+
+        ViewPager pager = (ViewPager) findViewById(R.id.pager);
+        //the pages either side exist (showing their thumbnails) so a swipe never shows a blank page
+        pager.setOffscreenPageLimit(1);
+        pager.setAdapter(new PhotoPagerAdapter());
+        pager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
+            @Override
+            public void onPageSelected(int position) {
+                select(position);
+            }
+        });
+        //not reported through onPageSelected
+        select(position);
+        pager.setCurrentItem(position, false);
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(EXTRA_POSITION, selected);
+    }
+
+    @Override
+    protected void onDestroy() {
+        for (int i = 0; i < pages.size(); i++) {
+            pages.valueAt(i).cancel();
+        }
+        for (ImageLoader.Request request : neighbourPrefetches) {
+            request.cancel();
+        }
+        neighbourPrefetches.clear();
+        super.onDestroy();
+    }
+
+    private String largeUrl(int position) {
+        return imageLoader.urlFor(photos.get(position), screenWidth, screenHeight, false);
+    }
+
+    private void select(int position) {
+        selected = position;
+        setTitle(photos.get(position).getTitle());
+
+        List<ImageLoader.Request> previous = neighbourPrefetches;
+        neighbourPrefetches = new ArrayList<>();
+        for (int neighbour = position - 1; neighbour <= position + 1; neighbour += 2) {
+            if (neighbour >= 0 && neighbour < photos.size()) {
+                neighbourPrefetches.add(imageLoader.prefetch(largeUrl(neighbour), screenWidth, screenHeight));
+            }
+        }
+        //only now, so that a load wanted both before and after isn't dropped in between
+        for (ImageLoader.Request request : previous) {
+            request.cancel();
+        }
+
+        for (int i = 0; i < pages.size(); i++) {
+            Page page = pages.valueAt(i);
+            if (page.position == position) {
+                page.showLarge();
+            } else {
+                page.cancelLarge();
+            }
+        }
+    }
+
+    private class Page implements ImageLoader.OnImageLoaded {
+        final int position;
+        final View view;
+        final ImageView image;
+        final ProgressBar progress;
+        final String largeUrl;
+
+        private ImageLoader.Request thumbnailRequest;
+        private ImageLoader.Request largeRequest;
+        private boolean showingLarge;
+
+        Page(ViewGroup container, int position) {
+            this.position = position;
+            view = LayoutInflater.from(container.getContext()).inflate(R.layout.photo_detail_page, container, false);
+            image = (ImageView) view.findViewById(R.id.detail_image);
+            progress = (ProgressBar) view.findViewById(R.id.detail_progress);
+            largeUrl = largeUrl(position);
+
+            //the URL the grid showed, so it's normally in the memory cache already
+            Photo photo = photos.get(position);
+            String thumbnailUrl = imageLoader.urlFor(photo, thumbnailSize, thumbnailSize, true);
+            Bitmap cached = imageLoader.getCached(thumbnailUrl);
+            if (cached != null) {
+                image.setImageBitmap(cached);
+            } else {
+                //the photo's colour in the photo's shape until then
+                Placeholder placeholder = Placeholders.getShared().get(photo.getImage());
+                if (placeholder != null) {
+                    image.setImageDrawable(placeholder.newDrawable());
+                }
+                thumbnailRequest = imageLoader.load(thumbnailUrl, photo.getImage(), thumbnailSize, thumbnailSize, this);
+            }
+        }
+
+        void showLarge() {
+            if (showingLarge || largeRequest != null) {
+                return;
+            }
+            progress.setVisibility(View.VISIBLE);
+            ImageLoader.Request request = imageLoader.load(largeUrl, screenWidth, screenHeight, this);
+            //a memory cache hit has called back already
+            if (!showingLarge) {
+                largeRequest = request;
+            }
+        }
+
+        void cancelLarge() {
+            if (largeRequest != null) {
+                largeRequest.cancel();
+                largeRequest = null;
+                progress.setVisibility(View.GONE);
+            }
+        }
+
+        void cancel() {
+            cancelLarge();
+            if (thumbnailRequest != null) {
+                thumbnailRequest.cancel();
+                thumbnailRequest = null;
+            }
+        }
+
+        @Override
+        public void onImageLoaded(String url, Bitmap bitmap) {
+            if (url.equals(largeUrl)) {
+                largeRequest = null;
+                progress.setVisibility(View.GONE);
+                if (bitmap == null) {
+                    //the thumbnail stays up, better than nothing
+                    Log.w(TAG, "onImageLoaded: couldn't load " + url);
+                    return;
+                }
+                showingLarge = true;
+                image.setImageBitmap(bitmap);
+                if (thumbnailRequest != null) {
+                    thumbnailRequest.cancel();
+                    thumbnailRequest = null;
+                }
+            } else {
+                thumbnailRequest = null;
+                if (bitmap != null && !showingLarge) {
+                    image.setImageBitmap(bitmap);
+                }
+            }
+        }
+    }
+
+    private class PhotoPagerAdapter extends PagerAdapter {
+        @Override
+        public int getCount() {
+            return photos.size();
+        }
+
+        @Override
+        public Object instantiateItem(ViewGroup container, int position) {
+            Page page = new Page(container, position);
+            container.addView(page.view);
+            pages.put(position, page);
+            if (position == selected) {
+                page.showLarge();
+            }
+            return page;
+        }
+
+        @Override
+        public void destroyItem(ViewGroup container, int position, Object object) {
+            Page page = (Page) object;
+            page.cancel();
+            container.removeView(page.view);
+            pages.remove(position);
+        }
+
+        @Override
+        public boolean isViewFromObject(View view, Object object) {
+            return view == ((Page) object).view;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+
+import java.util.Locale;
+
+/*
+*   What to paint for a photo before its image has loaded: the photo's dominant colour in a
+*   box of the photo's shape. Worked out once, when the thumbnail is first decoded (see
+*   ImageLoader), and kept in Placeholders / the FeedStore so later sessions have it without
+*   the network or a decode.
+*
+*   Dominant rather than average colour: the average of a blue sky over a red car is a
+*   brownish grey that is in neither. Pixels are sampled on a grid, grouped by their top 3
+*   bits of red, green and blue, and the colour is the average of the biggest group.
+* */
+class Placeholder {
+    //SAMPLES x SAMPLES pixels are looked at, however big the bitmap
+    private static final int SAMPLES = 8;
+    //the box the drawable says it is, fitCenter etc. scale it to the view
+    private static final int DRAWABLE_SIZE = 1000;
+
+    private final int color;
+    //width / height
+    private final float aspectRatio;
+
+    Placeholder(int color, float aspectRatio) {
+        this.color = color;
+        this.aspectRatio = aspectRatio;
+    }
+
+    /*
+    * width and height are the image's own, as the file has them; bitmap may be a sampled down
+    * decode of it. Call off the main thread, it reads pixels.
+    * */
+    static Placeholder of(Bitmap bitmap, int width, int height) {
+        int bitmapWidth = bitmap.getWidth();
+        int bitmapHeight = bitmap.getHeight();
+        int[] samples = new int[SAMPLES * SAMPLES];
+        int[] counts = new int[512];
+        int count = 0;
+        for (int y = 0; y < SAMPLES && bitmapHeight > 0; y++) {
+            for (int x = 0; x < SAMPLES && bitmapWidth > 0; x++) {
+                //the middle of each cell of the grid
+                int pixel = bitmap.getPixel((2 * x + 1) * bitmapWidth / (2 * SAMPLES),
+                        (2 * y + 1) * bitmapHeight / (2 * SAMPLES));
+                samples[count++] = pixel;
+                counts[bucket(pixel)]++;
+            }
+        }
+
+        int dominant = 0;
+        for (int i = 1; i < counts.length; i++) {
+            if (counts[i] > counts[dominant]) {
+                dominant = i;
+            }
+        }
+        int red = 0;
+        int green = 0;
+        int blue = 0;
+        for (int i = 0; i < count; i++) {
+            if (bucket(samples[i]) == dominant) {
+                red += Color.red(samples[i]);
+                green += Color.green(samples[i]);
+                blue += Color.blue(samples[i]);
+            }
+        }
+        int members = Math.max(1, counts[dominant]);
+        float aspectRatio = width > 0 && height > 0 ? (float) width / height : 1f;
+        return new Placeholder(Color.rgb(red / members, green / members, blue / members), aspectRatio);
+    }
+
+    //the top 3 bits of each of red, green and blue
+    private static int bucket(int pixel) {
+        return (Color.red(pixel) >> 5) << 6 | (Color.green(pixel) >> 5) << 3 | Color.blue(pixel) >> 5;
+    }
+
+    int getColor() {
+        return color;
+    }
+
+    float getAspectRatio() {
+        return aspectRatio;
+    }
+
+    /*
+    * A drawable of the colour that is the photo's shape, so a fitCenter ImageView shows it
+    * where the photo will be (a plain ColorDrawable has no size and fills the whole view).
+    * */
+    Drawable newDrawable() {
+        final int width = aspectRatio >= 1 ? DRAWABLE_SIZE : Math.round(DRAWABLE_SIZE * aspectRatio);
+        final int height = aspectRatio >= 1 ? Math.round(DRAWABLE_SIZE / aspectRatio) : DRAWABLE_SIZE;
+        return new ColorDrawable(color) {
+            @Override
+            public int getIntrinsicWidth() {
+                return width;
+            }
+
+            @Override
+            public int getIntrinsicHeight() {
+                return height;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "Placeholder{#%06x, %.2f}", color & 0xffffff, aspectRatio);
+    }
+}
@@ -0,0 +1,77 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+*   The Placeholder of each photo we know one for, by Photo.getImage() (the feed's URL for the
+*   photo, the same whatever size is loaded). Keyed by URL rather than kept on the Photo so
+*   that the fresh Photo objects of a refreshed feed find what was worked out for the stored
+*   ones.
+*
+*   ImageLoader adds them as thumbnails are decoded and FeedStore as feeds are loaded. The ones
+*   from decodes are also remembered as unsaved until FeedStore.savePlaceholdersAsync takes them.
+*   Only the most recently used maxSize are kept, they're ~40 bytes each.
+* */
+class Placeholders {
+    static final int DEFAULT_MAX_SIZE = 2000;
+
+    private static final Placeholders shared = new Placeholders(DEFAULT_MAX_SIZE);
+
+    private final int maxSize;
+    private final Map<String, Placeholder> placeholders;
+    private Map<String, Placeholder> unsaved = new HashMap<>();
+
+    static Placeholders getShared() {
+        return shared;
+    }
+
+    Placeholders(final int maxSize) {
+        this.maxSize = maxSize;
+        placeholders = new LinkedHashMap<String, Placeholder>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Placeholder> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    synchronized Placeholder get(String image) {
+        return image == null ? null : placeholders.get(image);
+    }
+
+    synchronized boolean contains(String image) {
+        return placeholders.containsKey(image);
+    }
+
+    //worked out from a decode, so not in the FeedStore yet
+    synchronized void put(String image, Placeholder placeholder) {
+        placeholders.put(image, placeholder);
+        //nobody is taking them; they'll be worked out again next time
+        if (unsaved.size() < maxSize) {
+            unsaved.put(image, placeholder);
+        }
+    }
+
+    //read back from the FeedStore
+    synchronized void putStored(String image, Placeholder placeholder) {
+        placeholders.put(image, placeholder);
+    }
+
+    //the ones put() since the last call, for the FeedStore to save
+    synchronized Map<String, Placeholder> takeUnsaved() {
+        Map<String, Placeholder> taken = unsaved;
+        unsaved = new HashMap<>();
+        return taken;
+    }
+
+    synchronized int size() {
+        return placeholders.size();
+    }
+
+    synchronized void clear() {
+        placeholders.clear();
+        unsaved.clear();
+    }
+}
@@ -0,0 +1,124 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+/*
+*   The body of a response exactly as it came off the wire, held in a (pooled) byte array.
+*
+*   This replaces reading a line at a time into a StringBuilder: that copied every byte
+*   into a line String, then into the builder, then again in toString(). Here the bytes
+*   are read once into one buffer; they can be decoded to a String once (asString) or
+*   given straight to a parser without any decoding copy (asStream).
+*
+*   Call release() when finished so the buffer goes back to the pool.
+* */
+class RawResponse {
+    //used when the server doesn't send a Content-Length (e.g. chunked responses)
+    private static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    private final int responseCode;
+    private final ByteBufferPool pool;
+    private byte[] buffer;
+    private int length;
+
+    private RawResponse(int responseCode, ByteBufferPool pool, byte[] buffer, int length) {
+        this.responseCode = responseCode;
+        this.pool = pool;
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    /*
+    * Reads the whole of the stream into a buffer from the pool.
+    * contentLength is only a size hint (-1 if unknown); if the body turns out bigger
+    * the buffer is grown, if it was gzipped the decoded body will usually be bigger.
+    * */
+    static RawResponse read(int responseCode, InputStream stream, int contentLength, ByteBufferPool pool) throws IOException {
+        int size = contentLength > 0 ? contentLength : DEFAULT_BUFFER_SIZE;
+        byte[] buffer = pool.acquire(size);
+        int length = 0;
+
+        try {
+            while (true) {
+                if (length == buffer.length) {
+                    //a Content-Length that was right fills the buffer exactly; don't double it just to find the end
+                    int next = stream.read();
+                    if (next == -1) {
+                        break;
+                    }
+                    byte[] bigger = pool.acquire(buffer.length * 2);
+                    System.arraycopy(buffer, 0, bigger, 0, length);
+                    pool.release(buffer);
+                    buffer = bigger;
+                    buffer[length++] = (byte) next;
+                }
+                int read = stream.read(buffer, length, buffer.length - length);
+                if (read == -1) {
+                    break;
+                }
+                length += read;
+            }
+        } catch (IOException e) {
+            pool.release(buffer);
+            throw e;
+        }
+
+        return new RawResponse(responseCode, pool, buffer, length);
+    }
+
+    int getResponseCode() {
+        return responseCode;
+    }
+
+    int length() {
+        return length;
+    }
+
+    /*
+    * The body decoded as UTF-8; this is the one and only copy we make of it.
+    * */
+    String asString() {
+        checkNotReleased();
+        try {
+            return new String(buffer, 0, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            //UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+    * The raw bytes as a stream, e.g. for FlickrFeedParser; nothing is copied.
+    * Only valid until release() is called.
+    * */
+    InputStream asStream() {
+        checkNotReleased();
+        return new ByteArrayInputStream(buffer, 0, length);
+    }
+
+    /*
+    * The backing buffer itself, only the first length() bytes are the body.
+    * For callers such as BitmapFactory.decodeByteArray which take an array + length.
+    * */
+    byte[] array() {
+        checkNotReleased();
+        return buffer;
+    }
+
+    void release() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+            length = 0;
+        }
+    }
+
+    private void checkNotReleased() {
+        if (buffer == null) {
+            throw new IllegalStateException("RawResponse used after release()");
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.util.Locale;
+
+/*
+*   Where the time went for one request:
+*       connect - looking the host up and opening the connection (TCP, and TLS for
+*                 https); ~0 when a pooled keep-alive connection was reused
+*       ttfb    - sending the request until the response headers arrived
+*       body    - reading the body, from the first byte until the end (or close)
+* */
+class RequestTiming {
+    private volatile long connectNanos;
+    private volatile long ttfbNanos;
+    private volatile long bodyNanos = -1;
+
+    void setConnectNanos(long connectNanos) {
+        this.connectNanos = connectNanos;
+    }
+
+    void setTtfbNanos(long ttfbNanos) {
+        this.ttfbNanos = ttfbNanos;
+    }
+
+    void setBodyNanos(long bodyNanos) {
+        this.bodyNanos = bodyNanos;
+    }
+
+    long getConnectNanos() {
+        return connectNanos;
+    }
+
+    long getTtfbNanos() {
+        return ttfbNanos;
+    }
+
+    //-1 until the body has been read or closed
+    long getBodyNanos() {
+        return bodyNanos;
+    }
+
+    long getTotalNanos() {
+        return connectNanos + ttfbNanos + Math.max(bodyNanos, 0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "connect=%.1fms ttfb=%.1fms body=%.1fms",
+                connectNanos / 1e6, ttfbNanos / 1e6, Math.max(bodyNanos, 0) / 1e6);
+    }
+}
@@ -0,0 +1,84 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.util.Random;
+
+/*
+*   When and how soon GetRawData tries a failed download again.
+*
+*   Only transient failures (timeouts, network errors, 5xx/408/429, see
+*   DownloadResult.isTransient) are retried; a 404 or a body we can't parse will be the same
+*   next time. Everything GetRawData sends is a GET, so sending it twice is harmless.
+*
+*   The wait before retry n is a random time between 0 and baseDelay * 2^(n-1), capped at
+*   maxDelay ("full jitter"). Without the randomness every client which failed at the same
+*   moment would come back at the same moment too, and knock a recovering server over again.
+*   A Retry-After from the server is respected, up to maxDelay.
+* */
+class RetryPolicy {
+    static final RetryPolicy DEFAULT = new RetryPolicy(3, 250, 4000);
+    //one attempt and nothing more
+    static final RetryPolicy NONE = new RetryPolicy(1, 0, 0);
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Random random;
+
+    RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        this(maxAttempts, baseDelayMillis, maxDelayMillis, new Random());
+    }
+
+    //a seeded Random makes the delays repeatable, for tests
+    RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, Random random) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.random = random;
+    }
+
+    int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    //attempts is how many have been made so far, including the one that gave result
+    boolean shouldRetry(DownloadResult result, int attempts) {
+        return attempts < maxAttempts && result.isTransient();
+    }
+
+    /*
+    * How long to wait before the next attempt after attempts have failed. retryAfterMillis is
+    * the server's Retry-After, or -1 if it didn't send one.
+    * */
+    long delayMillis(int attempts, long retryAfterMillis) {
+        if (retryAfterMillis >= 0) {
+            return Math.min(retryAfterMillis, maxDelayMillis);
+        }
+        //shifting by more than 30 would overflow long before it mattered
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempts - 1, 30));
+        if (ceiling <= 0) {
+            return 0;
+        }
+        synchronized (random) {
+            return (long) (random.nextDouble() * (ceiling + 1));
+        }
+    }
+
+    /*
+    * Retry-After in delay-seconds, the form a feed server sends; -1 for anything else
+    * (including the HTTP date form, which then just gets the normal backoff).
+    * */
+    static long parseRetryAfter(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            long seconds = Long.parseLong(value.trim());
+            return seconds < 0 ? -1 : seconds * 1000;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
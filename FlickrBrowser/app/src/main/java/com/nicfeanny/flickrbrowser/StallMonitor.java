@@ -0,0 +1,55 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/*
+*   Notices when the main thread has been busy for too long, wherever it was: every
+*   INTERVAL_MILLIS it posts itself to the main thread and looks at how late it ran. If it
+*   was STALL_MILLIS or more late, something held the main thread for at least that long and
+*   the lateness goes into Metrics.Metric.MAIN_THREAD_STALL_MILLIS.
+*
+*   FrameMonitor only runs while the grid scrolls; this catches stalls at any other time
+*   (a slow onCreate, a disk read on the main thread) at the cost of one message every
+*   INTERVAL_MILLIS. Start it in onResume and stop it in onPause, so it never runs in the
+*   background. Main thread only.
+* */
+class StallMonitor implements Runnable {
+    static final long INTERVAL_MILLIS = 100;
+    //three frames at 60Hz
+    static final long STALL_MILLIS = 48;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean running;
+    private long dueAt;
+
+    void start() {
+        if (!running) {
+            running = true;
+            schedule();
+        }
+    }
+
+    void stop() {
+        running = false;
+        mainHandler.removeCallbacks(this);
+    }
+
+    @Override
+    public void run() {
+        if (!running) {
+            return;
+        }
+        long late = SystemClock.uptimeMillis() - dueAt;
+        if (late >= STALL_MILLIS) {
+            Metrics.record(Metrics.Metric.MAIN_THREAD_STALL_MILLIS, late);
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        dueAt = SystemClock.uptimeMillis() + INTERVAL_MILLIS;
+        mainHandler.postAtTime(this, dueAt);
+    }
+}
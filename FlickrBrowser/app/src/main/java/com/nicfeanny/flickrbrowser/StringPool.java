@@ -0,0 +1,64 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+*   Hands out one shared copy of strings which turn up again and again across feeds,
+*   like author names, author ids and tags.
+*
+*   String.intern() would do the same, but the VM's intern table never shrinks and it is
+*   shared with everything else in the process. This one is ours, and when it gets too
+*   big it is simply emptied and starts again (photos keep the copies they already have).
+*   The shared one is also emptied when memory is low, see MemoryGovernor.
+* */
+class StringPool implements MemoryGovernor.Trimmable {
+    static final int DEFAULT_MAX_SIZE = 4096;
+
+    private static final StringPool shared = new StringPool(DEFAULT_MAX_SIZE);
+
+    static {
+        MemoryGovernor.getShared().register(shared);
+    }
+
+    private final int maxSize;
+    private final Map<String, String> strings = new HashMap<>();
+
+    static StringPool getShared() {
+        return shared;
+    }
+
+    StringPool(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    synchronized String get(String s) {
+        if (s == null) {
+            return null;
+        }
+        String existing = strings.get(s);
+        if (existing != null) {
+            return existing;
+        }
+        if (strings.size() >= maxSize) {
+            strings.clear();
+        }
+        strings.put(s, s);
+        return s;
+    }
+
+    synchronized int size() {
+        return strings.size();
+    }
+
+    synchronized void clear() {
+        strings.clear();
+    }
+
+    @Override
+    public void onMemoryPressure(MemoryGovernor.Pressure pressure) {
+        if (pressure.ordinal() >= MemoryGovernor.Pressure.LOW.ordinal()) {
+            clear();
+        }
+    }
+}
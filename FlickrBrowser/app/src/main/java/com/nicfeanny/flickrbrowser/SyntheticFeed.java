@@ -0,0 +1,167 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+
+/*
+*   Makes up flickr public feeds (the same JSON as photos_public.gne) of any number of items,
+*   for load testing through LocalFeedSource without a network.
+*
+*   The fields are shaped like a real feed's, since that is what decides how much work a
+*   feed is to parse and how well StringPool and TagIndex do with it:
+*   - A few authors post most of the photos (the author is picked with a square law skew),
+*     so author names and ids repeat like they do in real feeds.
+*   - Every photo has the queried tags plus a geometric number of others (mean about 6,
+*     now and then 20+) from a vocabulary where a few tags are very common.
+*   - Titles are empty ~15% of the time, a camera file name ~20%, otherwise 1-8 words with
+*     the odd accented or non latin word in them.
+*   - URLs, ids, dates and the description html follow flickr's formats, escaped like
+*     flickr escapes them ("\/").
+*   The same seed, tags and page always give the same bytes; different pages different photos.
+* */
+class SyntheticFeed {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] WORDS = {
+            "android", "nougat", "phone", "pixel", "nexus", "samsung", "galaxy", "tablet", "screenshot", "app",
+            "mobile", "google", "oreo", "marshmallow", "lollipop", "kitkat", "sdk", "developer", "code", "ui",
+            "design", "material", "widget", "launcher", "homescreen", "wallpaper", "camera", "photo", "street",
+            "city", "night", "light", "sky", "sunset", "beach", "sea", "mountain", "snow", "tree", "flower",
+            "cat", "dog", "bird", "food", "coffee", "travel", "london", "paris", "tokyo", "berlin", "newyork",
+            "portrait", "landscape", "macro", "blackandwhite", "bw", "color", "art", "music", "event", "party",
+            "family", "friends", "kids", "holiday", "summer", "winter", "autumn", "spring", "rain", "cloud",
+            "bridge", "building", "architecture", "car", "train", "bike", "road", "park", "garden", "lake",
+            "river", "window", "door", "shadow", "reflection", "abstract", "texture", "red", "blue", "green",
+            "yellow", "white", "black", "orange", "purple", "vintage", "retro", "robot", "bugdroid", "easteregg"};
+    private static final String[] FOREIGN_WORDS = {
+            "café", "straße", "niño", "façade", "smørrebrød", "東京", "写真", "ανδροειδής", "москва", "서울"};
+    private static final String[] CAMERA_PREFIXES = {"IMG_", "DSC_", "DSCF", "P", "Screenshot_"};
+
+    private final long seed;
+
+    SyntheticFeed(long seed) {
+        this.seed = seed;
+    }
+
+    //page 1 is the first page, like FeedRequest; tags may be null or "" for no query tags
+    byte[] generate(String tags, int page, int items) {
+        Random random = new Random(seed * 31 + (tags == null ? 0 : tags.hashCode()) * 17L + page);
+        String[] queryTags = tags == null || tags.trim().isEmpty()
+                ? new String[0] : tags.toLowerCase(Locale.US).replace(" ", "").split(",");
+
+        //about 4 photos per author on average, a few authors far more
+        int authorCount = Math.max(1, items / 4);
+        String[] authorNames = new String[authorCount];
+        String[] authorIds = new String[authorCount];
+        for (int i = 0; i < authorCount; i++) {
+            authorNames[i] = authorName(random);
+            authorIds[i] = (10000000 + random.nextInt(190000000)) + "@N0" + random.nextInt(9);
+        }
+
+        StringBuilder json = new StringBuilder(items * 1100 + 512);
+        json.append("{\n");
+        json.append("\t\t\"title\": \"Recent Uploads tagged ").append(escape(tags == null ? "" : tags)).append("\",\n");
+        json.append("\t\t\"link\": \"https:\\/\\/www.flickr.com\\/photos\\/tags\\/\",\n");
+        json.append("\t\t\"description\": \"\",\n");
+        json.append("\t\t\"modified\": \"").append(date(random, page)).append("\",\n");
+        json.append("\t\t\"generator\": \"https:\\/\\/www.flickr.com\",\n");
+        json.append("\t\t\"items\": [");
+        for (int i = 0; i < items; i++) {
+            //square law: low indexes, the prolific authors, come up far more often
+            double skew = random.nextDouble();
+            int author = (int) (authorCount * skew * skew);
+            appendItem(json, random, queryTags, authorNames[author], authorIds[author], page, i > 0);
+        }
+        json.append("\n\t\t]\n}\n");
+        return json.toString().getBytes(UTF_8);
+    }
+
+    private static void appendItem(StringBuilder json, Random random, String[] queryTags, String authorName,
+                                   String authorId, int page, boolean comma) {
+        String photoId = String.valueOf(30000000000L + (long) (random.nextDouble() * 20000000000L));
+        String secret = Long.toHexString(0x1000000000L + (long) (random.nextDouble() * 0xefffffffffL));
+        String image = "https://farm" + (1 + random.nextInt(9)) + ".staticflickr.com/" + (1000 + random.nextInt(8999))
+                + "/" + photoId + "_" + secret + "_m.jpg";
+        String link = "https://www.flickr.com/photos/" + authorId + "/" + photoId + "/";
+        String title = title(random);
+
+        json.append(comma ? ",\n" : "\n");
+        json.append("\t   {\n");
+        json.append("\t\t\t\"title\": \"").append(escape(title)).append("\",\n");
+        json.append("\t\t\t\"link\": \"").append(escape(link)).append("\",\n");
+        json.append("\t\t\t\"media\": {\"m\":\"").append(escape(image)).append("\"},\n");
+        json.append("\t\t\t\"date_taken\": \"").append(date(random, page + 1)).append("\",\n");
+        json.append("\t\t\t\"description\": \"").append(escape(" <p><a href=\"https://www.flickr.com/people/" + authorId
+                + "/\">" + authorName + "</a> posted a photo:</p> <p><a href=\"" + link + "\" title=\"" + title
+                + "\"><img src=\"" + image + "\" width=\"240\" height=\"" + (random.nextBoolean() ? 180 : 160)
+                + "\" alt=\"" + title + "\" /></a></p> "
+                + (random.nextInt(10) < 3 ? "<p>" + words(random, 5 + random.nextInt(30)) + "</p>" : ""))).append("\",\n");
+        json.append("\t\t\t\"published\": \"").append(date(random, page)).append("\",\n");
+        json.append("\t\t\t\"author\": \"").append(escape("nobody@flickr.com (\"" + authorName + "\")")).append("\",\n");
+        json.append("\t\t\t\"author_id\": \"").append(authorId).append("\",\n");
+        json.append("\t\t\t\"tags\": \"").append(escape(tags(random, queryTags))).append("\"\n");
+        json.append("\t   }");
+    }
+
+    private static String title(Random random) {
+        int kind = random.nextInt(100);
+        if (kind < 15) {
+            return "";
+        }
+        if (kind < 35) {
+            return CAMERA_PREFIXES[random.nextInt(CAMERA_PREFIXES.length)] + (1000 + random.nextInt(9000));
+        }
+        String title = words(random, 1 + random.nextInt(8));
+        return Character.toUpperCase(title.charAt(0)) + title.substring(1);
+    }
+
+    private static String tags(Random random, String[] queryTags) {
+        StringBuilder tags = new StringBuilder();
+        for (String tag : queryTags) {
+            append(tags, tag);
+        }
+        //geometric, p = 0.15: mean ~6 extra tags but a long tail of heavily tagged photos
+        while (random.nextInt(100) >= 15) {
+            append(tags, word(random));
+        }
+        return tags.toString();
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            append(words, random.nextInt(40) == 0 ? FOREIGN_WORDS[random.nextInt(FOREIGN_WORDS.length)] : word(random));
+        }
+        return words.toString();
+    }
+
+    //the start of WORDS far more often than the end, the way a few tags are on everything
+    private static String word(Random random) {
+        double skew = random.nextDouble();
+        return WORDS[(int) (WORDS.length * skew * skew)];
+    }
+
+    private static String authorName(Random random) {
+        String name = word(random) + (random.nextBoolean() ? "_" + word(random) : "");
+        return random.nextInt(3) == 0 ? name + random.nextInt(1000) : name;
+    }
+
+    //somewhere in 2018, earlier for later pages
+    private static String date(Random random, int page) {
+        return String.format(Locale.US, "2018-%02d-%02dT%02d:%02d:%02dZ", Math.max(1, 10 - page % 10),
+                1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60));
+    }
+
+    private static void append(StringBuilder words, String word) {
+        if (words.length() > 0) {
+            words.append(' ');
+        }
+        words.append(word);
+    }
+
+    //as flickr writes its JSON strings: quotes and backslashes escaped, and "/" as "\/"
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("/", "\\/");
+    }
+}
@@ -0,0 +1,260 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/*
+*   An index from tag to the photos carrying it, over the photos loaded this session, so
+*   that narrowing down what we already have ("android AND pixel", "nougat OR oreo",
+*   "and*") doesn't need another trip to flickr.
+*
+*   Each photo gets an int id (its position in the order it was added, repeats of the same
+*   image keep their first id). Each tag keeps the ids of its photos in a plain int[] which
+*   is always in ascending order, because ids only ever grow. So:
+*   - AND walks the lists side by side starting from the shortest,
+*   - OR and prefix searches set bits in a BitSet, which also sorts and de-duplicates,
+*   - tags are kept in a TreeMap so a prefix is one sorted range of it.
+*
+*   It holds at most maxPhotos, DEFAULT_MAX_PHOTOS being far more than a session loads;
+*   once full, new photos simply aren't indexed. Only memory pressure (MemoryGovernor)
+*   makes it smaller: the limit comes down with it, to nothing when it's critical, and the
+*   oldest photos go with the rest renumbered from 0. So an id is only good until the next
+*   trim (getAny() looks up and fetches in one go).
+*
+*   Photos are added as feeds are parsed (it's the FlickrFeedParser.OnPhotoParsed of the
+*   shared FeedCache, see FetchScheduler) and as FeedStore loads them, from background
+*   threads; every method is synchronized. TagSearch asks it for the photos we already have
+*   while the network requests are out.
+* */
+class TagIndex implements FlickrFeedParser.OnPhotoParsed, MemoryGovernor.Trimmable {
+    static final int DEFAULT_MAX_PHOTOS = 50000;
+
+    private static final String TAG = "TagIndex";
+
+    private static final int[] NONE = new int[0];
+
+    private static final TagIndex shared = new TagIndex();
+
+    static {
+        MemoryGovernor.getShared().register(shared);
+    }
+
+    //growable, always sorted, list of photo ids
+    private static class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    private final List<Photo> photos = new ArrayList<>();
+    private final Map<String, Integer> idsByImage = new HashMap<>();
+    private final TreeMap<String, Postings> postings = new TreeMap<>();
+    private final int maxPhotos;
+    //maxPhotos unless there is memory pressure
+    private int limit;
+
+    TagIndex() {
+        this(DEFAULT_MAX_PHOTOS);
+    }
+
+    TagIndex(int maxPhotos) {
+        this.maxPhotos = maxPhotos;
+        limit = maxPhotos;
+    }
+
+    //the index of everything loaded this session
+    static TagIndex getShared() {
+        return shared;
+    }
+
+    @Override
+    public void onPhotoParsed(Photo photo) {
+        add(photo);
+    }
+
+    //returns the photo's id, -1 if it is full; a photo which is already in the index keeps the id it has
+    synchronized int add(Photo photo) {
+        Integer existing = idsByImage.get(photo.getImage());
+        if (existing != null) {
+            return existing;
+        }
+        if (photos.size() >= limit) {
+            return -1;
+        }
+        int id = photos.size();
+        photos.add(photo);
+        idsByImage.put(photo.getImage(), id);
+
+        List<String> tags = photo.getTagList();
+        for (int i = 0; i < tags.size(); i++) {
+            Postings list = postings.get(tags.get(i));
+            if (list == null) {
+                list = new Postings();
+                postings.put(tags.get(i), list);
+            }
+            //a tag repeated on one photo must not add the id twice
+            if (list.size == 0 || list.ids[list.size - 1] != id) {
+                list.add(id);
+            }
+        }
+        return id;
+    }
+
+    synchronized void addAll(List<Photo> photos) {
+        for (Photo photo : photos) {
+            add(photo);
+        }
+    }
+
+    synchronized int size() {
+        return photos.size();
+    }
+
+    synchronized int tagCount() {
+        return postings.size();
+    }
+
+    synchronized Photo get(int id) {
+        return photos.get(id);
+    }
+
+    synchronized List<Photo> get(int[] ids) {
+        List<Photo> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            result.add(photos.get(id));
+        }
+        return result;
+    }
+
+    //ids of the photos carrying every one of tags, ascending
+    synchronized int[] and(String... tags) {
+        if (tags.length == 0) {
+            return NONE;
+        }
+        Postings[] lists = new Postings[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            lists[i] = postings.get(normalise(tags[i]));
+            if (lists[i] == null) {
+                //nobody has this tag so nobody has all of them
+                return NONE;
+            }
+        }
+        //shortest first: the result can't be longer than it and every step only gets shorter
+        Arrays.sort(lists, new Comparator<Postings>() {
+            @Override
+            public int compare(Postings a, Postings b) {
+                return a.size < b.size ? -1 : (a.size == b.size ? 0 : 1);
+            }
+        });
+
+        int[] result = Arrays.copyOf(lists[0].ids, lists[0].size);
+        int size = result.length;
+        for (int i = 1; i < lists.length && size > 0; i++) {
+            size = intersect(result, size, lists[i]);
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    //ids of the photos carrying at least one of tags, ascending
+    synchronized int[] or(String... tags) {
+        BitSet matches = new BitSet(photos.size());
+        for (String tag : tags) {
+            set(matches, postings.get(normalise(tag)));
+        }
+        return toIds(matches);
+    }
+
+    //ids of the photos with a tag starting with prefix, ascending
+    synchronized int[] prefix(String prefix) {
+        prefix = normalise(prefix);
+        BitSet matches = new BitSet(photos.size());
+        //every key from prefix up to (not including) the next string after all of prefix's
+        SortedMap<String, Postings> range = postings.subMap(prefix, prefix + Character.MAX_VALUE);
+        for (Postings list : range.values()) {
+            set(matches, list);
+        }
+        return toIds(matches);
+    }
+
+    //the photos carrying at least one of tags, oldest first
+    synchronized List<Photo> getAny(String... tags) {
+        return get(or(tags));
+    }
+
+    synchronized void clear() {
+        photos.clear();
+        idsByImage.clear();
+        postings.clear();
+    }
+
+    @Override
+    public synchronized void onMemoryPressure(MemoryGovernor.Pressure pressure) {
+        limit = pressure.scale(maxPhotos);
+        if (photos.size() > limit) {
+            trimTo(limit);
+        }
+    }
+
+    //keeps the newest keep photos, renumbered from 0 in the same order
+    private void trimTo(int keep) {
+        List<Photo> newest = new ArrayList<>(photos.subList(photos.size() - keep, photos.size()));
+        DebugLog.d(TAG, "trimTo: dropping %d photos", photos.size() - keep);
+        clear();
+        for (Photo photo : newest) {
+            add(photo);
+        }
+    }
+
+    //keeps the ids of result[0 .. size) which are also in list, returns how many are left
+    private static int intersect(int[] result, int size, Postings list) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < size && j < list.size; i++) {
+            int id = result[i];
+            while (j < list.size && list.ids[j] < id) {
+                j++;
+            }
+            if (j < list.size && list.ids[j] == id) {
+                result[kept++] = id;
+            }
+        }
+        return kept;
+    }
+
+    private static void set(BitSet bits, Postings list) {
+        if (list == null) {
+            return;
+        }
+        for (int i = 0; i < list.size; i++) {
+            bits.set(list.ids[i]);
+        }
+    }
+
+    private static int[] toIds(BitSet bits) {
+        int[] ids = new int[bits.cardinality()];
+        int n = 0;
+        for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+            ids[n++] = id;
+        }
+        return ids;
+    }
+
+    //flickr's tags are lower case without spaces, make the query match
+    private static String normalise(String tag) {
+        return tag.trim().toLowerCase(Locale.US);
+    }
+}
@@ -0,0 +1,181 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/*
+*   Searches for several tags (and/or languages) at once.
+*
+*   One feed request with tags=a,b,c only ever returns one feed's worth of photos. Here the
+*   query is split into one FeedRequest per tag and language, they are all handed to the
+*   FetchScheduler together (which runs them in parallel on its own bounded pool) and the
+*   results are merged as each one lands:
+*   - photos already in the results (same Photo.getLink()) are skipped,
+*   - the Listener hears about every response straight away, so the first photos are on
+*     screen after the quickest response rather than the slowest,
+*   - a failed request just means fewer results, the rest still count (and if the
+*     FeedCache had an older copy of that tag's feed, its photos are used and it still
+*     counts as failed).
+*   So the result set gets wider while the wait stays about one request long.
+*
+*   Given a TagIndex, the photos already loaded which carry any of the tags are the first
+*   results, before any request has gone out.
+*
+*   search() and the callbacks all happen on the main thread.
+* */
+class TagSearch implements FetchScheduler.FeedListener {
+    private static final String TAG = "TagSearch";
+
+    //past this many requests the extra results aren't worth the extra data
+    static final int MAX_REQUESTS = 8;
+
+    interface Listener {
+        //results holds everything so far, the last added photos of it are new
+        void onResultsUpdated(List<Photo> results, int added);
+
+        //every request has answered; failed of them didn't return anything
+        void onSearchComplete(List<Photo> results, int failed);
+    }
+
+    private final FetchScheduler scheduler;
+    private final String baseURL;
+    //may be null, then every result comes from the network
+    private final TagIndex index;
+    private final Listener listener;
+
+    private final List<Photo> results = new ArrayList<>();
+    private final List<Photo> resultsView = Collections.unmodifiableList(results);
+    private final Set<String> seenLinks = new HashSet<>();
+    //URIs of this search's requests that haven't answered yet
+    private final Set<String> pending = new HashSet<>();
+    private int failed;
+
+    TagSearch(FetchScheduler scheduler, String baseURL, Listener listener) {
+        this(scheduler, baseURL, null, listener);
+    }
+
+    TagSearch(FetchScheduler scheduler, String baseURL, TagIndex index, Listener listener) {
+        this.scheduler = scheduler;
+        this.baseURL = baseURL;
+        this.index = index;
+        this.listener = listener;
+    }
+
+    /*
+    * Starts a new search, dropping any search still running. query is the tags separated by
+    * commas and/or spaces, the way a user would type them. languages defaults to en-us.
+    * */
+    void search(String query, String... languages) {
+        cancel();
+        results.clear();
+        seenLinks.clear();
+        failed = 0;
+
+        List<FeedRequest> requests = split(baseURL, query, languages);
+        DebugLog.d(TAG, "search: '%s' as %d requests", query, requests.size());
+        if (index != null && !requests.isEmpty()) {
+            Set<String> tags = new LinkedHashSet<>();
+            for (FeedRequest request : requests) {
+                tags.add(request.getSearchCriteria());
+            }
+            int added = merge(index.getAny(tags.toArray(new String[tags.size()])));
+            DebugLog.d(TAG, "search: %d photos already loaded", added);
+            if (added > 0) {
+                listener.onResultsUpdated(resultsView, added);
+            }
+        }
+        if (requests.isEmpty()) {
+            listener.onSearchComplete(resultsView, 0);
+            return;
+        }
+        for (FeedRequest request : requests) {
+            pending.add(request.getUri());
+        }
+        for (FeedRequest request : requests) {
+            scheduler.fetch(request, FetchScheduler.Priority.VISIBLE, this, this);
+        }
+    }
+
+    void cancel() {
+        scheduler.cancelAll(this);
+        pending.clear();
+    }
+
+    List<Photo> getResults() {
+        return resultsView;
+    }
+
+    boolean isSearching() {
+        return !pending.isEmpty();
+    }
+
+    /*
+    * One request per distinct tag per language, at most MAX_REQUESTS of them.
+    * */
+    static List<FeedRequest> split(String baseURL, String query, String... languages) {
+        Set<String> tags = new LinkedHashSet<>();
+        for (String tag : query.split("[,\\s]+")) {
+            if (!tag.isEmpty()) {
+                //flickr tags aren't case sensitive, "Android" and "android" are one request
+                tags.add(tag.toLowerCase(Locale.US));
+            }
+        }
+        if (languages == null || languages.length == 0) {
+            languages = new String[]{"en-us"};
+        }
+
+        List<FeedRequest> requests = new ArrayList<>();
+        for (String tag : tags) {
+            for (String language : languages) {
+                if (requests.size() == MAX_REQUESTS) {
+                    return requests;
+                }
+                requests.add(new FeedRequest(baseURL, tag, language, true));
+            }
+        }
+        return requests;
+    }
+
+    @Override
+    public void onFeedLoaded(FeedRequest request, FeedResult result) {
+        if (!pending.remove(request.getUri())) {
+            //from a search that has since been replaced
+            return;
+        }
+
+        //a stale result's photos count too, it's still a failed request
+        if (result.hasPhotos()) {
+            int added = merge(result.getPhotos());
+            DebugLog.d(TAG, "onFeedLoaded: %s added %d, %d still to come", request, added, pending.size());
+            if (added > 0) {
+                listener.onResultsUpdated(resultsView, added);
+            }
+        }
+        if (result.getStatus() != DownloadStatus.OK) {
+            failed++;
+            Log.w(TAG, "onFeedLoaded: " + request + " failed with " + result.getStatus());
+        }
+
+        if (pending.isEmpty()) {
+            listener.onSearchComplete(resultsView, failed);
+        }
+    }
+
+    //adds the photos not in the results yet, returns how many
+    private int merge(List<Photo> photos) {
+        int before = results.size();
+        for (Photo photo : photos) {
+            if (seenLinks.add(photo.getLink())) {
+                results.add(photo);
+            }
+        }
+        return results.size() - before;
+    }
+}
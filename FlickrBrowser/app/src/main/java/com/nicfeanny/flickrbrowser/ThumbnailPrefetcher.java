@@ -0,0 +1,244 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/*
+*   Loads the grid's thumbnails ahead of the scrolling, so a cell usually finds its image in
+*   the memory cache when it is bound instead of starting the download then.
+*
+*   - How far ahead depends on how fast the list is moving: the smoothed speed (rows per
+*     second, from onScrolled) times LOOKAHEAD_MILLIS, between MIN_ROWS_AHEAD and
+*     MAX_ROWS_AHEAD, in the direction of the scroll, plus ROWS_BEHIND the other way in
+*     case the user turns round. Nearest to the viewport first.
+*   - Faster than FLING_ROWS_PER_SECOND nothing is prefetched: the cells we'd load would be
+*     gone before their images arrived. When the list slows down or stops we catch up.
+*   - At most MAX_IN_FLIGHT prefetches at a time, so the ImageLoader's threads aren't all
+*     busy with them when a cell on screen needs one; the next is queued as one finishes.
+*   - A prefetch that ends up out of range is cancelled (if it hasn't started yet it never
+*     will, see ImageLoader.Request).
+*   - Nothing at all on a metered network, the cells load what's on screen and no more.
+*     Call setMetered(isMetered(context)) from onResume.
+*
+*   URLs come from ImageLoader.urlFor at the grid's cell size, the same as the adapter asks
+*   for, so a prefetched thumbnail is what the cell finds in the cache.
+*
+*   Everything here happens on the main thread.
+* */
+class ThumbnailPrefetcher {
+    private static final String TAG = "ThumbnailPrefetcher";
+
+    static final int MAX_IN_FLIGHT = 2;
+    static final int MIN_ROWS_AHEAD = 2;
+    static final int MAX_ROWS_AHEAD = 8;
+    static final int ROWS_BEHIND = 1;
+    //how far ahead of the viewport a list moving at a steady speed should be loaded
+    static final long LOOKAHEAD_MILLIS = 1000;
+    static final float FLING_ROWS_PER_SECOND = 30;
+
+    interface Photos {
+        int getItemCount();
+
+        Photo getPhoto(int position);
+    }
+
+    private final ImageLoader imageLoader;
+    private final Photos photos;
+    private final int spanCount;
+    private final int thumbnailSize;
+
+    //by URL, so a cell binding to the same URL simply joins the load
+    private final Map<String, ImageLoader.Request> inFlight = new HashMap<>();
+    private boolean metered;
+    private boolean updating;
+
+    private int firstVisible = -1;
+    private int lastVisible = -1;
+    private long lastScrollMillis;
+    //rows per second, + is towards the end of the list
+    private float velocity;
+
+    private final ImageLoader.OnImageLoaded onPrefetched = new ImageLoader.OnImageLoaded() {
+        @Override
+        public void onImageLoaded(String url, Bitmap bitmap) {
+            if (!inFlight.containsKey(url)) {
+                //cancelled, or one of ours for a URL we've since prefetched again
+                return;
+            }
+            inFlight.remove(url);
+            //a slot is free; not after a failure (or dropPrefetches), the next scroll will retry
+            if (bitmap != null && !updating) {
+                update();
+            }
+        }
+    };
+
+    ThumbnailPrefetcher(ImageLoader imageLoader, Photos photos, int spanCount, int thumbnailSize) {
+        this.imageLoader = imageLoader;
+        this.photos = photos;
+        this.spanCount = spanCount;
+        this.thumbnailSize = thumbnailSize;
+    }
+
+    //isActiveNetworkMetered is API 16; before that mobile data is taken to be metered
+    static boolean isMetered(Context context) {
+        ConnectivityManager connectivity =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivity == null) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            return connectivity.isActiveNetworkMetered();
+        }
+        NetworkInfo network = connectivity.getActiveNetworkInfo();
+        return network != null && network.getType() == ConnectivityManager.TYPE_MOBILE;
+    }
+
+    void setMetered(boolean metered) {
+        this.metered = metered;
+        update();
+    }
+
+    /*
+    * Call from onScrolled with the first and last positions on screen, how far it scrolled
+    * (dy) and SystemClock.uptimeMillis(). The speed comes from dy rather than the positions,
+    * which only change a whole row at a time.
+    * */
+    void onScrolled(int firstVisible, int lastVisible, int dy, long nowMillis) {
+        if (lastScrollMillis > 0 && nowMillis > lastScrollMillis) {
+            //rows are (about) as tall as the square cells
+            float rows = (float) dy / thumbnailSize;
+            float instant = rows * 1000 / (nowMillis - lastScrollMillis);
+            //onScrolled comes every frame or so, one frame on its own is too jumpy
+            velocity = velocity == 0 ? instant : (velocity + instant) / 2;
+        }
+        this.firstVisible = firstVisible;
+        this.lastVisible = lastVisible;
+        lastScrollMillis = nowMillis;
+        update();
+    }
+
+    //the list has stopped, load around where it is
+    void onScrollIdle(int firstVisible, int lastVisible) {
+        this.firstVisible = firstVisible;
+        this.lastVisible = lastVisible;
+        velocity = 0;
+        //the next scroll's first onScrolled has nothing to measure its speed against
+        lastScrollMillis = 0;
+        update();
+    }
+
+    //photos were added or replaced; what's in range may have changed
+    void onPhotosChanged() {
+        update();
+    }
+
+    void cancelAll() {
+        for (ImageLoader.Request request : inFlight.values()) {
+            request.cancel();
+        }
+        inFlight.clear();
+    }
+
+    int getInFlight() {
+        return inFlight.size();
+    }
+
+    boolean isPrefetching(String url) {
+        return inFlight.containsKey(url);
+    }
+
+    float getVelocity() {
+        return velocity;
+    }
+
+    //the positions to have loaded, nearest to the viewport first
+    List<Integer> wanted() {
+        List<Integer> positions = new ArrayList<>();
+        int count = photos.getItemCount();
+        if (metered || firstVisible < 0 || count == 0 || Math.abs(velocity) > FLING_ROWS_PER_SECOND) {
+            return positions;
+        }
+        int rowsAhead = Math.round(Math.abs(velocity) * LOOKAHEAD_MILLIS / 1000);
+        rowsAhead = Math.max(MIN_ROWS_AHEAD, Math.min(MAX_ROWS_AHEAD, rowsAhead));
+        int ahead = rowsAhead * spanCount;
+        int behind = ROWS_BEHIND * spanCount;
+        if (velocity < 0) {
+            //scrolling back up, "ahead" is above the viewport
+            addRange(positions, firstVisible - 1, -1, ahead, count);
+            addRange(positions, lastVisible + 1, 1, behind, count);
+        } else {
+            addRange(positions, lastVisible + 1, 1, ahead, count);
+            addRange(positions, firstVisible - 1, -1, behind, count);
+        }
+        return positions;
+    }
+
+    private static void addRange(List<Integer> positions, int from, int step, int length, int count) {
+        for (int i = 0, position = from; i < length && position >= 0 && position < count; i++, position += step) {
+            positions.add(position);
+        }
+    }
+
+    private void update() {
+        updating = true;
+        try {
+            queue();
+        } finally {
+            updating = false;
+        }
+    }
+
+    private void queue() {
+        List<Integer> positions = wanted();
+        List<String> urls = new ArrayList<>(positions.size());
+        List<Photo> wantedPhotos = new ArrayList<>(positions.size());
+        for (int position : positions) {
+            Photo photo = photos.getPhoto(position);
+            wantedPhotos.add(photo);
+            urls.add(imageLoader.urlFor(photo, thumbnailSize, thumbnailSize, true));
+        }
+
+        //scrolled out of range (or flung past, or gone metered)
+        int cancelled = 0;
+        Iterator<Map.Entry<String, ImageLoader.Request>> loads = inFlight.entrySet().iterator();
+        while (loads.hasNext()) {
+            Map.Entry<String, ImageLoader.Request> load = loads.next();
+            if (!urls.contains(load.getKey())) {
+                load.getValue().cancel();
+                loads.remove();
+                cancelled++;
+            }
+        }
+
+        int queued = 0;
+        for (int i = 0; i < urls.size() && inFlight.size() < MAX_IN_FLIGHT; i++) {
+            String url = urls.get(i);
+            if (inFlight.containsKey(url) || imageLoader.getCached(url, thumbnailSize, thumbnailSize) != null) {
+                continue;
+            }
+            //in the map first: if it turns up in the memory cache meanwhile, the callback comes before prefetch returns
+            inFlight.put(url, null);
+            ImageLoader.Request request =
+                    imageLoader.prefetch(url, wantedPhotos.get(i).getImage(), thumbnailSize, thumbnailSize, onPrefetched);
+            if (inFlight.containsKey(url)) {
+                inFlight.put(url, request);
+            }
+            queued++;
+        }
+        //every frame while scrolling, so not even the arguments unless it's logged
+        if ((cancelled > 0 || queued > 0) && DebugLog.isEnabled()) {
+            DebugLog.d(TAG, "update: %.1f rows/s, %d wanted, %d queued, %d cancelled", velocity,
+                    urls.size(), queued, cancelled);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.io.IOException;
+import java.util.Map;
+
+/*
+*   How GetRawData actually talks HTTP. Everything above this (GetRawData, FeedCache,
+*   ImageLoader) only deals with a response code, headers and a body stream, so the
+*   connection handling can be swapped without touching them; e.g. a keep-alive pool in
+*   the app and a fake in tests.
+* */
+interface Transport {
+
+    /*
+    * Sends a GET for url with the given extra headers (may be null) and returns once the
+    * response headers have arrived. The body has NOT been read yet; the caller must
+    * close() the response when done with it, which is what lets the connection be reused.
+    * An HTTP error (4xx/5xx) is returned as a response with that code, not thrown; an
+    * IOException means no response arrived at all.
+    * */
+    TransportResponse get(String url, Map<String, String> requestHeaders) throws IOException;
+}
@@ -0,0 +1,68 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/*
+*   A response from a Transport: code and headers straight away, the body as a stream
+*   which is read on demand. close() must always be called.
+* */
+class TransportResponse implements Closeable {
+    private final int code;
+    private final Map<String, List<String>> headers;
+    private final int contentLength;
+    private final InputStream body;
+    private final RequestTiming timing;
+    private final Closeable connection;
+
+    TransportResponse(int code, Map<String, List<String>> headers, int contentLength, InputStream body,
+                      RequestTiming timing, Closeable connection) {
+        this.code = code;
+        this.headers = headers == null ? Collections.<String, List<String>>emptyMap() : headers;
+        this.contentLength = contentLength;
+        this.body = body;
+        this.timing = timing;
+        this.connection = connection;
+    }
+
+    int getCode() {
+        return code;
+    }
+
+    Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    //null if it wasn't sent. Names are case insensitive
+    String getHeader(String name) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    //-1 if unknown, e.g. chunked; for gzip it is the compressed size
+    int getContentLength() {
+        return contentLength;
+    }
+
+    //already unzipped if the server sent gzip. Empty for e.g. 304 Not Modified
+    InputStream getBody() {
+        return body;
+    }
+
+    RequestTiming getTiming() {
+        return timing;
+    }
+
+    @Override
+    public void close() throws IOException {
+        connection.close();
+    }
+}
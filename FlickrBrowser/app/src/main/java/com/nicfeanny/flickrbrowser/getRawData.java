@@ -1,191 +1,313 @@
 package com.nicfeanny.flickrbrowser;
 
-import android.os.AsyncTask;
 import android.util.Log;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
-import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 enum DownloadStatus{IDLE, PROCESSING, NOT_INITIALIZED, FAILED_OR_EMPTY, OK}
 
 
-class GetRawData extends AsyncTask<String, Void, String>{
+/*
+*   Downloads a URL on the calling thread, so always call it from a background thread
+*   (FetchScheduler's, ImageLoader's or FeedSync's). It used to be an AsyncTask which called
+*   its caller back through OnDownLoadComplete; nothing used that once every feed went
+*   through FetchScheduler, so the callback and the AsyncTask are gone.
+* */
+class GetRawData{
     private static final String TAG = "GetRawData";
 
+    //download buffers are shared by every GetRawData, a feed is normally well under 512KB
+    private static final ByteBufferPool BUFFER_POOL = new ByteBufferPool(4, 512 * 1024);
+
+    static {
+        MemoryGovernor.getShared().register(BUFFER_POOL);
+    }
+
+    //one keep-alive transport for the whole app so idle connections are shared
+    static final Transport DEFAULT_TRANSPORT = new HttpURLConnectionTransport();
+
     private DownloadStatus downloadStatus;
-    private final OnDownLoadComplete onCallBack;
+    private DownloadResult lastResult;
+
+    //what the server said about the last request, kept for conditional requests (ETag etc.)
+    private int responseCode = -1;
+    private Map<String, List<String>> responseHeaders = Collections.emptyMap();
+    private RequestTiming lastTiming;
 
+    private final Transport transport;
+    private final RetryPolicy retryPolicy;
+    //null means the shared breaker for each URL's host
+    private final CircuitBreaker circuitBreaker;
 
-    /*Creating an interface is like creating a class
-    * however, you do not define the functions; that is up to the user
-    * Instead, you are basically telling the user "These are the functions
-    * I require in order for you to use me in your class"*/
-    interface OnDownLoadComplete{
-        void onDownloadComplete(String s, DownloadStatus status);
+
+    /*
+    * Used when the caller would rather read the response body itself (e.g. a streaming
+    * JSON parser) than be handed one big String. The stream is only valid for the duration of the call.
+    * */
+    interface OnStreamAvailable{
+        void onStreamAvailable(InputStream stream) throws IOException;
     }
 
-    public GetRawData(OnDownLoadComplete callBack){
+    public GetRawData(){
+        this(DEFAULT_TRANSPORT);
+    }
+
+    GetRawData(Transport transport){
+        this(transport, RetryPolicy.DEFAULT, null);
+    }
+
+    GetRawData(Transport transport, RetryPolicy retryPolicy, CircuitBreaker circuitBreaker){
         this.downloadStatus = DownloadStatus.IDLE;
-        this.onCallBack = callBack;
+        this.transport = transport;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = circuitBreaker;
     }
 
     /*
-    * "@OVerride is an annotation which tells the Java Compiler that the
-    * method that follow is overriding an existing method in its superclass
-    * or an interface.
-     *--Using @override allows the compiler to check that the method has the correct name
-    *   and the correct number and type of parameters
-    * --Android Studio also uses it to show those error and warnings in the
-    *   right hand margin.
-    * --The code runs fine without it but its a good Idea to use it
+    *  Streaming counterpart of downloadStringInSameThread. Rather than building the response up
+    *  line by line into a String, the open InputStream is handed to the consumer which
+    *  reads it directly; so no copy of the body is ever made here.
+    *  Must be called from a background thread, it blocks until the consumer returns.
     * */
-    @Override
-    protected void onPostExecute(String s) {
-        Log.d(TAG, "onPostExecute: the parameter = " + s);
-        super.onPostExecute(s);
+    DownloadStatus streamInSameThread(String s, OnStreamAvailable consumer){
+        return streamInSameThread(s, null, consumer);
+    }
 
-        /*
-        * this is using the callback function
-        * this is how callbacks work, the called object will call when something
-        * interesting happens, then you give the object a reference to something that
-        * has that method in this case we gave the getRawData instance a reference
-        * to the mainactivity object that Android creates when it launches the acitivity by
-        * using this from inside the mainactivity; That is why we pass "this" in the
-        * "GetRawData" object instantiation in MainActivity.
-        * */
-        if(onCallBack != null){
-            onCallBack.onDownloadComplete(s, downloadStatus);
+    /*
+    *  As above with extra request headers, e.g. If-None-Match / If-Modified-Since.
+    *  If the server answers 304 Not Modified there is no body, so the consumer is NOT
+    *  called; the status is still OK and getResponseCode() tells the caller what happened.
+    * */
+    DownloadStatus streamInSameThread(String s, Map<String, String> requestHeaders, final OnStreamAvailable consumer){
+        DebugLog.d(TAG, "streamInSameThread: Starts...");
+
+        if(s == null || consumer == null){
+            finish(DownloadResult.notInitialized());
+            return downloadStatus;
+        }
+
+        execute(s, requestHeaders, new BodyReader<Void>() {
+            @Override
+            Void read(TransportResponse response) throws IOException {
+                if(response.getCode() != HttpURLConnection.HTTP_NOT_MODIFIED){
+                    //from here on the consumer has (some of) the body, so it can't be retried
+                    handedOut = true;
+                    consumer.onStreamAvailable(response.getBody());
+                }
+                return null;
+            }
+        });
+
+        DebugLog.d(TAG, "streamInSameThread: Ends... %s %s", lastResult, lastTiming);
+        return downloadStatus;
+    }
+
+    /*
+    *  Byte level download: the body is read straight into one pooled buffer (sized from
+    *  Content-Length when the server sends it) and returned undecoded, so the caller can
+    *  either decode it once with asString() or give asStream() directly to a parser.
+    *  Returns null on failure; otherwise the caller must release() the response.
+    * */
+    RawResponse downloadInSameThread(String s){
+        DebugLog.d(TAG, "downloadInSameThread: Starts...");
+
+        if(s == null){
+            finish(DownloadResult.notInitialized());
+            return null;
         }
-        Log.d(TAG, "onPostExecute: ends");
 
+        RawResponse body = execute(s, null, new BodyReader<RawResponse>() {
+            @Override
+            RawResponse read(TransportResponse response) throws IOException {
+                return RawResponse.read(response.getCode(), response.getBody(), response.getContentLength(), BUFFER_POOL);
+            }
+        });
+
+        DebugLog.d(TAG, "downloadInSameThread: Ends... read %d bytes %s %s",
+                body == null ? 0 : body.length(), lastResult, lastTiming);
+        return body;
+    }
+
+    //reads the body of a successful response; handedOut is set once it can't be read again
+    private abstract static class BodyReader<T>{
+        boolean handedOut;
+
+        abstract T read(TransportResponse response) throws IOException;
     }
 
     /*
-    *  This does what the AsyncTask .execute function does.
-    *  when you call the execute method of an AsyncTask
-    *  it creates a new thread and runs the doinBackground method.
-    *  When that completes, the onPostExecutes function is called On the
-    *  main thread.
-    *   We just need to do the same thing minus creating a new background thread
-    *   so we call the doInBackground method and return the value from that to onPostExecute.
-    *
-    *
-    *
+    *  Sends the GET, retrying transient failures as retryPolicy says, unless the host's
+    *  CircuitBreaker is open. Returns what reader made of the body, or null on failure;
+    *  either way lastResult / downloadStatus say how it went.
     * */
-    void runInSameThread(String s){
-        Log.d(TAG, "onInSameThread: Starts...");
+    private <T> T execute(String url, Map<String, String> requestHeaders, BodyReader<T> reader){
+        CircuitBreaker breaker = circuitBreaker != null ? circuitBreaker : CircuitBreaker.forUrl(url);
+        long start = System.nanoTime();
+        int attempts = 0;
+
+        while(true){
+            if(!breaker.allowRequest()){
+                Log.w(TAG, "execute: " + url + " not sent, too many failures from its host recently");
+                finish(new DownloadResult(DownloadResult.Failure.CIRCUIT_OPEN, -1, millisSince(start), attempts));
+                return null;
+            }
+            attempts++;
 
-     //   onPostExecute(doInBackground(s));
-          if(onCallBack != null){
-           //   String result = doInBackground(s);
-           //   onCallBack.onDownloadComplete(result, downloadStatus);
-              onCallBack.onDownloadComplete(doInBackground(s), downloadStatus);
-          }
+            //set to processing as... we have begun to retrieve the data from the api pull
+            downloadStatus = DownloadStatus.PROCESSING;
+            TransportResponse response = null;
+            //stays null only if an Error (OutOfMemoryError growing the body buffer, say) is on its way out
+            DownloadResult.Failure failure = null;
+            int code = -1;
+            long retryAfterMillis = -1;
+            T body = null;
+            try{
+                response = open(url, requestHeaders);
+                code = responseCode;
+                //we log to verify if the connection was successsful or if there was an error
+                DebugLog.d(TAG, "execute: The response code was %d", code);
+
+                DownloadResult.Failure answered = DownloadResult.failureFor(code);
+                if(answered == DownloadResult.Failure.NONE){
+                    body = reader.read(response);
+                } else {
+                    Log.e(TAG, "execute: " + url + " answered " + code);
+                    retryAfterMillis = RetryPolicy.parseRetryAfter(response.getHeader("Retry-After"));
+                }
+                failure = answered;
+            } catch(MalformedURLException e){
+                //i.e., url not in the right format
+                Log.e(TAG, "execute: Invalid URL " + e.getMessage());
+                failure = DownloadResult.Failure.INVALID_URL;
+            } catch(IOException e){
+                //the network going away, a timeout, or the body failing to read or parse
+                Log.e(TAG, "execute: IO Exception reading data: " + e);
+                failure = DownloadResult.failureFor(e, code != -1);
+            } catch(SecurityException e){
+                //thrown if we do not have the correct permissions to access the internet
+                Log.e(TAG, "execute: Security Exception. Needs Permission?" + e.getMessage());
+                failure = DownloadResult.Failure.NO_PERMISSION;
+            } catch(RuntimeException e){
+                //HttpURLConnection throwing IllegalArgumentException and the like, or a reader
+                //with a bug: the body is no use to us either way, and it isn't worth another go
+                Log.e(TAG, "execute: Unexpected exception: " + e);
+                failure = DownloadResult.Failure.BAD_RESPONSE;
+            } finally{
+                //once we are done we close the response; with keep-alive this hands the
+                //connection back to the pool rather than tearing it down
+                close(response);
+                if(failure == null){
+                    //the attempt still has to be recorded, or a HALF_OPEN breaker waits on its
+                    //trial for ever and nothing goes to this host again
+                    breaker.record(new DownloadResult(DownloadResult.Failure.BAD_RESPONSE, code, millisSince(start), attempts));
+                }
+            }
 
+            DownloadResult result = new DownloadResult(failure, code, millisSince(start), attempts);
+            breaker.record(result);
+            if(result.isOk() || reader.handedOut || !retryPolicy.shouldRetry(result, attempts)){
+                if(result.isOk()){
+                    Metrics.record(Metrics.Metric.DOWNLOAD_MILLIS, result.getLatencyMillis());
+                }
+                finish(result);
+                return body;
+            }
 
-        Log.d(TAG, "onInSameThread: Ends...");
+            long delay = retryPolicy.delayMillis(attempts, retryAfterMillis);
+            DebugLog.d(TAG, "execute: %s, attempt %d again in %dms", result, attempts + 1, delay);
+            try{
+                Thread.sleep(delay);
+            } catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                finish(new DownloadResult(DownloadResult.Failure.INTERRUPTED, code, millisSince(start), attempts));
+                return null;
+            }
+        }
+    }
+
+    private void finish(DownloadResult result){
+        lastResult = result;
+        downloadStatus = result.getStatus();
     }
 
-    //Strings...strings is function overloading in java, i.e., there could be one argument or 100
-    //you access that argument like an array with [<index>]
-    @Override
-    protected String doInBackground(String... strings) {
-        HttpURLConnection connection = null;
-        BufferedReader reader = null;
+    private static long millisSince(long startNanos){
+        return (System.nanoTime() - startNanos) / 1000000;
+    }
 
+    //the body decoded as a String, or null on failure; for a caller that really does want text
+    String downloadStringInSameThread(String s){
         //check to see if we have been given a url
         //if not we have a problum
-        if(strings == null){
-            downloadStatus = DownloadStatus.NOT_INITIALIZED;
+        if(s == null){
+            finish(DownloadResult.notInitialized());
             return null;
         }
 
-        try{
-           //set to processing as... we have begun to retrieve the data from the api pull
-            downloadStatus = DownloadStatus.PROCESSING;
+        /*
+        * We used to wrap the stream in a BufferedReader and append a line at a time (plus the
+        * "\n" readLine strips off) to a StringBuilder, then call toString(). That copied every
+        * byte three times. Now the bytes land in one pooled buffer and are decoded exactly once.
+        * */
+        RawResponse body = downloadInSameThread(s);
+        if(body == null){
+            //downloadInSameThread has already set the status and logged why
+            return null;
+        }
 
-            //we create a URL via the strings parameter (argument passed in)
-            URL url = new URL(strings[0]);
-            StringBuilder result = new StringBuilder();
-            String line;
-
-            //URL string is used to open a connection
-            connection = (HttpURLConnection) url.openConnection();
-
-            //this statement is a http request
-            //we can GET,PUT,POST and request the information to be retrieved from or pushed
-            //to the server, in this case, we are requesting that the API goes and GETS
-            //the information we are asking for
-            //FYI: sometimes you might see HttpURLConnections without a setRequest
-            //this is because GET is set by default (we didn't have to do this in the top 10 app)
-            connection.setRequestMethod("GET");
-            
-            connection.connect();
-
-            //we log to verify if the connection was successsful or if there was an error
-            int response = connection.getResponseCode();
-            Log.d(TAG, "doInBackground: The response code was " + response);
-
-            //we are using a buffered reader to read data in chunks
-            //we fill the buffer, parse it and then store it, i.e., append,
-            //rinse and repeat, however in this case we are reading a line at a time
-            //but the mindset remains the same as there are many lines of XML/JSON
-            //reading a line at a time is better than reading by individual characters and
-            //placing that into the buffered reader
-            reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-
-            //we have to read a line at a time
-            //the newline is stripped off so we have to put a new newline to make sure
-            //it stays in the same format
-            while((line = reader.readLine()) != null){
-                result.append(line).append("\n");
-            }
+        try {
+            return body.asString();
+        } finally {
+            body.release();
+        }
+    }
 
-            //alternative format to the above loop
-            //for(String line = reader.readLine(); line != null; line = reader.readLine())
-            //{result.append(line).append("\n")}
-
-            //we then set the status to ok (this is obvious, greg) and then we return
-            //that string we created in all it's glory
-            downloadStatus = DownloadStatus.OK;
-            return result.toString();
-
-        } catch(MalformedURLException e){
-            //i.e., url not in the right format
-            Log.e(TAG, "doInBackground: Invalid URL " + e.getMessage());
-        } catch(IOException e){
-            //exception is thrown because of IO...
-            Log.e(TAG, "doInBackground: IO Exception reading data: " + e.getMessage());
-        } catch(SecurityException e){
-            //thrown if we do not have the correct permissions to access the internet
-            Log.e(TAG, "doInBackground: Security Exception. Needs Permission?" + e.getMessage() );
-        } finally{
-            //once we are done retrieve the data from the request
-            //we disconnect; kind of like deallocating
-            if(connection != null){
-                connection.disconnect();
-            }
-            if(reader != null){
-                try {
-                    reader.close();
-                } catch(IOException e){
-                    Log.e(TAG, "doInBackground: Error closing stream " + e.getMessage());
-                }
+    private TransportResponse open(String s, Map<String, String> requestHeaders) throws IOException {
+        TransportResponse response = transport.get(s, requestHeaders);
+        PerfCounters.increment(PerfCounters.Counter.DOWNLOADS);
+        responseCode = response.getCode();
+        responseHeaders = response.getHeaders();
+        lastTiming = response.getTiming();
+        return response;
+    }
+
+    private void close(TransportResponse response){
+        if(response != null){
+            try {
+                response.close();
+            } catch(IOException e){
+                Log.e(TAG, "close: Error closing stream " + e.getMessage());
             }
         }
+    }
 
+    //-1 until a response has been received
+    int getResponseCode(){
+        return responseCode;
+    }
 
-        //if we get here something went wrong with parsing process
-        //in other words, something went wrong when we attempted to grab the raw data from the api
-        downloadStatus = DownloadStatus.FAILED_OR_EMPTY;
-
+    //header from the last response, null if it wasn't sent. Names are case insensitive
+    String getResponseHeader(String name){
+        for(Map.Entry<String, List<String>> header : responseHeaders.entrySet()){
+            if(name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()){
+                return header.getValue().get(0);
+            }
+        }
         return null;
     }
 
+    //how the last download went, null until one has been attempted
+    DownloadResult getLastResult(){
+        return lastResult;
+    }
 
-
+    //connect/ttfb/body times of the last request, null until one has been made
+    RequestTiming getLastTiming(){
+        return lastTiming;
+    }
 }
@@ -0,0 +1,247 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A small benchmark harness shared by the JVM benchmarks (src/test, run with Robolectric)
+ * and the on-device ones (src/androidTest).
+ *
+ * Each {@link #measure} warms the code up, then times a number of samples of opsPerSample
+ * calls each and keeps the median, min and mean time per call (plus allocated bytes per
+ * call where the VM can tell us). {@link #finish} writes everything measured to
+ * {@code <suite>.json} in the output directory and, when a baseline directory is given,
+ * fails if anything has got slower than the baseline by more than the tolerance.
+ *
+ * On the JVM the directories come from the system properties benchmark.output,
+ * benchmark.baseline and benchmark.tolerance (see the benchmark task in build.gradle).
+ */
+final class BenchmarkRunner {
+    static final String OUTPUT_PROPERTY = "benchmark.output";
+    static final String BASELINE_PROPERTY = "benchmark.baseline";
+    static final String TOLERANCE_PROPERTY = "benchmark.tolerance";
+    //medians move about this much run to run on a quiet machine
+    static final double DEFAULT_TOLERANCE = 0.25;
+
+    interface Body {
+        //return something computed from the work, so it can't be optimised away
+        Object run() throws Exception;
+    }
+
+    static final class Result {
+        final String name;
+        final int samples;
+        final int opsPerSample;
+        final double medianNanos;
+        final double minNanos;
+        final double meanNanos;
+        //-1 if the VM can't count allocations (Android)
+        final long allocatedBytes;
+
+        Result(String name, int samples, int opsPerSample, double medianNanos, double minNanos, double meanNanos,
+               long allocatedBytes) {
+            this.name = name;
+            this.samples = samples;
+            this.opsPerSample = opsPerSample;
+            this.medianNanos = medianNanos;
+            this.minNanos = minNanos;
+            this.meanNanos = meanNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: median %.0fns/op, min %.0fns/op, %d bytes/op",
+                    name, medianNanos, minNanos, allocatedBytes);
+        }
+    }
+
+    private final String suite;
+    private final List<Result> results = new ArrayList<>();
+    private int sink;
+
+    BenchmarkRunner(String suite) {
+        this.suite = suite;
+    }
+
+    Result measure(String name, int warmupSamples, int samples, int opsPerSample, Body body) throws Exception {
+        for (int i = 0; i < warmupSamples * opsPerSample; i++) {
+            consume(body.run());
+        }
+
+        double[] nanosPerOp = new double[samples];
+        long allocatedBefore = Allocations.current();
+        for (int s = 0; s < samples; s++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < opsPerSample; i++) {
+                consume(body.run());
+            }
+            nanosPerOp[s] = (double) (System.nanoTime() - start) / opsPerSample;
+        }
+        long allocatedAfter = Allocations.current();
+
+        double total = 0;
+        for (double nanos : nanosPerOp) {
+            total += nanos;
+        }
+        Arrays.sort(nanosPerOp);
+        long ops = (long) samples * opsPerSample;
+        long allocated = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : (allocatedAfter - allocatedBefore) / ops;
+
+        Result result = new Result(name, samples, opsPerSample, nanosPerOp[samples / 2], nanosPerOp[0],
+                total / samples, allocated);
+        results.add(result);
+        System.out.println(suite + " " + result);
+        return result;
+    }
+
+    List<Result> getResults() {
+        return results;
+    }
+
+    /*
+    * Writes the results (if outputDir isn't null) and compares them with the same suite's
+    * results in baselineDir (if that isn't null and has them). Throws AssertionError naming
+    * every benchmark that regressed.
+    * */
+    void finish(File outputDir, File baselineDir, double tolerance) throws IOException {
+        if (outputDir != null) {
+            if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+                throw new IOException("can't create " + outputDir);
+            }
+            Writer writer = new OutputStreamWriter(new FileOutputStream(new File(outputDir, suite + ".json")), "UTF-8");
+            try {
+                writer.write(toJson());
+            } finally {
+                writer.close();
+            }
+        }
+
+        if (baselineDir == null) {
+            return;
+        }
+        File baseline = new File(baselineDir, suite + ".json");
+        if (!baseline.isFile()) {
+            System.out.println(suite + ": no baseline at " + baseline + ", nothing to compare with");
+            return;
+        }
+        List<String> regressions = compare(read(baseline), tolerance);
+        if (!regressions.isEmpty()) {
+            throw new AssertionError(suite + " regressed against " + baseline + ": " + regressions);
+        }
+    }
+
+    //finish() with the directories from the system properties, as the Gradle task sets them
+    void finish() throws IOException {
+        String output = System.getProperty(OUTPUT_PROPERTY);
+        String baseline = System.getProperty(BASELINE_PROPERTY);
+        String tolerance = System.getProperty(TOLERANCE_PROPERTY);
+        finish(output == null ? null : new File(output), baseline == null ? null : new File(baseline),
+                tolerance == null ? DEFAULT_TOLERANCE : Double.parseDouble(tolerance));
+    }
+
+    String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"suite\": \"").append(suite).append("\",\n");
+        json.append("  \"timestamp\": ").append(System.currentTimeMillis()).append(",\n");
+        json.append("  \"vm\": \"").append(escape(System.getProperty("java.vm.name") + " "
+                + System.getProperty("java.vm.version"))).append("\",\n");
+        json.append("  \"results\": [");
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append(String.format(Locale.US, "    {\"name\": \"%s\", \"samples\": %d, \"ops_per_sample\": %d, "
+                            + "\"median_ns_per_op\": %.1f, \"min_ns_per_op\": %.1f, \"mean_ns_per_op\": %.1f, "
+                            + "\"allocated_bytes_per_op\": %d}",
+                    escape(result.name), result.samples, result.opsPerSample,
+                    result.medianNanos, result.minNanos, result.meanNanos, result.allocatedBytes));
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    //names of the results whose median is more than tolerance slower than in baselineJson
+    List<String> compare(String baselineJson, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+        for (Result result : results) {
+            Matcher matcher = Pattern.compile("\"name\": \"" + Pattern.quote(escape(result.name))
+                    + "\"[^}]*\"median_ns_per_op\": ([0-9.]+)").matcher(baselineJson);
+            if (!matcher.find()) {
+                continue;
+            }
+            double baseline = Double.parseDouble(matcher.group(1));
+            if (result.medianNanos > baseline * (1 + tolerance)) {
+                regressions.add(String.format(Locale.US, "%s %.0fns/op was %.0fns/op", result.name,
+                        result.medianNanos, baseline));
+            }
+        }
+        return regressions;
+    }
+
+    private void consume(Object value) {
+        if (value != null) {
+            sink += value.hashCode();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /*
+    * Bytes allocated so far by this thread, through com.sun.management.ThreadMXBean. Looked
+    * up reflectively because Android has no java.lang.management to compile against.
+    * */
+    private static final class Allocations {
+        private static Object bean;
+        private static Method allocatedBytes;
+        private static boolean unavailable;
+
+        static synchronized long current() {
+            if (unavailable) {
+                return -1;
+            }
+            try {
+                if (allocatedBytes == null) {
+                    bean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+                    allocatedBytes = Class.forName("com.sun.management.ThreadMXBean")
+                            .getMethod("getThreadAllocatedBytes", long.class);
+                }
+                return (Long) allocatedBytes.invoke(bean, Thread.currentThread().getId());
+            } catch (Exception e) {
+                //not something this VM can tell us
+                unavailable = true;
+                return -1;
+            }
+        }
+    }
+}
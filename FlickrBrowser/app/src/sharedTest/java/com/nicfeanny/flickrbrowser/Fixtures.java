@@ -0,0 +1,48 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * The recorded feeds in src/test/resources, for the JVM tests and (through the androidTest
+ * resources) the on-device benchmarks.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static byte[] read(String name) throws Exception {
+        InputStream stream = Fixtures.class.getClassLoader().getResourceAsStream(name);
+        assertNotNull("missing fixture " + name, stream);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        stream.close();
+        return out.toByteArray();
+    }
+
+    //builds a bigger feed by repeating the recorded "items" array contents
+    static byte[] repeatItems(byte[] feed, int copies) throws Exception {
+        String json = new String(feed, "UTF-8");
+        int open = json.indexOf('[', json.indexOf("\"items\""));
+        int close = json.lastIndexOf(']');
+        String items = json.substring(open + 1, close).trim();
+
+        StringBuilder builder = new StringBuilder(json.length() * copies);
+        builder.append(json, 0, open + 1);
+        for (int i = 0; i < copies; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(items);
+        }
+        builder.append(json, close, json.length());
+        return builder.toString().getBytes("UTF-8");
+    }
+}
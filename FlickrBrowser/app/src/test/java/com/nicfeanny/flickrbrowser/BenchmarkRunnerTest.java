@@ -0,0 +1,65 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * JSON output and baseline regression checks of {@link BenchmarkRunner}.
+ */
+public class BenchmarkRunnerTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static BenchmarkRunner runWithSleep(final long sleepMillis) throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner("Sleep");
+        runner.measure("sleep", 1, 3, 1, new BenchmarkRunner.Body() {
+            @Override
+            public Object run() throws Exception {
+                Thread.sleep(sleepMillis);
+                return null;
+            }
+        });
+        return runner;
+    }
+
+    @Test
+    public void results_areWrittenAsJson() throws Exception {
+        File output = folder.newFolder("out");
+        BenchmarkRunner runner = runWithSleep(1);
+        runner.finish(output, null, BenchmarkRunner.DEFAULT_TOLERANCE);
+
+        String json = runner.toJson();
+        assertTrue(new File(output, "Sleep.json").isFile());
+        assertTrue(json.contains("\"suite\": \"Sleep\""));
+        assertTrue(json.contains("\"name\": \"sleep\""));
+        assertTrue(runner.getResults().get(0).medianNanos >= 1000000);
+    }
+
+    @Test
+    public void slowerThanBaseline_fails() throws Exception {
+        File baseline = folder.newFolder("baseline");
+        runWithSleep(1).finish(baseline, null, BenchmarkRunner.DEFAULT_TOLERANCE);
+
+        //the same again is within tolerance...
+        assertTrue(runWithSleep(1).compare(runWithSleep(1).toJson(), 1.0).isEmpty());
+
+        //...ten times slower isn't
+        try {
+            runWithSleep(10).finish(null, baseline, BenchmarkRunner.DEFAULT_TOLERANCE);
+            fail("expected a regression");
+        } catch (AssertionError e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("sleep"));
+        }
+    }
+
+    @Test
+    public void missingBaseline_isNotAFailure() throws Exception {
+        runWithSleep(1).finish(null, folder.newFolder("empty"), BenchmarkRunner.DEFAULT_TOLERANCE);
+    }
+}
@@ -0,0 +1,88 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * State changes of {@link CircuitBreaker} with a clock the test moves along.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class CircuitBreakerTest {
+    private static final long OPEN_MILLIS = 1000;
+
+    private static class TestBreaker extends CircuitBreaker {
+        long time;
+
+        TestBreaker() {
+            super("test", 3, OPEN_MILLIS);
+        }
+
+        @Override
+        long now() {
+            return time;
+        }
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        TestBreaker breaker = new TestBreaker();
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void halfOpen_letsOneTrialThrough() {
+        TestBreaker breaker = new TestBreaker();
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure();
+        }
+        breaker.time += OPEN_MILLIS;
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+
+        //the trial failing opens it again for a full period
+        breaker.onFailure();
+        assertFalse(breaker.allowRequest());
+        breaker.time += OPEN_MILLIS - 1;
+        assertFalse(breaker.allowRequest());
+        breaker.time += 1;
+
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void record_onlyCountsTheHostsHealth() {
+        TestBreaker breaker = new TestBreaker();
+        for (int i = 0; i < 10; i++) {
+            //the host answered, a 404 isn't it being unhealthy
+            breaker.record(new DownloadResult(DownloadResult.Failure.HTTP_CLIENT_ERROR, 404, 5, 1));
+            breaker.record(new DownloadResult(DownloadResult.Failure.INVALID_URL, -1, 0, 1));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        for (int i = 0; i < 3; i++) {
+            breaker.record(new DownloadResult(DownloadResult.Failure.TIMEOUT, -1, 20000, 1));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
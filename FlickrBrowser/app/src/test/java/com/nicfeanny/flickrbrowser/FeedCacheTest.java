@@ -0,0 +1,227 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * TTL, ETag / Last-Modified revalidation and request coalescing in {@link FeedCache}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class FeedCacheTest {
+    private static final long TTL = 60 * 1000;
+
+    private LoopbackHttpServer server;
+    private byte[] feed;
+    private volatile String eTag = "\"v1\"";
+    private volatile String lastModified;
+    private volatile CountDownLatch hold;
+    //answer with this HTTP error instead, if not 0
+    private volatile int failWith;
+    private long clock = 1000;
+
+    private final FeedCache cache = new FeedCache(TTL, 4) {
+        @Override
+        long now() {
+            return clock;
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        feed = FeedParserBenchmark.readFixture("feeds/feed_android_nougat.json");
+        server = new LoopbackHttpServer(new LoopbackHttpServer.Handler() {
+            @Override
+            public LoopbackHttpServer.Response handle(String path, Map<String, String> requestHeaders) {
+                if (hold != null) {
+                    try {
+                        hold.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                if (failWith != 0) {
+                    LoopbackHttpServer.Response error = new LoopbackHttpServer.Response();
+                    error.code = failWith;
+                    return error;
+                }
+                boolean eTagMatches = eTag != null && eTag.equals(requestHeaders.get("if-none-match"));
+                boolean notModifiedSince = lastModified != null && lastModified.equals(requestHeaders.get("if-modified-since"));
+                if (eTagMatches || notModifiedSince) {
+                    LoopbackHttpServer.Response notModified = new LoopbackHttpServer.Response();
+                    notModified.code = 304;
+                    return notModified;
+                }
+                LoopbackHttpServer.Response response = LoopbackHttpServer.Response.ok(feed);
+                if (eTag != null) {
+                    response.header("ETag", eTag);
+                }
+                if (lastModified != null) {
+                    response.header("Last-Modified", lastModified);
+                }
+                return response;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void freshEntry_skipsNetworkAndParse() {
+        FeedResult first = cache.get(request());
+        FeedResult second = cache.get(request());
+
+        assertEquals(DownloadStatus.OK, second.getStatus());
+        assertEquals(20, second.getPhotos().size());
+        assertSame(first.getPhotos().get(0), second.getPhotos().get(0));
+        assertEquals(1, server.requests());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void staleEntry_revalidatedWithETag() {
+        FeedResult first = cache.get(request());
+        clock += TTL + 1;
+
+        FeedResult second = cache.get(request());
+
+        assertEquals(2, server.requests());
+        assertEquals(1, cache.getRevalidations());
+        assertSame(first.getPhotos().get(0), second.getPhotos().get(0));
+
+        //the 304 makes it fresh again
+        cache.get(request());
+        assertEquals(2, server.requests());
+    }
+
+    @Test
+    public void staleEntry_revalidatedWithLastModified() {
+        eTag = null;
+        lastModified = "Sat, 13 Oct 2018 22:14:51 GMT";
+        cache.get(request());
+        clock += TTL + 1;
+
+        cache.get(request());
+
+        assertEquals(1, cache.getRevalidations());
+    }
+
+    @Test
+    public void failedRevalidation_returnsStalePhotos() {
+        FeedResult first = cache.get(request());
+        clock += TTL + 1;
+        failWith = 404;
+
+        FeedResult second = cache.get(request());
+
+        assertEquals(DownloadStatus.FAILED_OR_EMPTY, second.getStatus());
+        assertTrue(second.isStale());
+        assertEquals(20, second.getPhotos().size());
+        assertSame(first.getPhotos().get(0), second.getPhotos().get(0));
+    }
+
+    @Test
+    public void entryEvictedDuringRevalidation_isPutBack() throws Exception {
+        cache.get(request());
+        clock += TTL + 1;
+        hold = new CountDownLatch(1);
+        Thread revalidate = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                cache.get(request());
+            }
+        });
+        revalidate.start();
+        while (server.requests() < 2) {
+            Thread.sleep(10);
+        }
+        cache.clear();
+        hold.countDown();
+        revalidate.join(5000);
+        hold = null;
+
+        assertEquals(1, cache.getRevalidations());
+        assertEquals(1, cache.size());
+        //fresh again, so no third request
+        cache.get(request());
+        assertEquals(2, server.requests());
+    }
+
+    @Test
+    public void parsedPhotos_goToTheListenerAsTheyAreParsed() {
+        TagIndex index = new TagIndex();
+        FeedCache indexing = new FeedCache(new HttpFeedSource(), TTL, 4, index);
+
+        FeedResult result = indexing.get(request());
+
+        assertEquals(20, index.size());
+        assertEquals(result.getPhotos().get(0), index.get(0));
+    }
+
+    @Test
+    public void changedFeed_isDownloadedAgain() {
+        FeedResult first = cache.get(request());
+        clock += TTL + 1;
+        eTag = "\"v2\"";
+
+        FeedResult second = cache.get(request());
+
+        assertEquals(0, cache.getRevalidations());
+        assertEquals(2, cache.getMisses());
+        assertNotSame(first.getPhotos().get(0), second.getPhotos().get(0));
+    }
+
+    @Test
+    public void concurrentIdenticalRequests_shareOneFetch() throws Exception {
+        hold = new CountDownLatch(1);
+        final List<FeedResult> results = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    FeedResult result = cache.get(request());
+                    synchronized (results) {
+                        results.add(result);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        //give every thread the chance to join the first one's fetch
+        while (cache.getCoalesced() < 3) {
+            Thread.sleep(10);
+        }
+        hold.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertEquals(4, results.size());
+        assertEquals(1, server.requests());
+        for (FeedResult result : results) {
+            assertEquals(20, result.getPhotos().size());
+        }
+    }
+
+    private FeedRequest request() {
+        return new FeedRequest(server.url("/feed"), "android, nougat", "en-us", true);
+    }
+}
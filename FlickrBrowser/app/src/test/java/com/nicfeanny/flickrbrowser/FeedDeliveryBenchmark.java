@@ -0,0 +1,65 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The main thread time of a feed load through {@link FetchScheduler}, now that it is only
+ * the delivery, against what the old path's main thread parse (onDownloadComplete ->
+ * parseJSONData) of the same feed cost.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class FeedDeliveryBenchmark {
+    private static final int PHOTOS = 2000;
+    private static final int LOADS = 5;
+
+    @Test
+    public void mainThreadTimePerLoad_isOnlyTheDelivery() throws Exception {
+        byte[] feed = new SyntheticFeed(22).generate("android", 1, PHOTOS);
+        //nothing cached, every load downloads and parses again
+        FetchScheduler scheduler = new FetchScheduler(1, new FeedCache(LocalFeedSource.recorded(feed, 0, 0), 0, 1));
+        final List<FeedResult> delivered = new ArrayList<>();
+        FetchScheduler.FeedListener listener = new FetchScheduler.FeedListener() {
+            @Override
+            public void onFeedLoaded(FeedRequest request, FeedResult result) {
+                delivered.add(result);
+            }
+        };
+
+        PerfCounters.reset();
+        for (int i = 0; i < LOADS; i++) {
+            scheduler.fetch(new FeedRequest(FeedViewModel.FEED_URL, "android", "en-us", true),
+                    FetchScheduler.Priority.VISIBLE, "benchmark", listener);
+            long deadline = System.currentTimeMillis() + 10000;
+            while (delivered.size() <= i && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+                Robolectric.flushForegroundThreadScheduler();
+            }
+            assertEquals(PHOTOS, delivered.get(i).getPhotos().size());
+        }
+        assertEquals(LOADS, PerfCounters.get(PerfCounters.Counter.FEEDS_DELIVERED));
+        double mainMillis = PerfCounters.get(PerfCounters.Counter.MAIN_THREAD_NANOS) / 1e6 / LOADS;
+
+        String text = new String(feed, "UTF-8");
+        GetFlickrJSONData.parseJSONData(text);
+        long start = System.nanoTime();
+        for (int i = 0; i < LOADS; i++) {
+            GetFlickrJSONData.parseJSONData(text);
+        }
+        double oldMillis = (System.nanoTime() - start) / 1e6 / LOADS;
+
+        System.out.printf("main thread per %d photo feed load: %.3fms, was %.1fms parsing there%n",
+                PHOTOS, mainMillis, oldMillis);
+        System.out.println(PerfCounters.dump());
+        assertTrue(mainMillis + "ms", mainMillis < oldMillis / 10);
+    }
+}
@@ -0,0 +1,256 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Page appending, de-duplication and scroll driven prefetch in {@link FeedPager}, against a
+ * loopback server which serves a different set of photos for each page parameter.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class FeedPagerTest {
+    private static final int LAST_PAGE = 3;
+
+    private LoopbackHttpServer server;
+    private String fixture;
+    private final List<int[]> appended = new ArrayList<>();
+    private final List<String> servedPages = new ArrayList<>();
+    private int replaced;
+    //answer with this HTTP error instead, if not 0
+    private volatile int failWith;
+    private final List<DownloadStatus> failures = new ArrayList<>();
+
+    private final FeedPager.Listener listener = new FeedPager.Listener() {
+        @Override
+        public void onPhotosAppended(int positionStart, int itemCount) {
+            appended.add(new int[]{positionStart, itemCount});
+        }
+
+        @Override
+        public void onFeedReplaced() {
+            replaced++;
+        }
+
+        @Override
+        public void onPageFailed(FeedRequest request, DownloadStatus status) {
+            if (failWith == 0) {
+                fail("page failed " + request + " " + status);
+            }
+            failures.add(status);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        fixture = new String(FeedParserBenchmark.readFixture("feeds/feed_android_nougat.json"), "UTF-8");
+        server = new LoopbackHttpServer(new LoopbackHttpServer.Handler() {
+            @Override
+            public LoopbackHttpServer.Response handle(String path, Map<String, String> requestHeaders) {
+                int index = path.indexOf("page=");
+                int page = index == -1 ? 1 : Integer.parseInt(path.substring(index + 5));
+                synchronized (servedPages) {
+                    servedPages.add(String.valueOf(page));
+                }
+                if (failWith != 0) {
+                    LoopbackHttpServer.Response error = new LoopbackHttpServer.Response();
+                    error.code = failWith;
+                    return error;
+                }
+                try {
+                    return LoopbackHttpServer.Response.ok(page(page));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void firstPage_isLoadedOnStart() throws Exception {
+        FeedPager pager = pager();
+        pager.start();
+        await(pager);
+
+        assertEquals(20, pager.getPhotos().size());
+        assertEquals(1, appended.size());
+        assertArrayEquals(new int[]{0, 20}, appended.get(0));
+    }
+
+    @Test
+    public void scrollingNearTheEnd_appendsOnlyNewPhotos() throws Exception {
+        FeedPager pager = pager();
+        pager.start();
+        await(pager);
+        Photo first = pager.getPhotos().get(0);
+
+        pager.onViewportChanged(5);
+        assertFalse("not near the end yet", pager.isLoading());
+
+        pager.onViewportChanged(20 - FeedPager.PREFETCH_DISTANCE);
+        assertTrue(pager.isLoading());
+        await(pager);
+
+        //page 2 repeats half of page 1, only its other half is new
+        assertEquals(30, pager.getPhotos().size());
+        assertArrayEquals(new int[]{20, 10}, appended.get(1));
+        assertSame("the existing list is appended to, not replaced", first, pager.getPhotos().get(0));
+        assertEquals(2, pager.getPagesLoaded());
+    }
+
+    @Test
+    public void pageWithNothingNew_endsTheFeed() throws Exception {
+        FeedPager pager = pager();
+        pager.start();
+        await(pager);
+        while (!pager.isExhausted()) {
+            pager.onViewportChanged(pager.getPhotos().size() - 1);
+            await(pager);
+        }
+
+        //the page after the last one is fetched to find out there's nothing new
+        assertEquals(LAST_PAGE + 1, pager.getPagesLoaded());
+        int requests = server.requests();
+        pager.onViewportChanged(pager.getPhotos().size() - 1);
+        assertFalse(pager.isLoading());
+        assertEquals(requests, server.requests());
+    }
+
+    @Test
+    public void unpagedFeed_stopsAfterTheFirstPage() throws Exception {
+        FeedRequest first = new FeedRequest(server.url("/feed"), "android, nougat", "en-us", true);
+        FeedPager pager = new FeedPager(new FetchScheduler(1, new FeedCache(0, 1)), first, null, false, listener);
+        pager.start();
+        await(pager);
+
+        assertTrue(pager.isExhausted());
+        pager.onViewportChanged(pager.getPhotos().size() - 1);
+        assertFalse(pager.isLoading());
+        assertEquals(1, server.requests());
+
+        //and again after a refresh
+        pager.refresh();
+        await(pager);
+        assertTrue(pager.isExhausted());
+        pager.onViewportChanged(pager.getPhotos().size() - 1);
+        assertEquals(2, server.requests());
+    }
+
+    @Test
+    public void repeatedScrollEvents_requestEachPageOnce() throws Exception {
+        FeedPager pager = pager();
+        pager.start();
+        await(pager);
+
+        for (int i = 0; i < 10; i++) {
+            pager.onViewportChanged(15);
+        }
+        pager.onViewportChanged(19);
+        await(pager);
+
+        assertEquals(2, appended.size());
+        synchronized (servedPages) {
+            assertEquals(2, servedPages.size());
+        }
+    }
+
+    @Test
+    public void refresh_replacesTheListWithTheFirstPage() throws Exception {
+        FeedPager pager = pager();
+        pager.start();
+        await(pager);
+        pager.onViewportChanged(19);
+        await(pager);
+        assertEquals(30, pager.getPhotos().size());
+
+        pager.refresh();
+        assertEquals("the old list stays until the new one is here", 30, pager.getPhotos().size());
+        await(pager);
+
+        assertEquals(1, replaced);
+        assertEquals(20, pager.getPhotos().size());
+        assertEquals(1, pager.getPagesLoaded());
+        //and paging carries on from there
+        pager.onViewportChanged(19);
+        await(pager);
+        assertEquals(30, pager.getPhotos().size());
+    }
+
+    @Test
+    public void failedRefresh_showsTheStaleFeedAndReportsIt() throws Exception {
+        //no TTL, so the refresh is a revalidation of what the cache has
+        FeedCache cache = new FeedCache(0, 4);
+        FeedRequest first = new FeedRequest(server.url("/feed"), "android, nougat", "en-us", true);
+        FeedPager pager = new FeedPager(new FetchScheduler(1, cache), first, null, listener);
+        pager.start();
+        await(pager);
+        assertEquals(20, pager.getPhotos().size());
+
+        failWith = 404;
+        pager.refresh();
+        await(pager);
+
+        assertEquals(1, replaced);
+        assertEquals(20, pager.getPhotos().size());
+        assertEquals(1, failures.size());
+        assertEquals(DownloadStatus.FAILED_OR_EMPTY, failures.get(0));
+
+        //the next page is still there to be had once the network is back
+        failWith = 0;
+        pager.onViewportChanged(19);
+        await(pager);
+        assertEquals(30, pager.getPhotos().size());
+    }
+
+    private FeedPager pager() {
+        FeedRequest first = new FeedRequest(server.url("/feed"), "android, nougat", "en-us", true);
+        return new FeedPager(new FetchScheduler(1, new FeedCache(0, 1)), first, null, listener);
+    }
+
+    /*
+    * Page 1 is the recorded feed. Page n renames the second half of its photos, so every page
+    * shares ten photos with the page before. Past LAST_PAGE the feed just repeats itself.
+    * */
+    private byte[] page(int page) throws Exception {
+        page = Math.min(page, LAST_PAGE);
+        if (page == 1) {
+            return fixture.getBytes("UTF-8");
+        }
+        StringBuilder feed = new StringBuilder(fixture);
+        int from = 0;
+        for (int item = 0; item < 20; item++) {
+            //the media url, not the copy of it in the description's html
+            int index = feed.indexOf("_m.jpg", feed.indexOf("\"m\":", from));
+            if (item >= 10) {
+                feed.insert(index, "p" + page);
+            }
+            from = index + 1;
+        }
+        return feed.toString().getBytes("UTF-8");
+    }
+
+    private static void await(FeedPager pager) throws InterruptedException {
+        //the page arrives through the scheduler's post to the main thread
+        for (int i = 0; i < 500 && pager.isLoading(); i++) {
+            Thread.sleep(10);
+            Robolectric.flushForegroundThreadScheduler();
+        }
+        assertFalse("page did not arrive", pager.isLoading());
+    }
+}
@@ -0,0 +1,123 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLog;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the streaming {@link FlickrFeedParser} with the original org.json path
+ * (readLine into a StringBuilder, then a JSONObject tree) on a recorded feed and on
+ * feeds made by repeating its items. Reports allocated bytes and time per parse.
+ *
+ * Robolectric supplies the real android.util.JsonReader and org.json on the host JVM.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class FeedParserBenchmark {
+    private static final String FIXTURE = "feeds/feed_android_nougat.json";
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 20;
+
+    private static byte[] recordedFeed;
+
+    @BeforeClass
+    public static void loadFixture() throws Exception {
+        recordedFeed = readFixture(FIXTURE);
+    }
+
+    @Test
+    public void streamingParser_matchesJSONObjectParser() throws Exception {
+        List<Photo> streamed = new FlickrFeedParser().parse(new ByteArrayInputStream(recordedFeed));
+        List<Photo> dom = GetFlickrJSONData.parseJSONData(new String(recordedFeed, "UTF-8"));
+
+        assertEquals(dom.size(), streamed.size());
+        for (int i = 0; i < dom.size(); i++) {
+            assertEquals(dom.get(i).toString(), streamed.get(i).toString());
+        }
+    }
+
+    @Test
+    public void streamingParser_allocatesLessThanJSONObjectParser() throws Exception {
+        long[] streamingHuge = null;
+        long[] domHuge = null;
+
+        for (int copies : new int[]{1, 25, 250}) {
+            byte[] feed = copies == 1 ? recordedFeed : repeatItems(recordedFeed, copies);
+
+            long[] dom = measure(feed, false);
+            long[] streaming = measure(feed, true);
+
+            System.out.println(String.format("feed %7d bytes: org.json %8d us %10d bytes | streaming %8d us %10d bytes",
+                    feed.length, dom[0] / 1000, dom[1], streaming[0] / 1000, streaming[1]));
+
+            domHuge = dom;
+            streamingHuge = streaming;
+        }
+
+        assertTrue("streaming parse should allocate less than String + JSONObject",
+                streamingHuge[1] < domHuge[1]);
+    }
+
+    //returns {average ns per parse, average bytes allocated per parse}
+    private static long[] measure(byte[] feed, boolean streaming) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            parseOnce(feed, streaming);
+        }
+
+        long totalNanos = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            //the org.json path logs every item, don't let the shadow log grow across iterations
+            ShadowLog.reset();
+            long bytesBefore = allocatedBytes();
+            long start = System.nanoTime();
+            int count = parseOnce(feed, streaming);
+            totalNanos += System.nanoTime() - start;
+            totalBytes += allocatedBytes() - bytesBefore;
+            assertTrue(count > 0);
+        }
+        return new long[]{totalNanos / ITERATIONS, totalBytes / ITERATIONS};
+    }
+
+    private static int parseOnce(byte[] feed, boolean streaming) throws Exception {
+        if (streaming) {
+            return new FlickrFeedParser().parse(new ByteArrayInputStream(feed)).size();
+        }
+
+        //what GetRawData + onDownloadComplete used to do
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(feed), "UTF-8"));
+        StringBuilder result = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            result.append(line).append("\n");
+        }
+        return GetFlickrJSONData.parseJSONData(result.toString()).size();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    //the helpers themselves are in sharedTest so the on-device benchmarks can use them too
+    static byte[] readFixture(String name) throws Exception {
+        return Fixtures.read(name);
+    }
+
+    static byte[] repeatItems(byte[] feed, int copies) throws Exception {
+        return Fixtures.repeatItems(feed, copies);
+    }
+}
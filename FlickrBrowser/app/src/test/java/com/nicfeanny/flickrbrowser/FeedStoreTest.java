@@ -0,0 +1,223 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips and trimming in {@link FeedStore}, and how much sooner {@link FeedPager} has
+ * something to show on a cold start when the feed was stored last time.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class FeedStoreTest {
+    //a modest mobile round trip, the loopback server is otherwise instant
+    private static final long NETWORK_DELAY_MILLIS = 300;
+
+    private FeedStore store;
+    private List<Photo> feed;
+    private byte[] feedBytes;
+    private LoopbackHttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new FeedStore(RuntimeEnvironment.application, null, 2);
+        feedBytes = FeedParserBenchmark.readFixture("feeds/feed_android_nougat.json");
+        feed = new FlickrFeedParser().parse(new ByteArrayInputStream(feedBytes));
+        server = new LoopbackHttpServer(new LoopbackHttpServer.Handler() {
+            @Override
+            public LoopbackHttpServer.Response handle(String path, Map<String, String> requestHeaders) {
+                try {
+                    Thread.sleep(NETWORK_DELAY_MILLIS);
+                } catch (InterruptedException ignored) {
+                }
+                return LoopbackHttpServer.Response.ok(feedBytes);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        store.close();
+        Placeholders.getShared().clear();
+    }
+
+    @Test
+    public void savedFeed_loadsBackTheSamePhotos() {
+        store.save("feed-a", feed);
+        List<Photo> loaded = store.load("feed-a");
+
+        assertEquals(feed.size(), loaded.size());
+        for (int i = 0; i < feed.size(); i++) {
+            assertEquals(feed.get(i).toString(), loaded.get(i).toString());
+        }
+        assertTrue(store.load("unknown").isEmpty());
+    }
+
+    @Test
+    public void explicitLink_survivesTheRoundTrip() {
+        Photo odd = new Photo("t", "a", "id", "https://example.com/big.jpg", "x y", "https://example.com/small_m.jpg");
+        store.save("feed-a", Collections.singletonList(odd));
+
+        assertEquals("https://example.com/big.jpg", store.load("feed-a").get(0).getLink());
+    }
+
+    @Test
+    public void savingAgain_replacesTheFeed() {
+        store.save("feed-a", feed);
+        store.save("feed-a", feed.subList(0, 5));
+
+        assertEquals(5, store.load("feed-a").size());
+        assertEquals(1, store.getFeedCount());
+    }
+
+    @Test
+    public void onlyTheNewestFeedsAreKept() {
+        store.save("feed-a", feed);
+        store.save("feed-b", feed);
+        store.save("feed-c", feed);
+
+        assertEquals(2, store.getFeedCount());
+        assertTrue(store.load("feed-a").isEmpty());
+        assertEquals(feed.size(), store.load("feed-c").size());
+    }
+
+    @Test
+    public void placeholders_areStoredWithTheirPhotos() {
+        Placeholders.getShared().put(feed.get(3).getImage(), new Placeholder(0xff336699, 1.5f));
+        store.save("feed-a", feed);
+        Placeholders.getShared().clear();
+
+        store.load("feed-a");
+
+        Placeholder loaded = Placeholders.getShared().get(feed.get(3).getImage());
+        assertEquals(0xff336699, loaded.getColor());
+        assertEquals(1.5f, loaded.getAspectRatio(), 0.001f);
+        assertEquals(1, Placeholders.getShared().size());
+    }
+
+    @Test
+    public void placeholdersWorkedOutLater_fillInTheStoredPhotos() {
+        store.save("feed-a", feed);
+        Placeholders.getShared().put(feed.get(0).getImage(), new Placeholder(0xffcc0000, 0.75f));
+        store.savePlaceholders();
+        Placeholders.getShared().clear();
+
+        store.load("feed-a");
+
+        assertEquals(0xffcc0000, Placeholders.getShared().get(feed.get(0).getImage()).getColor());
+        assertTrue(Placeholders.getShared().takeUnsaved().isEmpty());
+    }
+
+    @Test
+    public void version1Database_isUpgradedWithItsPhotos() {
+        String name = "feeds-v1.db";
+        RuntimeEnvironment.application.deleteDatabase(name);
+        SQLiteDatabase v1 = RuntimeEnvironment.application.openOrCreateDatabase(name, 0, null);
+        v1.execSQL("CREATE TABLE feeds (uri TEXT PRIMARY KEY NOT NULL, saved_at INTEGER NOT NULL)");
+        v1.execSQL("CREATE TABLE photos (feed_uri TEXT NOT NULL, position INTEGER NOT NULL, title TEXT NOT NULL, "
+                + "author TEXT NOT NULL, author_id TEXT NOT NULL, tags TEXT NOT NULL, image TEXT NOT NULL, "
+                + "link TEXT, PRIMARY KEY (feed_uri, position))");
+        v1.execSQL("INSERT INTO feeds VALUES ('feed-a', 1)");
+        v1.execSQL("INSERT INTO photos VALUES ('feed-a', 0, 't', 'a', 'id', 'x y', "
+                + "'https://farm2.staticflickr.com/1919/1_a_m.jpg', NULL)");
+        v1.setVersion(1);
+        v1.close();
+
+        FeedStore upgraded = new FeedStore(RuntimeEnvironment.application, name, 2);
+        try {
+            List<Photo> photos = upgraded.load("feed-a");
+            assertEquals(1, photos.size());
+            assertEquals("x y", photos.get(0).getTags());
+            assertNull(Placeholders.getShared().get(photos.get(0).getImage()));
+
+            //and the new columns are there to be written
+            Placeholders.getShared().put(photos.get(0).getImage(), new Placeholder(0xff00ff00, 1f));
+            upgraded.savePlaceholders();
+            Placeholders.getShared().clear();
+            upgraded.load("feed-a");
+            assertEquals(0xff00ff00, Placeholders.getShared().get(photos.get(0).getImage()).getColor());
+            assertEquals(FeedStore.DATABASE_VERSION, upgraded.getReadableDatabase().getVersion());
+        } finally {
+            upgraded.close();
+            RuntimeEnvironment.application.deleteDatabase(name);
+        }
+    }
+
+    @Test
+    public void coldStart_showsStoredFeedBeforeTheNetworkAnswers() throws Exception {
+        FeedRequest request = new FeedRequest(server.url("/feed"), "android, nougat", "en-us", true);
+
+        long withoutStore = timeToFirstContent(request, null);
+        store.save(request.getUri(), feed);
+        long withStore = timeToFirstContent(request, store);
+
+        assertTrue("stored feed " + withStore + "ms, network " + withoutStore + "ms", withStore < withoutStore);
+        assertTrue(withStore < NETWORK_DELAY_MILLIS);
+    }
+
+    @Test
+    public void coldStart_storesTheFreshFeedForNextTime() throws Exception {
+        FeedRequest request = new FeedRequest(server.url("/feed"), "android, nougat", "en-us", true);
+        timeToFirstContent(request, store);
+
+        //the save is queued on the store's thread after the first page arrives
+        long deadline = System.currentTimeMillis() + 5000;
+        while (store.load(request.getUri()).isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(feed.size(), store.load(request.getUri()).size());
+    }
+
+    //milliseconds from start() until the listener has photos to show
+    private static long timeToFirstContent(FeedRequest request, FeedStore store) throws Exception {
+        final boolean[] shown = new boolean[1];
+        FeedPager pager = new FeedPager(new FetchScheduler(1, new FeedCache(0, 1)), request, store,
+                new FeedPager.Listener() {
+                    @Override
+                    public void onPhotosAppended(int positionStart, int itemCount) {
+                        shown[0] = true;
+                    }
+
+                    @Override
+                    public void onFeedReplaced() {
+                        shown[0] = true;
+                    }
+
+                    @Override
+                    public void onPageFailed(FeedRequest request, DownloadStatus status) {
+                        fail("page failed " + status);
+                    }
+                });
+
+        long start = System.nanoTime();
+        pager.start();
+        while (!shown[0] && System.nanoTime() - start < 10000000000L) {
+            Thread.sleep(1);
+            Robolectric.flushForegroundThreadScheduler();
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+        assertTrue("nothing was shown", shown[0]);
+        //let the network page land too so it doesn't leak into the next measurement
+        while (pager.isLoading() && System.nanoTime() - start < 10000000000L) {
+            Thread.sleep(5);
+            Robolectric.flushForegroundThreadScheduler();
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,127 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link FeedSync} against the loopback server: only feeds with new photos are written and
+ * only the new photos' thumbnails are downloaded.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class FeedSyncTest {
+    private static final int THUMBNAIL_SIZE = 240;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LoopbackHttpServer server;
+    private FeedStore store;
+    private ImageLoader imageLoader;
+    private FeedSync sync;
+    private List<Photo> feed;
+    private final List<String> imageRequests = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() throws Exception {
+        final byte[][] feedBytes = new byte[1][];
+        server = new LoopbackHttpServer(new LoopbackHttpServer.Handler() {
+            @Override
+            public LoopbackHttpServer.Response handle(String path, Map<String, String> requestHeaders) {
+                if (path.startsWith("/feed")) {
+                    return LoopbackHttpServer.Response.ok(feedBytes[0]);
+                }
+                imageRequests.add(path);
+                return LoopbackHttpServer.Response.ok(new byte[8 * 1024]);
+            }
+        });
+        //the fixture with its images served by the loopback server too
+        String json = new String(Fixtures.read("feeds/feed_android_nougat.json"), "UTF-8")
+                .replace("https:\\/\\/farm", server.url("").replace("/", "\\/") + "\\/farm");
+        feedBytes[0] = json.getBytes("UTF-8");
+        feed = new FlickrFeedParser().parse(new ByteArrayInputStream(feedBytes[0]));
+
+        store = new FeedStore(RuntimeEnvironment.application, null, FeedStore.DEFAULT_MAX_FEEDS);
+        imageLoader = new ImageLoader(1024 * 1024, folder.newFolder("images"), 10 * 1024 * 1024);
+        //no TTL, every sync goes to the server
+        sync = new FeedSync(store, new FeedCache(0, FeedCache.DEFAULT_MAX_ENTRIES), imageLoader, THUMBNAIL_SIZE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        store.close();
+    }
+
+    @Test
+    public void newPhotos_areTheOnesWithLinksNotStored() {
+        List<Photo> fresh = FeedSync.newPhotos(feed.subList(0, 15), feed);
+
+        assertEquals(feed.subList(15, 20), fresh);
+        assertTrue(FeedSync.newPhotos(feed, feed.subList(3, 8)).isEmpty());
+        //a photo the feed repeats is only new once
+        assertEquals(1, FeedSync.newPhotos(Collections.<Photo>emptyList(), Arrays.asList(feed.get(0), feed.get(0))).size());
+    }
+
+    @Test
+    public void sync_storesTheFeedAndWarmsOnlyTheNewThumbnails() {
+        String uri = server.url("/feed");
+        store.save(uri, feed.subList(0, 15));
+
+        List<Photo> fresh = sync.sync(uri);
+
+        assertEquals(5, fresh.size());
+        assertEquals(20, store.load(uri).size());
+        assertEquals(5, imageRequests.size());
+        for (Photo photo : fresh) {
+            String url = imageLoader.urlFor(photo, THUMBNAIL_SIZE, THUMBNAIL_SIZE, true);
+            assertTrue(url + " was downloaded", imageRequests.contains(url.substring(server.url("").length())));
+        }
+    }
+
+    @Test
+    public void syncWithNothingNew_downloadsNoImages() {
+        String uri = server.url("/feed");
+        store.save(uri, feed);
+
+        assertTrue(sync.sync(uri).isEmpty());
+        assertTrue(imageRequests.isEmpty());
+    }
+
+    @Test
+    public void sync_keepsTheOrderTheFeedsWereLastShownIn() {
+        String synced = server.url("/feed");
+        store.save(synced, feed.subList(0, 10));
+        store.save("shown-later", feed);
+
+        sync.sync(synced);
+
+        assertEquals(Arrays.asList("shown-later", synced), store.getFeedUris());
+    }
+
+    @Test
+    public void failedFetch_leavesTheStoredFeedAlone() throws Exception {
+        String uri = server.url("/feed");
+        store.save(uri, feed.subList(0, 10));
+        server.close();
+
+        assertNull(sync.sync(uri));
+        assertEquals(10, store.load(uri).size());
+    }
+}
@@ -0,0 +1,242 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.arch.lifecycle.Lifecycle;
+import android.arch.lifecycle.LifecycleOwner;
+import android.arch.lifecycle.LifecycleRegistry;
+import android.arch.lifecycle.Observer;
+import android.arch.lifecycle.ViewModel;
+import android.arch.lifecycle.ViewModelProvider;
+import android.arch.lifecycle.ViewModelStore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Counts the feed downloads over repeated rotations with the feed owned by a retained
+ * {@link FeedViewModel}, against the old way of every Activity making its own FeedPager.
+ * A "screen" below stands in for one MainActivity instance: its own lifecycle, sharing the
+ * ViewModelStore which the support library keeps across a configuration change.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class FeedViewModelTest {
+    private static final int ROTATIONS = 5;
+    //long enough that a rotation can land while the feed is still downloading
+    private static final long NETWORK_DELAY_MILLIS = 100;
+
+    private LoopbackHttpServer server;
+    private FetchScheduler scheduler;
+    private FeedRequest firstPage;
+    private ViewModelStore viewModelStore;
+
+    @Before
+    public void setUp() throws Exception {
+        final byte[] feed = Fixtures.read("feeds/feed_android_nougat.json");
+        server = new LoopbackHttpServer(new LoopbackHttpServer.Handler() {
+            @Override
+            public LoopbackHttpServer.Response handle(String path, Map<String, String> requestHeaders) {
+                try {
+                    Thread.sleep(NETWORK_DELAY_MILLIS);
+                } catch (InterruptedException ignored) {
+                }
+                return LoopbackHttpServer.Response.ok(feed);
+            }
+        });
+        //no TTL, so the FeedCache can't hide a second fetch
+        scheduler = new FetchScheduler(1, new FeedCache(0, 1));
+        firstPage = new FeedRequest(server.url("/feed"), "android, nougat", "en-us", true);
+        viewModelStore = new ViewModelStore();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        viewModelStore.clear();
+        server.close();
+    }
+
+    @Test
+    public void rotations_fetchTheFeedOnce() throws Exception {
+        for (int i = 0; i <= ROTATIONS; i++) {
+            Screen screen = new Screen();
+            screen.viewModel.start();
+            screen.await();
+            assertEquals(20, screen.shown);
+            screen.destroy();
+        }
+
+        assertEquals(1, server.requests());
+    }
+
+    @Test
+    public void rotationDuringTheFetch_deliversItToTheNewScreen() throws Exception {
+        Screen first = new Screen();
+        first.viewModel.start();
+        first.destroy();
+        Screen second = new Screen();
+        second.viewModel.start();
+
+        second.await();
+
+        assertEquals(20, second.shown);
+        assertEquals("the destroyed screen isn't called", 0, first.updates);
+        assertEquals(1, server.requests());
+    }
+
+    @Test
+    public void activityOwnedPagers_fetchOnEveryRotation() throws Exception {
+        //how MainActivity used to do it: a FeedPager per Activity, cancelled in onPause
+        for (int i = 0; i <= ROTATIONS; i++) {
+            final int[] shown = new int[1];
+            FeedPager pager = new FeedPager(scheduler, firstPage, null, new FeedPager.Listener() {
+                @Override
+                public void onPhotosAppended(int positionStart, int itemCount) {
+                    shown[0] += itemCount;
+                }
+
+                @Override
+                public void onFeedReplaced() {
+                }
+
+                @Override
+                public void onPageFailed(FeedRequest request, DownloadStatus status) {
+                    fail("page failed " + status);
+                }
+            });
+            pager.start();
+            await(pager);
+            assertEquals(20, shown[0]);
+            pager.cancel();
+        }
+
+        assertEquals(ROTATIONS + 1, server.requests());
+    }
+
+    @Test
+    public void leavingForGood_cancelsTheFetch() throws Exception {
+        Screen screen = new Screen();
+        screen.viewModel.start();
+        screen.destroy();
+        viewModelStore.clear();
+
+        Thread.sleep(NETWORK_DELAY_MILLIS * 3);
+        Robolectric.flushForegroundThreadScheduler();
+
+        assertEquals(0, screen.updates);
+        assertTrue(screen.viewModel.getPhotos().isEmpty());
+    }
+
+    @Test
+    public void search_replacesTheFeedUntilCleared() throws Exception {
+        Screen screen = new Screen();
+        screen.viewModel.start();
+        screen.await();
+        int feedGeneration = screen.generation;
+
+        screen.viewModel.search("android, pixel");
+        //emptied straight away, as a new generation
+        assertEquals(0, screen.shown);
+        assertTrue(screen.generation > feedGeneration);
+        screen.await();
+        for (int i = 0; i < 500 && screen.viewModel.isSearching(); i++) {
+            Thread.sleep(10);
+            Robolectric.flushForegroundThreadScheduler();
+        }
+        //both tags get the same photos here, merged into one lot
+        assertEquals(20, screen.shown);
+        assertEquals(20, screen.viewModel.getPhotos().size());
+        assertEquals(3, server.requests());
+
+        int searchGeneration = screen.generation;
+        screen.viewModel.clearSearch();
+        assertNull(screen.viewModel.getQuery());
+        assertEquals(20, screen.shown);
+        assertTrue(screen.generation > searchGeneration);
+        assertEquals("the feed isn't fetched again", 3, server.requests());
+        screen.destroy();
+    }
+
+    @Test
+    public void updateAfterARefresh_isNotAContinuation() {
+        List<Photo> photos = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            photos.add(new Photo("t" + i, "a", "id", null, "tag", "https://example.com/" + i + "_m.jpg"));
+        }
+
+        FeedViewModel.Update page2 = new FeedViewModel.Update(photos, 0, 20, 10);
+        assertTrue(page2.follows(0, 20));
+        assertFalse("missed a page", page2.follows(0, 10));
+        assertFalse("a new screen shows everything", page2.follows(-1, 0));
+        assertEquals(30, page2.allPhotos().size());
+
+        FeedViewModel.Update refreshed = new FeedViewModel.Update(photos, 1, 20, 10);
+        assertFalse("showing 20 photos of the list before the refresh", refreshed.follows(0, 20));
+    }
+
+    private static void await(FeedPager pager) throws InterruptedException {
+        for (int i = 0; i < 500 && pager.isLoading(); i++) {
+            Thread.sleep(10);
+            Robolectric.flushForegroundThreadScheduler();
+        }
+        assertFalse("page did not arrive", pager.isLoading());
+    }
+
+    //one MainActivity: created, started and resumed, observing the shared FeedViewModel
+    private class Screen implements LifecycleOwner {
+        final LifecycleRegistry lifecycle = new LifecycleRegistry(this);
+        final FeedViewModel viewModel;
+        int updates;
+        int shown;
+        int generation;
+
+        Screen() {
+            viewModel = new ViewModelProvider(viewModelStore, new ViewModelProvider.Factory() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <T extends ViewModel> T create(Class<T> modelClass) {
+                    return (T) new FeedViewModel(RuntimeEnvironment.application, scheduler, firstPage, null);
+                }
+            }).get(FeedViewModel.class);
+            lifecycle.handleLifecycleEvent(Lifecycle.Event.ON_CREATE);
+            viewModel.getUpdates().observe(this, new Observer<FeedViewModel.Update>() {
+                @Override
+                public void onChanged(FeedViewModel.Update update) {
+                    updates++;
+                    shown = update.positionStart + update.itemCount;
+                    generation = update.generation;
+                }
+            });
+            lifecycle.handleLifecycleEvent(Lifecycle.Event.ON_START);
+            lifecycle.handleLifecycleEvent(Lifecycle.Event.ON_RESUME);
+        }
+
+        @Override
+        public Lifecycle getLifecycle() {
+            return lifecycle;
+        }
+
+        void await() throws InterruptedException {
+            for (int i = 0; i < 500 && shown == 0; i++) {
+                Thread.sleep(10);
+                Robolectric.flushForegroundThreadScheduler();
+            }
+        }
+
+        void destroy() {
+            lifecycle.handleLifecycleEvent(Lifecycle.Event.ON_PAUSE);
+            lifecycle.handleLifecycleEvent(Lifecycle.Event.ON_STOP);
+            lifecycle.handleLifecycleEvent(Lifecycle.Event.ON_DESTROY);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Deduplication, priority, lifecycle cancellation and main thread delivery in
+ * {@link FetchScheduler}, against a loopback server that can hold requests open.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class FetchSchedulerTest {
+    private final List<String> servedPaths = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch blockedRequestArrived = new CountDownLatch(1);
+
+    private LoopbackHttpServer server;
+    private byte[] feed;
+
+    @Before
+    public void setUp() throws Exception {
+        feed = FeedParserBenchmark.readFixture("feeds/feed_android_nougat.json");
+        server = new LoopbackHttpServer(new LoopbackHttpServer.Handler() {
+            @Override
+            public LoopbackHttpServer.Response handle(String path, Map<String, String> requestHeaders) {
+                String base = path.substring(0, path.indexOf('?'));
+                servedPaths.add(base);
+                if (base.startsWith("/block")) {
+                    blockedRequestArrived.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                return LoopbackHttpServer.Response.ok(feed);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        server.close();
+    }
+
+    @Test
+    public void identicalRequests_shareOneDownload() throws Exception {
+        FetchScheduler scheduler = new FetchScheduler(2, new FeedCache(0, 1));
+        FeedRequest request = request("/block");
+
+        Future<FeedResult> first = scheduler.fetch(request, FetchScheduler.Priority.VISIBLE, "a", null);
+        assertTrue(blockedRequestArrived.await(5, TimeUnit.SECONDS));
+        Future<FeedResult> second = scheduler.fetch(request, FetchScheduler.Priority.VISIBLE, "b", null);
+        release.countDown();
+
+        assertEquals(DownloadStatus.OK, first.get(5, TimeUnit.SECONDS).getStatus());
+        assertSame(first.get(), second.get());
+        assertEquals(20, first.get().getPhotos().size());
+        assertEquals(1, server.requests());
+    }
+
+    @Test
+    public void visibleWork_runsBeforeQueuedPrefetch() throws Exception {
+        FetchScheduler scheduler = new FetchScheduler(1, new FeedCache(0, 1));
+        scheduler.fetch(request("/block"), FetchScheduler.Priority.VISIBLE, "a", null);
+        assertTrue(blockedRequestArrived.await(5, TimeUnit.SECONDS));
+
+        Future<FeedResult> prefetch = scheduler.fetch(request("/prefetch"), FetchScheduler.Priority.PREFETCH, "a", null);
+        Future<FeedResult> visible = scheduler.fetch(request("/visible"), FetchScheduler.Priority.VISIBLE, "a", null);
+        release.countDown();
+
+        visible.get(5, TimeUnit.SECONDS);
+        prefetch.get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("/block", "/visible", "/prefetch"), servedPaths);
+    }
+
+    @Test
+    public void prefetchJoinedByVisibleRequest_isPromoted() throws Exception {
+        FetchScheduler scheduler = new FetchScheduler(1, new FeedCache(0, 1));
+        scheduler.fetch(request("/block"), FetchScheduler.Priority.VISIBLE, "a", null);
+        assertTrue(blockedRequestArrived.await(5, TimeUnit.SECONDS));
+
+        scheduler.fetch(request("/other"), FetchScheduler.Priority.PREFETCH, "a", null);
+        scheduler.fetch(request("/wanted"), FetchScheduler.Priority.PREFETCH, "a", null);
+        Future<FeedResult> wanted = scheduler.fetch(request("/wanted"), FetchScheduler.Priority.VISIBLE, "b", null);
+        release.countDown();
+
+        wanted.get(5, TimeUnit.SECONDS);
+        assertEquals("/wanted", servedPaths.get(1));
+    }
+
+    @Test
+    public void cancelAll_dropsQueuedFetchesNobodyWants() throws Exception {
+        FetchScheduler scheduler = new FetchScheduler(1, new FeedCache(0, 1));
+        scheduler.fetch(request("/block"), FetchScheduler.Priority.VISIBLE, "other", null);
+        assertTrue(blockedRequestArrived.await(5, TimeUnit.SECONDS));
+
+        Future<FeedResult> queued = scheduler.fetch(request("/queued"), FetchScheduler.Priority.VISIBLE, "activity", null);
+        scheduler.cancelAll("activity");
+        release.countDown();
+
+        assertTrue(queued.isCancelled());
+        //a later fetch behind it proves the queue has moved on
+        scheduler.fetch(request("/after"), FetchScheduler.Priority.VISIBLE, "other", null).get(5, TimeUnit.SECONDS);
+        assertFalse(servedPaths.contains("/queued"));
+    }
+
+    @Test
+    public void pauseResume_rejoinsRunningFetchInsteadOfRefetching() throws Exception {
+        FetchScheduler scheduler = new FetchScheduler(2, new FeedCache(0, 1));
+        final List<FeedResult> delivered = new ArrayList<>();
+        FetchScheduler.FeedListener listener = new FetchScheduler.FeedListener() {
+            @Override
+            public void onFeedLoaded(FeedRequest request, FeedResult result) {
+                delivered.add(result);
+            }
+        };
+
+        Object activity = new Object();
+        for (int i = 0; i < 5; i++) {
+            scheduler.fetch(request("/block"), FetchScheduler.Priority.VISIBLE, activity, listener);
+            assertTrue(blockedRequestArrived.await(5, TimeUnit.SECONDS));
+            scheduler.cancelAll(activity);
+        }
+        Future<FeedResult> last = scheduler.fetch(request("/block"), FetchScheduler.Priority.VISIBLE, activity, listener);
+        release.countDown();
+        last.get(5, TimeUnit.SECONDS);
+
+        //results are posted to the main thread
+        Thread.sleep(100);
+        Robolectric.flushForegroundThreadScheduler();
+
+        assertEquals(1, server.requests());
+        assertEquals(1, delivered.size());
+    }
+
+    @Test
+    public void failingLoad_stillCallsTheListener() throws Exception {
+        FeedCache throwing = new FeedCache(0, 1) {
+            @Override
+            FeedResult get(FeedRequest request) {
+                throw new IllegalStateException("parser blew up");
+            }
+        };
+        FetchScheduler scheduler = new FetchScheduler(1, throwing);
+        final List<FeedResult> delivered = new ArrayList<>();
+        FetchScheduler.FeedListener listener = new FetchScheduler.FeedListener() {
+            @Override
+            public void onFeedLoaded(FeedRequest request, FeedResult result) {
+                delivered.add(result);
+            }
+        };
+
+        Future<FeedResult> fetch = scheduler.fetch(request("/broken"), FetchScheduler.Priority.VISIBLE, "a", listener);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (delivered.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            Robolectric.flushForegroundThreadScheduler();
+        }
+
+        assertTrue(fetch.isDone());
+        assertEquals(1, delivered.size());
+        assertEquals(DownloadStatus.FAILED_OR_EMPTY, delivered.get(0).getStatus());
+        assertTrue(delivered.get(0).getPhotos().isEmpty());
+    }
+
+    @Test
+    public void feed_isParsedOffTheMainLooperAndDeliveredOnIt() throws Exception {
+        ThreadRecordingSource source = new ThreadRecordingSource(
+                LocalFeedSource.synthetic(new SyntheticFeed(21), 200, 0, 0));
+        FetchScheduler scheduler = new FetchScheduler(1, new FeedCache(source, 0, 1));
+        final List<FeedResult> delivered = new ArrayList<>();
+        final List<Boolean> deliveredOn = new ArrayList<>();
+        FetchScheduler.FeedListener listener = new FetchScheduler.FeedListener() {
+            @Override
+            public void onFeedLoaded(FeedRequest request, FeedResult result) {
+                delivered.add(result);
+                deliveredOn.add(Looper.myLooper() == Looper.getMainLooper());
+            }
+        };
+
+        PerfCounters.reset();
+        scheduler.fetch(request("/feed"), FetchScheduler.Priority.VISIBLE, "a", listener);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (delivered.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            Robolectric.flushForegroundThreadScheduler();
+        }
+
+        assertEquals(1, delivered.size());
+        assertEquals(Collections.singletonList(false), source.parsedOn);
+        assertEquals(Collections.singletonList(true), deliveredOn);
+        assertEquals(DownloadStatus.OK, delivered.get(0).getStatus());
+        assertEquals(200, delivered.get(0).getPhotos().size());
+        try {
+            delivered.get(0).getPhotos().clear();
+            fail("the delivered list can be modified");
+        } catch (UnsupportedOperationException expected) {
+        }
+        assertEquals(1, PerfCounters.get(PerfCounters.Counter.FEEDS_DELIVERED));
+    }
+
+    private FeedRequest request(String path) {
+        return new FeedRequest(server.url(path), "android, nougat", "en-us", true);
+    }
+
+    //notes, for each feed parsed, whether it was parsed on the main looper
+    static class ThreadRecordingSource implements FeedSource {
+        final List<Boolean> parsedOn = Collections.synchronizedList(new ArrayList<Boolean>());
+        private final FeedSource source;
+
+        ThreadRecordingSource(FeedSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public FeedResponse fetch(String uri, Map<String, String> requestHeaders, final GetRawData.OnStreamAvailable consumer) {
+            return source.fetch(uri, requestHeaders, new GetRawData.OnStreamAvailable() {
+                @Override
+                public void onStreamAvailable(InputStream stream) throws IOException {
+                    parsedOn.add(Looper.myLooper() == Looper.getMainLooper());
+                    consumer.onStreamAvailable(stream);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Jank, dropped frame and percentile arithmetic in {@link FrameStats}.
+ */
+public class FrameStatsTest {
+    private static final long VSYNC_60HZ = 16666667;
+
+    @Test
+    public void smoothFrames_areNotJanky() {
+        FrameStats stats = new FrameStats(VSYNC_60HZ);
+        for (int i = 0; i < 100; i++) {
+            stats.addFrame(VSYNC_60HZ);
+        }
+
+        assertEquals(100, stats.getFrameCount());
+        assertEquals(0, stats.getJankyFrameCount());
+        assertEquals(0, stats.getDroppedFrameCount());
+        assertEquals(16, stats.percentileMillis(99));
+    }
+
+    @Test
+    public void slowFrames_countMissedVsyncs() {
+        FrameStats stats = new FrameStats(VSYNC_60HZ);
+        for (int i = 0; i < 90; i++) {
+            stats.addFrame(VSYNC_60HZ);
+        }
+        for (int i = 0; i < 10; i++) {
+            //three vsyncs for one frame, two of them missed
+            stats.addFrame(3 * VSYNC_60HZ);
+        }
+
+        assertEquals(10, stats.getJankyFrameCount());
+        assertEquals(20, stats.getDroppedFrameCount());
+        assertEquals(10.0, stats.getJankPercent(), 0.001);
+        assertEquals(16, stats.percentileMillis(90));
+        assertEquals(50, stats.percentileMillis(95));
+        assertEquals(50, stats.getWorstFrameMillis());
+    }
+
+    @Test
+    public void slightlyLateFrame_isNotJanky() {
+        FrameStats stats = new FrameStats(VSYNC_60HZ);
+        //vsync timestamps wobble a little, that isn't a missed frame
+        stats.addFrame(VSYNC_60HZ + 2000000);
+
+        assertEquals(0, stats.getJankyFrameCount());
+    }
+
+    @Test
+    public void reset_clearsEverything() {
+        FrameStats stats = new FrameStats(VSYNC_60HZ);
+        stats.addFrame(5 * VSYNC_60HZ);
+        stats.reset();
+
+        assertEquals(0, stats.getFrameCount());
+        assertEquals(0, stats.percentileMillis(50));
+        assertTrue(stats.summary().startsWith("frames=0"));
+    }
+}
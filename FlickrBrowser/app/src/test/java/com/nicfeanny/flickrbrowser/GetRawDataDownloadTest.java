@@ -0,0 +1,167 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Byte level download path of {@link GetRawData} against a loopback HTTP stub:
+ * correctness for plain, gzip and chunked bodies and for bodies exactly as long as or longer
+ * than their Content-Length, plus allocation and throughput compared with the old
+ * readLine/StringBuilder loop.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class GetRawDataDownloadTest {
+    private static final int ITERATIONS = 20;
+
+    private LoopbackHttpServer server;
+    private byte[] feed;
+
+    @Before
+    public void setUp() throws Exception {
+        feed = FeedParserBenchmark.repeatItems(FeedParserBenchmark.readFixture("feeds/feed_android_nougat.json"), 50);
+        server = new LoopbackHttpServer(new LoopbackHttpServer.Handler() {
+            @Override
+            public LoopbackHttpServer.Response handle(String path, Map<String, String> requestHeaders) {
+                try {
+                    LoopbackHttpServer.Response response = LoopbackHttpServer.Response.ok(feed);
+                    if (path.startsWith("/gzip")) {
+                        assertEquals("gzip", requestHeaders.get("accept-encoding"));
+                        response.gzip();
+                    }
+                    if (path.startsWith("/chunked")) {
+                        response.chunked();
+                    }
+                    return response;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void download_plainBody() throws Exception {
+        assertBodyMatches(server.url("/plain"));
+    }
+
+    @Test
+    public void download_gzipBody() throws Exception {
+        assertBodyMatches(server.url("/gzip"));
+    }
+
+    @Test
+    public void download_chunkedBodyWithoutContentLength() throws Exception {
+        assertBodyMatches(server.url("/chunked"));
+    }
+
+    @Test
+    public void read_exactContentLength_fillsOneBuffer() throws Exception {
+        RawResponse body = RawResponse.read(200, new ByteArrayInputStream(feed), feed.length, new ByteBufferPool(4, 0));
+
+        assertEquals(feed.length, body.length());
+        //not doubled to find out there was nothing more
+        assertEquals(feed.length, body.array().length);
+        assertArrayEquals(feed, body.array());
+    }
+
+    @Test
+    public void read_bodyLongerThanContentLength_keepsEveryByte() throws Exception {
+        RawResponse body = RawResponse.read(200, new ByteArrayInputStream(feed), feed.length / 3, new ByteBufferPool(4, 0));
+
+        assertEquals(feed.length, body.length());
+        assertArrayEquals(feed, Arrays.copyOf(body.array(), body.length()));
+    }
+
+    @Test
+    public void downloadString_decodesBodyOnce() throws Exception {
+        String expected = new String(feed, "UTF-8");
+        assertEquals(expected, new GetRawData().downloadStringInSameThread(server.url("/plain")));
+    }
+
+    @Test
+    public void download_failureReportsStatus() throws Exception {
+        GetRawData getRawData = new GetRawData();
+        assertNull(getRawData.downloadInSameThread("http://127.0.0.1:1/nothing-listening"));
+        assertNull(getRawData.downloadStringInSameThread(null));
+    }
+
+    @Test
+    public void pooledDownload_allocatesLessThanReadLine() throws Exception {
+        final String url = server.url("/plain");
+
+        //warm up both paths and the pool
+        for (int i = 0; i < 5; i++) {
+            readLineDownload(url);
+            new GetRawData().downloadStringInSameThread(url);
+        }
+
+        long readLineBytes = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            readLineDownload(url);
+        }
+        readLineBytes = allocatedBytes() - readLineBytes;
+
+        long pooledBytes = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            new GetRawData().downloadStringInSameThread(url);
+        }
+        pooledBytes = allocatedBytes() - pooledBytes;
+
+        assertTrue("pooled download should allocate less than readLine + StringBuilder: " + pooledBytes / ITERATIONS
+                + " bytes/download against " + readLineBytes / ITERATIONS, pooledBytes < readLineBytes);
+    }
+
+    private void assertBodyMatches(String url) throws Exception {
+        GetRawData getRawData = new GetRawData();
+        RawResponse body = getRawData.downloadInSameThread(url);
+        assertNotNull(body);
+        try {
+            assertEquals(200, body.getResponseCode());
+            assertEquals(feed.length, body.length());
+            assertEquals(new String(feed, "UTF-8"), body.asString());
+            assertEquals(20 * 50, new FlickrFeedParser().parse(body.asStream()).size());
+        } finally {
+            body.release();
+        }
+    }
+
+    //the loop GetRawData's String download used before the byte level path
+    private static String readLineDownload(String address) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(address).openConnection();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+        StringBuilder result = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            result.append(line).append("\n");
+        }
+        reader.close();
+        connection.disconnect();
+        return result.toString();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
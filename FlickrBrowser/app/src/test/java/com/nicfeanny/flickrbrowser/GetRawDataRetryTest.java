@@ -0,0 +1,253 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Retries, typed failures and circuit breaking in {@link GetRawData}, against a
+ * {@link Transport} which plays back a script of responses and exceptions.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class GetRawDataRetryTest {
+    private static final String URL = "https://api.flickr.com/services/feeds/photos_public.gne";
+    //no waiting between attempts, the delays themselves are checked separately
+    private static final RetryPolicy NO_WAIT = new RetryPolicy(3, 0, 0);
+
+    //each call to get() takes the next step: an Integer response code or an IOException to throw
+    private static class ScriptedTransport implements Transport {
+        final LinkedList<Object> script;
+        int calls;
+
+        ScriptedTransport(Object... steps) {
+            script = new LinkedList<>(Arrays.asList(steps));
+        }
+
+        @Override
+        public TransportResponse get(String url, Map<String, String> requestHeaders) throws IOException {
+            calls++;
+            Object step = script.isEmpty() ? 200 : script.removeFirst();
+            if (step instanceof IOException) {
+                throw (IOException) step;
+            }
+            int code = (Integer) step;
+            Map<String, List<String>> headers = code == 429
+                    ? Collections.singletonMap("Retry-After", Collections.singletonList("1"))
+                    : Collections.<String, List<String>>emptyMap();
+            InputStream body = new ByteArrayInputStream("body".getBytes("UTF-8"));
+            return new TransportResponse(code, headers, 4, body, new RequestTiming(), new Closeable() {
+                @Override
+                public void close() {
+                }
+            });
+        }
+    }
+
+    private static GetRawData getRawData(Transport transport, RetryPolicy policy, CircuitBreaker breaker) {
+        return new GetRawData(transport, policy, breaker);
+    }
+
+    private static CircuitBreaker breaker() {
+        return new CircuitBreaker("test", 5, 60 * 1000);
+    }
+
+    @Test
+    public void transientFailures_areRetried() {
+        ScriptedTransport transport = new ScriptedTransport(new SocketTimeoutException(), 503, 200);
+        GetRawData getRawData = getRawData(transport, NO_WAIT, breaker());
+
+        RawResponse body = getRawData.downloadInSameThread(URL);
+        assertNotNull(body);
+        body.release();
+
+        DownloadResult result = getRawData.getLastResult();
+        assertEquals(3, transport.calls);
+        assertEquals(DownloadStatus.OK, result.getStatus());
+        assertEquals(200, result.getHttpCode());
+        assertEquals(3, result.getAttempts());
+    }
+
+    @Test
+    public void clientErrors_areNotRetried() {
+        ScriptedTransport transport = new ScriptedTransport(404);
+        GetRawData getRawData = getRawData(transport, NO_WAIT, breaker());
+
+        assertNull(getRawData.downloadInSameThread(URL));
+        DownloadResult result = getRawData.getLastResult();
+        assertEquals(1, transport.calls);
+        assertEquals(DownloadResult.Failure.HTTP_CLIENT_ERROR, result.getFailure());
+        assertEquals(404, result.getHttpCode());
+        assertEquals(DownloadStatus.FAILED_OR_EMPTY, result.getStatus());
+    }
+
+    @Test
+    public void retriesStopAtMaxAttempts() {
+        ScriptedTransport transport = new ScriptedTransport(
+                new ConnectException(), new ConnectException(), new ConnectException(), 200);
+        GetRawData getRawData = getRawData(transport, NO_WAIT, breaker());
+
+        assertEquals(DownloadStatus.FAILED_OR_EMPTY, getRawData.streamInSameThread(URL, new GetRawData.OnStreamAvailable() {
+            @Override
+            public void onStreamAvailable(InputStream stream) {
+                fail("no response arrived");
+            }
+        }));
+        assertEquals(3, transport.calls);
+        assertEquals(DownloadResult.Failure.NETWORK, getRawData.getLastResult().getFailure());
+        assertEquals(-1, getRawData.getLastResult().getHttpCode());
+    }
+
+    @Test
+    public void bodyAlreadyConsumed_isNotRetried() {
+        ScriptedTransport transport = new ScriptedTransport(200, 200);
+        GetRawData getRawData = getRawData(transport, NO_WAIT, breaker());
+
+        DownloadStatus status = getRawData.streamInSameThread(URL, new GetRawData.OnStreamAvailable() {
+            @Override
+            public void onStreamAvailable(InputStream stream) throws IOException {
+                throw new SocketTimeoutException("stalled halfway through the body");
+            }
+        });
+        assertEquals(DownloadStatus.FAILED_OR_EMPTY, status);
+        assertEquals(1, transport.calls);
+        assertEquals(DownloadResult.Failure.TIMEOUT, getRawData.getLastResult().getFailure());
+    }
+
+    @Test
+    public void unparseableBody_isABadResponse() {
+        GetRawData getRawData = getRawData(new ScriptedTransport(200), NO_WAIT, breaker());
+
+        getRawData.streamInSameThread(URL, new GetRawData.OnStreamAvailable() {
+            @Override
+            public void onStreamAvailable(InputStream stream) throws IOException {
+                throw new IOException("not JSON");
+            }
+        });
+        assertEquals(DownloadResult.Failure.BAD_RESPONSE, getRawData.getLastResult().getFailure());
+        assertEquals(200, getRawData.getLastResult().getHttpCode());
+    }
+
+    @Test
+    public void openCircuit_failsFastWithoutSending() {
+        CircuitBreaker breaker = breaker();
+        List<Object> failures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            failures.add(500);
+        }
+        ScriptedTransport transport = new ScriptedTransport(failures.toArray());
+
+        //3 attempts then 2 more: five failures in a row opens the circuit
+        getRawData(transport, NO_WAIT, breaker).downloadInSameThread(URL);
+        getRawData(transport, NO_WAIT, breaker).downloadInSameThread(URL);
+        assertEquals(5, transport.calls);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        GetRawData getRawData = getRawData(transport, NO_WAIT, breaker);
+        assertNull(getRawData.downloadInSameThread(URL));
+        assertEquals(5, transport.calls);
+        assertEquals(DownloadResult.Failure.CIRCUIT_OPEN, getRawData.getLastResult().getFailure());
+        assertEquals(0, getRawData.getLastResult().getAttempts());
+    }
+
+    @Test
+    public void readerThrowing_stillEndsTheHalfOpenTrial() {
+        RetryPolicy once = new RetryPolicy(1, 0, 0);
+        //opens on the first failure and lets a trial through straight away
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 0);
+        getRawData(new ScriptedTransport(503), once, breaker).downloadInSameThread(URL);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        GetRawData getRawData = getRawData(new ScriptedTransport(200), once, breaker);
+        assertEquals(DownloadStatus.FAILED_OR_EMPTY, getRawData.streamInSameThread(URL, new GetRawData.OnStreamAvailable() {
+            @Override
+            public void onStreamAvailable(InputStream stream) {
+                throw new IllegalStateException("a bug in the parser");
+            }
+        }));
+        assertEquals(DownloadResult.Failure.BAD_RESPONSE, getRawData.getLastResult().getFailure());
+        //the host answered, so the trial went fine as far as the breaker is concerned
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        getRawData(new ScriptedTransport(503), once, breaker).downloadInSameThread(URL);
+        try {
+            getRawData(new ScriptedTransport(200), once, breaker).streamInSameThread(URL, new GetRawData.OnStreamAvailable() {
+                @Override
+                public void onStreamAvailable(InputStream stream) {
+                    throw new OutOfMemoryError("growing the buffer");
+                }
+            });
+            fail("the Error should have come out");
+        } catch (OutOfMemoryError expected) {
+        }
+        //without the trial being recorded nothing would be sent to this host again
+        ScriptedTransport transport = new ScriptedTransport(200);
+        RawResponse body = getRawData(transport, once, breaker).downloadInSameThread(URL);
+        assertNotNull(body);
+        body.release();
+        assertEquals(1, transport.calls);
+    }
+
+    @Test
+    public void stringDownload_getsTheTypedResult() {
+        GetRawData getRawData = getRawData(new ScriptedTransport(502, 200), NO_WAIT, breaker());
+
+        assertEquals("body", getRawData.downloadStringInSameThread(URL));
+        assertEquals(DownloadStatus.OK, getRawData.getLastResult().getStatus());
+        assertEquals(2, getRawData.getLastResult().getAttempts());
+    }
+
+    @Test
+    public void backoff_isJitteredExponentialAndCapped() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, new Random(1));
+        for (int attempts = 1; attempts <= 8; attempts++) {
+            long ceiling = Math.min(1000, 100L << (attempts - 1));
+            long min = Long.MAX_VALUE;
+            long max = 0;
+            for (int i = 0; i < 200; i++) {
+                long delay = policy.delayMillis(attempts, -1);
+                assertTrue(delay >= 0 && delay <= ceiling);
+                min = Math.min(min, delay);
+                max = Math.max(max, delay);
+            }
+            //spread over the whole range, not bunched at one value
+            assertTrue(max - min > ceiling / 2);
+        }
+
+        assertEquals(1000, policy.delayMillis(1, RetryPolicy.parseRetryAfter("1")));
+        assertEquals(1000, policy.delayMillis(1, RetryPolicy.parseRetryAfter("120")));
+        assertEquals(-1, RetryPolicy.parseRetryAfter("Fri, 31 Dec 1999 23:59:59 GMT"));
+    }
+
+    @Test
+    public void retryAfter_isWaitedFor() {
+        ScriptedTransport transport = new ScriptedTransport(429, 200);
+        GetRawData getRawData = getRawData(transport, new RetryPolicy(2, 0, 300), breaker());
+
+        long start = System.nanoTime();
+        RawResponse body = getRawData.downloadInSameThread(URL);
+        long millis = (System.nanoTime() - start) / 1000000;
+        assertNotNull(body);
+        body.release();
+        //Retry-After: 1 second, capped by the policy's 300ms
+        assertTrue("waited " + millis + "ms", millis >= 300);
+        assertEquals(2, getRawData.getLastResult().getAttempts());
+    }
+}
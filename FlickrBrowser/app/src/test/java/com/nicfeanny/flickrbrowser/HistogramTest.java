@@ -0,0 +1,93 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Bucketing and percentile accuracy of {@link Histogram}, and that concurrent records
+ * aren't lost.
+ */
+public class HistogramTest {
+
+    @Test
+    public void everyValue_fitsItsBucket() {
+        for (long value = 0; value < 100000; value++) {
+            int bucket = Histogram.bucketFor(value);
+            assertTrue(value + " over bucket " + bucket, value <= Histogram.upperBound(bucket));
+            assertTrue(value + " under bucket " + bucket, bucket == 0 || value > Histogram.upperBound(bucket - 1));
+        }
+    }
+
+    @Test
+    public void percentiles_areWithinABucketOfTheTruth() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500, histogram.getSum());
+        assertEquals(1000, histogram.getMax());
+        //never under, at most 1/16th over
+        assertInRange(500, histogram.percentile(50));
+        assertInRange(900, histogram.percentile(90));
+        assertInRange(990, histogram.percentile(99));
+        assertEquals(1000, histogram.percentile(100));
+    }
+
+    @Test
+    public void hugeValues_goInTheLastBucketWithAnExactMax() {
+        Histogram histogram = new Histogram();
+        histogram.record(Long.MAX_VALUE / 2);
+        histogram.record(-5);
+
+        assertEquals(Histogram.BUCKET_COUNT - 1, Histogram.bucketFor(Long.MAX_VALUE / 2));
+        assertEquals(Long.MAX_VALUE / 2, histogram.percentile(99));
+        assertEquals(0, histogram.percentile(50));
+    }
+
+    @Test
+    public void concurrentRecords_areAllCounted() throws Exception {
+        final Histogram histogram = new Histogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long seed = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 100000; i++) {
+                        histogram.record(random.nextInt(5000));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(400000, histogram.getCount());
+        assertInRange(2500, histogram.percentile(50));
+    }
+
+    @Test
+    public void emptyOrReset_isAllZeroes() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.percentile(99));
+
+        histogram.record(42);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.percentile(50));
+    }
+
+    private static void assertInRange(long expected, long actual) {
+        assertTrue(actual + " for " + expected, actual >= expected && actual <= expected + expected / 16 + 1);
+    }
+}
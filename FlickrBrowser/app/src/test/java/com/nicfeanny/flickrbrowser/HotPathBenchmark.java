@@ -0,0 +1,150 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * The download, parse and model hot paths through {@link BenchmarkRunner}, on the JVM:
+ * - GetRawData reading a feed body from a loopback server,
+ * - the old org.json parse (parseJSONData) of a small (the recorded feed, 20
+ *   photos), medium (200) and huge (5000) feed,
+ * - FeedCache fetching and stream parsing SyntheticFeeds of 200 and 2000 photos from a
+ *   LocalFeedSource,
+ * - createUri,
+ * - building Photos.
+ *
+ * Run with ./gradlew benchmark to get the results as JSON in build/benchmarks, and
+ * -Pbenchmark.baseline=<dir of an earlier run> to fail on regressions.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class HotPathBenchmark {
+    private static final String BASE_URL = "https://api.flickr.com/services/feeds/photos_public.gne";
+
+    private static final BenchmarkRunner runner = new BenchmarkRunner("HotPathBenchmark");
+
+    private static String smallFeed;
+    private static String mediumFeed;
+    private static String hugeFeed;
+
+    @BeforeClass
+    public static void loadFixtures() throws Exception {
+        byte[] recorded = Fixtures.read("feeds/feed_android_nougat.json");
+        smallFeed = new String(recorded, "UTF-8");
+        mediumFeed = new String(Fixtures.repeatItems(recorded, 10), "UTF-8");
+        hugeFeed = new String(Fixtures.repeatItems(recorded, 250), "UTF-8");
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        runner.finish();
+    }
+
+    @Test
+    public void download_feedBody() throws Exception {
+        final byte[] body = mediumFeed.getBytes("UTF-8");
+        LoopbackHttpServer server = new LoopbackHttpServer(new LoopbackHttpServer.Handler() {
+            @Override
+            public LoopbackHttpServer.Response handle(String path, Map<String, String> requestHeaders) {
+                return LoopbackHttpServer.Response.ok(body);
+            }
+        });
+        try {
+            final String url = server.url("/feed");
+            runner.measure("download_200_photos", 10, 30, 1, new BenchmarkRunner.Body() {
+                @Override
+                public Object run() {
+                    RawResponse response = new GetRawData().downloadInSameThread(url);
+                    assertNotNull(response);
+                    int length = response.length();
+                    response.release();
+                    return length;
+                }
+            });
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void parse_smallMediumAndHugeFeeds() throws Exception {
+        parse("parse_20_photos", smallFeed, 20, 200, 20);
+        parse("parse_200_photos", mediumFeed, 200, 30, 20);
+        parse("parse_5000_photos", hugeFeed, 5000, 3, 10);
+    }
+
+    private static void parse(String name, final String feed, final int photos, int warmup, int samples) throws Exception {
+        runner.measure(name, warmup, samples, 1, new BenchmarkRunner.Body() {
+            @Override
+            public Object run() throws Exception {
+                int parsed = GetFlickrJSONData.parseJSONData(feed).size();
+                assertEquals(photos, parsed);
+                return parsed;
+            }
+        });
+    }
+
+    /*
+    * The whole FeedCache path (source -> streaming parse -> cache entry) for synthetic feeds
+    * 10x and 100x the size of flickr's, with nothing cached so every get fetches and parses.
+    * */
+    @Test
+    public void fetchAndParse_syntheticFeeds() throws Exception {
+        fetchAndParse("fetch_parse_200_synthetic_photos", 200, 20, 20);
+        fetchAndParse("fetch_parse_2000_synthetic_photos", 2000, 5, 10);
+    }
+
+    private static void fetchAndParse(String name, final int photos, int warmup, int samples) throws Exception {
+        final FeedCache cache = new FeedCache(LocalFeedSource.synthetic(new SyntheticFeed(photos), photos, 0, 0), 0, 1);
+        final FeedRequest request = new FeedRequest(BASE_URL, "android, nougat", "en-us", true);
+        runner.measure(name, warmup, samples, 1, new BenchmarkRunner.Body() {
+            @Override
+            public Object run() {
+                //no TTL, but the ETag would turn the next get into a 304
+                cache.clear();
+                int parsed = cache.get(request).getPhotos().size();
+                assertEquals(photos, parsed);
+                return parsed;
+            }
+        });
+    }
+
+    @Test
+    public void createUri() throws Exception {
+        runner.measure("create_uri", 20, 30, 1000, new BenchmarkRunner.Body() {
+            private int page;
+
+            @Override
+            public Object run() {
+                return GetFlickrJSONData.createUri(BASE_URL, "android, nougat", "en-us", true, ++page % 10);
+            }
+        });
+    }
+
+    @Test
+    public void photoConstruction() throws Exception {
+        final String image = "https://farm5.staticflickr.com/4353/36345416412_3b5ad5c87e_m.jpg";
+        final String link = Photo.largeImageUrl(image);
+        final String[] tags = {"android", "nougat", "pixel", "sdk"};
+        runner.measure("photo_from_strings", 20, 30, 10000, new BenchmarkRunner.Body() {
+            @Override
+            public Object run() {
+                return new Photo("title", "author", "1@N00", link, "android nougat pixel sdk", image);
+            }
+        });
+        runner.measure("photo_from_parser", 20, 30, 10000, new BenchmarkRunner.Body() {
+            @Override
+            public Object run() {
+                return new Photo("title", "author", "1@N00", tags, image);
+            }
+        });
+    }
+}
@@ -0,0 +1,76 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Disk tier eviction and the sample size maths used by {@link ImageLoader}.
+ */
+public class ImageCacheTest {
+    private static final String FIRST = "https://farm2.staticflickr.com/1919/1_a_m.jpg";
+    private static final String SECOND = "https://farm2.staticflickr.com/1919/2_b_m.jpg";
+    private static final String THIRD = "https://farm2.staticflickr.com/1919/3_c_m.jpg";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void diskCache_evictsLeastRecentlyUsedWhenFull() throws Exception {
+        DiskImageCache cache = new DiskImageCache(folder.newFolder("images"), 250);
+        cache.put(FIRST, new byte[100], 100);
+        cache.put(SECOND, new byte[100], 100);
+
+        //touch FIRST so SECOND becomes the eldest
+        assertNotNull(cache.get(FIRST));
+        cache.put(THIRD, new byte[100], 100);
+
+        assertTrue(cache.contains(FIRST));
+        assertFalse(cache.contains(SECOND));
+        assertTrue(cache.contains(THIRD));
+        assertEquals(200, cache.size());
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void diskCache_ignoresEntriesLargerThanTheCache() throws Exception {
+        DiskImageCache cache = new DiskImageCache(folder.newFolder("images"), 50);
+        cache.put(FIRST, new byte[100], 100);
+
+        assertNull(cache.get(FIRST));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void diskCache_survivesRestart() throws Exception {
+        File directory = folder.newFolder("images");
+        byte[] data = {1, 2, 3, 4};
+        new DiskImageCache(directory, 1000).put(FIRST, data, data.length);
+
+        DiskImageCache reopened = new DiskImageCache(directory, 1000);
+        assertArrayEquals(data, reopened.get(FIRST));
+        assertEquals(4, reopened.size());
+    }
+
+    @Test
+    public void diskCache_reopenTrimsToNewLimit() throws Exception {
+        File directory = folder.newFolder("images");
+        DiskImageCache cache = new DiskImageCache(directory, 1000);
+        cache.put(FIRST, new byte[100], 100);
+        cache.put(SECOND, new byte[100], 100);
+
+        assertEquals(100, new DiskImageCache(directory, 150).size());
+    }
+
+    @Test
+    public void inSampleSize_keepsImageAtLeastAsBigAsTarget() {
+        assertEquals(1, ImageLoader.calculateInSampleSize(240, 180, 240, 180));
+        assertEquals(2, ImageLoader.calculateInSampleSize(1024, 768, 400, 300));
+        assertEquals(4, ImageLoader.calculateInSampleSize(1024, 768, 200, 150));
+        assertEquals(1, ImageLoader.calculateInSampleSize(1024, 768, 0, 0));
+    }
+}
@@ -0,0 +1,168 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.graphics.Bitmap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * The memory tier and the loads of {@link ImageLoader}: requests for one URL sharing a
+ * download, eviction by bytes, cancelling before the load starts and bitmaps decoded too
+ * small for the view asking.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class ImageLoaderTest {
+    private static final int BITMAP_BYTES = 100 * 100 * 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CountDownLatch hold = new CountDownLatch(1);
+    private final List<String> downloaded = Collections.synchronizedList(new ArrayList<String>());
+    private LoopbackHttpServer server;
+    private ImageLoader imageLoader;
+
+    private final List<String> loaded = new ArrayList<>();
+    private final ImageLoader.OnImageLoaded callBack = new ImageLoader.OnImageLoaded() {
+        @Override
+        public void onImageLoaded(String url, Bitmap bitmap) {
+            loaded.add(url);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LoopbackHttpServer(new LoopbackHttpServer.Handler() {
+            @Override
+            public LoopbackHttpServer.Response handle(String path, Map<String, String> requestHeaders) {
+                downloaded.add(path);
+                try {
+                    hold.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+                return LoopbackHttpServer.Response.ok(new byte[]{1, 2, 3, 4});
+            }
+        });
+        imageLoader = new ImageLoader(16 * BITMAP_BYTES, folder.newFolder("images"), 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        hold.countDown();
+        server.close();
+    }
+
+    @Test
+    public void twoLoadsOfOneUrl_shareOneDownload() throws Exception {
+        String url = server.url("/1_m.jpg");
+        imageLoader.load(url, 100, 100, callBack);
+        imageLoader.load(url, 100, 100, callBack);
+        hold.countDown();
+
+        await(2);
+
+        assertEquals(2, loaded.size());
+        assertEquals(1, server.requests());
+        assertEquals(1, imageLoader.getStats().getCoalesced());
+    }
+
+    @Test
+    public void memoryTier_evictsLeastRecentlyUsedByBytes() {
+        BitmapMemoryCache cache = new BitmapMemoryCache(2 * BITMAP_BYTES + BITMAP_BYTES / 2, new ImageCacheStats());
+        cache.add("first", Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888));
+        cache.add("second", Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888));
+        //first becomes the most recently used
+        assertNotNull(cache.get("first"));
+        cache.add("third", Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888));
+
+        assertNotNull(cache.get("first"));
+        assertNull(cache.get("second"));
+        assertNotNull(cache.get("third"));
+        assertEquals(2 * BITMAP_BYTES, cache.size());
+        //a quarter the pixels is a quarter the bytes, so two more fit where one was
+        cache.add("small", Bitmap.createBitmap(50, 50, Bitmap.Config.ARGB_8888));
+        assertEquals(2 * BITMAP_BYTES + BITMAP_BYTES / 4, cache.size());
+    }
+
+    @Test
+    public void cancelledBeforeStarting_isNeverDownloaded() throws Exception {
+        //every thread busy until hold is released
+        for (int i = 0; i < 3; i++) {
+            imageLoader.load(server.url("/busy" + i + "_m.jpg"), 100, 100, callBack);
+        }
+        String url = server.url("/cancelled_m.jpg");
+        ImageLoader.Request request = imageLoader.load(url, 100, 100, callBack);
+        request.cancel();
+        hold.countDown();
+
+        await(3);
+        //time for the cancelled one to go through, if it was going to
+        Thread.sleep(100);
+        Robolectric.flushForegroundThreadScheduler();
+
+        assertTrue(request.isCancelled());
+        assertFalse(loaded.contains(url));
+        assertEquals(3, server.requests());
+        assertFalse(downloaded.contains("/cancelled_m.jpg"));
+    }
+
+    @Test
+    public void decodedForASmallerView_isNotAHitForABiggerOne() {
+        BitmapMemoryCache cache = new BitmapMemoryCache(16 * BITMAP_BYTES, new ImageCacheStats());
+        //a 200x200 jpg decoded for a 50x50 view
+        cache.add("sampled", Bitmap.createBitmap(50, 50, Bitmap.Config.ARGB_8888), 4);
+        //a 50x50 jpg, which is as big as it gets
+        cache.add("full", Bitmap.createBitmap(50, 50, Bitmap.Config.ARGB_8888), 1);
+
+        assertNotNull(cache.get("sampled", 50, 50));
+        assertNull(cache.get("sampled", 100, 100));
+        assertNull("full size wanted", cache.get("sampled", 0, 0));
+        assertNotNull(cache.get("full", 100, 100));
+
+        //decoded again bigger, the entry is replaced
+        cache.add("sampled", Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888), 2);
+        assertNotNull(cache.get("sampled", 100, 100));
+        cache.add("sampled", Bitmap.createBitmap(200, 200, Bitmap.Config.ARGB_8888));
+        assertNotNull(cache.get("sampled", 0, 0));
+    }
+
+    @Test
+    public void biggerLoadWhileASmallerOneIsInFlight_isNotShared() throws Exception {
+        String url = server.url("/2_m.jpg");
+        imageLoader.load(url, 50, 50, callBack);
+        imageLoader.load(url, 200, 200, callBack);
+        //covered by the 200x200 one
+        imageLoader.load(url, 100, 100, callBack);
+        hold.countDown();
+
+        await(3);
+
+        assertEquals(2, server.requests());
+        assertEquals(1, imageLoader.getStats().getCoalesced());
+    }
+
+    private void await(int callBacks) throws InterruptedException {
+        for (int i = 0; i < 500 && loaded.size() < callBacks; i++) {
+            Thread.sleep(10);
+            Robolectric.flushForegroundThreadScheduler();
+        }
+        assertEquals(callBacks, loaded.size());
+    }
+}
@@ -0,0 +1,96 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * Size choice of {@link ImageSizeSelector} for different cells, densities and link speeds,
+ * and the URLs {@link Photo#getImageUrl} makes for each size.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class ImageSizeSelectorTest {
+    private static final String IMAGE = "https://farm5.staticflickr.com/4353/36345416412_3b5ad5c87e_m.jpg";
+    //the grid's 120dp cells
+    private static final int CELL_DP = 120;
+
+    private static Photo photo() {
+        return new Photo("title", "author", "1@N00", new String[]{"android"}, IMAGE);
+    }
+
+    @Test
+    public void imageUrl_swapsTheSizeSuffix() {
+        Photo photo = photo();
+        assertSame(IMAGE, photo.getImageUrl(ImageSize.SMALL_240));
+        assertEquals("https://farm5.staticflickr.com/4353/36345416412_3b5ad5c87e_q.jpg", photo.getImageUrl(ImageSize.SQUARE_150));
+        assertEquals("https://farm5.staticflickr.com/4353/36345416412_3b5ad5c87e.jpg", photo.getImageUrl(ImageSize.MEDIUM_500));
+        assertEquals(Photo.largeImageUrl(IMAGE), photo.getImageUrl(ImageSize.LARGE_1024));
+        assertEquals(photo.getLink(), photo.getImageUrl(ImageSize.LARGE_1024));
+
+        //the same String every time, so it is the same cache key
+        assertSame(photo.getImageUrl(ImageSize.SMALL_320), photo.getImageUrl(ImageSize.SMALL_320));
+    }
+
+    @Test
+    public void smallCellOnLowDensity_getsTheSmallSquare() {
+        ImageSizeSelector selector = new ImageSizeSelector(1f);
+        assertEquals(ImageSize.SQUARE_150, selector.select(CELL_DP, CELL_DP, true));
+        assertEquals(ImageSize.SQUARE_75, selector.select(64, 64, true));
+        //not cropped: the whole photo has to fit, no squares
+        assertEquals(ImageSize.THUMBNAIL_100, selector.select(100, 80, false));
+    }
+
+    @Test
+    public void denseScreens_getEnoughPixels() {
+        //xxhdpi: a 120dp cell is 360px, a 4:3 500px image is 375px on its short side
+        ImageSizeSelector selector = new ImageSizeSelector(3f);
+        assertEquals(ImageSize.MEDIUM_500, selector.select(CELL_DP * 3, CELL_DP * 3, true));
+        assertEquals(ImageSize.LARGE_1024, selector.select(1080, 1920, false));
+        assertEquals(ImageSize.LARGE_1024, selector.select(4000, 4000, false));
+    }
+
+    @Test
+    public void slowLink_stepsDownAndOnlyRecoversWhenClearlyFast() {
+        ImageSizeSelector selector = new ImageSizeSelector(3f);
+        int cell = CELL_DP * 3;
+
+        //20KB in a second
+        selector.recordDownload(20 * 1024, 1000000000L);
+        assertTrue(selector.isSlow());
+        //half the pixels of the cell: 180px short side
+        assertEquals(ImageSize.SMALL_240, selector.select(cell, cell, true));
+
+        //back up over SLOW but not over FAST: stays slow so the URLs don't flap
+        for (int i = 0; i < 20; i++) {
+            selector.recordDownload(200 * 1024, 1000000000L);
+        }
+        assertTrue(selector.isSlow());
+
+        for (int i = 0; i < 20; i++) {
+            selector.recordDownload(2 * 1024 * 1024, 1000000000L);
+        }
+        assertFalse(selector.isSlow());
+        assertEquals(ImageSize.MEDIUM_500, selector.select(cell, cell, true));
+    }
+
+    @Test
+    public void tinyDownloads_areNotMeasured() {
+        ImageSizeSelector selector = new ImageSizeSelector(2f);
+        selector.recordDownload(512, 1000000000L);
+        assertEquals(-1, selector.getThroughput());
+        assertFalse(selector.isSlow());
+    }
+
+    @Test
+    public void gridCells_fetchFewerPixelsThanTheFixedThumbnail() {
+        //what every cell used to download: the 240x180 _m image
+        long fixed = 240 * 180;
+        ImageSize mdpi = new ImageSizeSelector(1f).select(CELL_DP, CELL_DP, true);
+        long chosen = (long) mdpi.longestSide * mdpi.longestSide;
+        assertTrue(mdpi + " is " + chosen + " pixels", chosen < fixed);
+    }
+}
@@ -0,0 +1,123 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link SyntheticFeed}'s feeds parse like flickr's and look like them, and
+ * {@link LocalFeedSource} serves them (and recorded ones) through FeedCache with the latency,
+ * speed and revalidation asked for.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class LocalFeedSourceTest {
+    private static final String URI = FeedViewModel.FEED_URL + "?tags=android&format=json&nojsoncallback=1";
+
+    @Test
+    public void syntheticFeed_parsesWithEveryFieldFilledIn() throws Exception {
+        List<Photo> photos = parse(new SyntheticFeed(1).generate("android, nougat", 1, 500));
+
+        assertEquals(500, photos.size());
+        for (Photo photo : photos) {
+            assertTrue(photo.getImage(), photo.getImage().matches("https://farm\\d\\.staticflickr\\.com/\\d+/\\d+_[0-9a-f]+_m\\.jpg"));
+            assertTrue(photo.getAuthorID(), photo.getAuthorID().matches("\\d+@N0\\d"));
+            assertTrue(photo.getTags(), photo.getTags().startsWith("android nougat"));
+            assertFalse(photo.getAuthor().isEmpty());
+        }
+    }
+
+    @Test
+    public void syntheticFeed_looksLikeARealOne() throws Exception {
+        List<Photo> photos = parse(new SyntheticFeed(2).generate("android", 1, 2000));
+
+        Set<String> authors = new HashSet<>();
+        int tags = 0;
+        int emptyTitles = 0;
+        for (Photo photo : photos) {
+            authors.add(photo.getAuthorID());
+            tags += photo.getTags().split(" ").length;
+            if (photo.getTitle().isEmpty()) {
+                emptyTitles++;
+            }
+        }
+        //authors repeat, a typical photo has a handful of tags and some have no title
+        assertTrue(authors.size() + " authors", authors.size() < 500);
+        double meanTags = tags / 2000.0;
+        assertTrue(meanTags + " tags", meanTags > 4 && meanTags < 10);
+        assertTrue(emptyTitles + " untitled", emptyTitles > 150 && emptyTitles < 450);
+    }
+
+    @Test
+    public void syntheticFeed_isTheSameForTheSamePage() {
+        SyntheticFeed generator = new SyntheticFeed(3);
+
+        assertArrayEquals(generator.generate("android", 1, 50), generator.generate("android", 1, 50));
+        assertFalse(Arrays.equals(generator.generate("android", 1, 50), generator.generate("android", 2, 50)));
+    }
+
+    @Test
+    public void syntheticSource_servesEachPageItsOwnPhotos() {
+        FeedCache cache = new FeedCache(LocalFeedSource.synthetic(new SyntheticFeed(4), 200, 0, 0), 0, 4);
+        FeedRequest first = new FeedRequest(FeedViewModel.FEED_URL, "android, nougat", "en-us", true);
+
+        FeedResult page1 = cache.get(first);
+        FeedResult page2 = cache.get(first.forPage(2));
+
+        assertEquals(DownloadStatus.OK, page1.getStatus());
+        assertEquals(200, page1.getPhotos().size());
+        assertNotEquals(page1.getPhotos().get(0).getImage(), page2.getPhotos().get(0).getImage());
+    }
+
+    @Test
+    public void unchangedFeed_isRevalidatedWithItsETag() {
+        byte[] feed = new SyntheticFeed(5).generate("android", 1, 20);
+        FeedCache cache = new FeedCache(LocalFeedSource.recorded(feed, 0, 0), 0, 4);
+
+        List<Photo> first = cache.get(URI).getPhotos();
+        List<Photo> second = cache.get(URI).getPhotos();
+
+        assertEquals(1, cache.getRevalidations());
+        assertSame(first.get(0), second.get(0));
+    }
+
+    @Test
+    public void latencyAndSpeed_areWhatWasAskedFor() throws Exception {
+        byte[] feed = new SyntheticFeed(6).generate("android", 1, 100);
+        LocalFeedSource source = LocalFeedSource.recorded(feed, 100, feed.length * 4);
+
+        long start = System.nanoTime();
+        final int[] read = new int[1];
+        FeedResponse response = source.fetch(URI, null, new GetRawData.OnStreamAvailable() {
+            @Override
+            public void onStreamAvailable(InputStream stream) throws IOException {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = stream.read(buffer)) != -1) {
+                    read[0] += count;
+                }
+            }
+        });
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(DownloadStatus.OK, response.getStatus());
+        assertEquals(feed.length, read[0]);
+        //100ms latency + a quarter of a second to trickle the body out
+        assertTrue(millis + "ms", millis >= 330 && millis < 1000);
+    }
+
+    private static List<Photo> parse(byte[] feed) throws IOException {
+        return new FlickrFeedParser().parse(new ByteArrayInputStream(feed));
+    }
+}
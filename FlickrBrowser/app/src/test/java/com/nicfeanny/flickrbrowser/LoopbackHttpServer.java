@@ -0,0 +1,198 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Minimal HTTP/1.1 server on 127.0.0.1 for exercising the download path without the network.
+ * Supports keep-alive, chunked and gzip responses and counts accepted connections and requests.
+ */
+class LoopbackHttpServer {
+
+    interface Handler {
+        Response handle(String path, Map<String, String> requestHeaders);
+    }
+
+    static class Response {
+        int code = 200;
+        byte[] body = new byte[0];
+        boolean chunked;
+        final Map<String, String> headers = new HashMap<>();
+
+        static Response ok(byte[] body) {
+            Response response = new Response();
+            response.body = body;
+            return response;
+        }
+
+        Response gzip() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+            gzip.write(body);
+            gzip.close();
+            body = out.toByteArray();
+            headers.put("Content-Encoding", "gzip");
+            return this;
+        }
+
+        Response chunked() {
+            chunked = true;
+            return this;
+        }
+
+        Response header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+    }
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger acceptedConnections = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile Handler handler;
+
+    LoopbackHttpServer(Handler handler) throws IOException {
+        this.handler = handler;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        });
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + path;
+    }
+
+    void setHandler(Handler handler) {
+        this.handler = handler;
+    }
+
+    int acceptedConnections() {
+        return acceptedConnections.get();
+    }
+
+    int requests() {
+        return requests.get();
+    }
+
+    void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                acceptedConnections.incrementAndGet();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            while (true) {
+                String requestLine = readLine(in);
+                if (requestLine == null || requestLine.isEmpty()) {
+                    break;
+                }
+                Map<String, String> requestHeaders = new HashMap<>();
+                String line;
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    requestHeaders.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+                }
+                requests.incrementAndGet();
+
+                String path = requestLine.split(" ")[1];
+                write(out, handler.handle(path, requestHeaders));
+
+                if ("close".equalsIgnoreCase(requestHeaders.get("connection"))) {
+                    break;
+                }
+            }
+        } catch (SocketException e) {
+            //client went away
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static void write(OutputStream out, Response response) throws IOException {
+        StringBuilder head = new StringBuilder();
+        head.append("HTTP/1.1 ").append(response.code).append(response.code == 304 ? " Not Modified" : " OK").append("\r\n");
+        for (Map.Entry<String, String> header : response.headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        boolean hasBody = response.code != 304 && response.code != 204;
+        if (hasBody && response.chunked) {
+            head.append("Transfer-Encoding: chunked\r\n");
+        } else if (hasBody) {
+            head.append("Content-Length: ").append(response.body.length).append("\r\n");
+        }
+        head.append("\r\n");
+        out.write(head.toString().getBytes("US-ASCII"));
+
+        if (hasBody && response.chunked) {
+            int chunk = 4096;
+            for (int offset = 0; offset < response.body.length; offset += chunk) {
+                int size = Math.min(chunk, response.body.length - offset);
+                out.write((Integer.toHexString(size) + "\r\n").getBytes("US-ASCII"));
+                out.write(response.body, offset, size);
+                out.write("\r\n".getBytes("US-ASCII"));
+            }
+            out.write("0\r\n\r\n".getBytes("US-ASCII"));
+        } else if (hasBody) {
+            out.write(response.body);
+        }
+        out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int end = line.length();
+                if (end > 0 && line.charAt(end - 1) == '\r') {
+                    line.setLength(end - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+}
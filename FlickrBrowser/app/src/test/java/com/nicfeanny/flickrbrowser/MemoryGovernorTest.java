@@ -0,0 +1,198 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Trim levels reaching the caches through {@link MemoryGovernor}: what they retain goes down
+ * step by step with the pressure and comes back once it's over.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class MemoryGovernorTest {
+    private static final int BITMAP_BYTES = 100 * 100 * 4;
+    private static final int FEEDS = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final MemoryGovernor governor = new MemoryGovernor();
+    private ImageLoader imageLoader;
+    private FeedCache feedCache;
+    private ByteBufferPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        imageLoader = new ImageLoader(16 * BITMAP_BYTES, folder.newFolder("images"), 1024 * 1024);
+        feedCache = new FeedCache(LocalFeedSource.synthetic(new SyntheticFeed(21), 50, 0, 0),
+                FeedCache.DEFAULT_TTL_MILLIS, FEEDS);
+        pool = new ByteBufferPool(4, 64 * 1024);
+        governor.register(imageLoader);
+        governor.register(feedCache);
+        governor.register(pool);
+        fill();
+    }
+
+    @After
+    public void tearDown() {
+        governor.unregister(imageLoader);
+        governor.unregister(feedCache);
+        governor.unregister(pool);
+    }
+
+    @Test
+    public void pressureFor_mapsTrimLevels() {
+        assertEquals(MemoryGovernor.Pressure.MODERATE,
+                MemoryGovernor.pressureFor(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE));
+        assertEquals(MemoryGovernor.Pressure.MODERATE,
+                MemoryGovernor.pressureFor(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN));
+        assertEquals(MemoryGovernor.Pressure.LOW,
+                MemoryGovernor.pressureFor(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW));
+        assertEquals(MemoryGovernor.Pressure.LOW,
+                MemoryGovernor.pressureFor(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND));
+        assertEquals(MemoryGovernor.Pressure.CRITICAL,
+                MemoryGovernor.pressureFor(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL));
+        assertEquals(MemoryGovernor.Pressure.CRITICAL,
+                MemoryGovernor.pressureFor(ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+    }
+
+    @Test
+    public void trimLevels_shrinkRetainedMemoryStepByStep() {
+        long bitmaps = imageLoader.getMemoryCache().size();
+        long buffers = pool.pooledBytes();
+        assertEquals(16 * BITMAP_BYTES, bitmaps);
+        assertEquals(FEEDS, feedCache.size());
+        assertTrue(buffers > 0);
+
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals(8 * BITMAP_BYTES, imageLoader.getMemoryCache().size());
+        assertEquals(FEEDS / 2, feedCache.size());
+        assertTrue(pool.pooledBytes() < buffers);
+        assertTrue(pool.pooledBytes() > 0);
+
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(4 * BITMAP_BYTES, imageLoader.getMemoryCache().size());
+        assertEquals(FEEDS / 4, feedCache.size());
+        assertEquals(0, pool.pooledBytes());
+
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(0, imageLoader.getMemoryCache().size());
+        assertEquals(0, feedCache.size());
+    }
+
+    @Test
+    public void trimLevels_shrinkTheFeedCachesHeap() {
+        assumeTrue("RetainedSize needs Java 8", RetainedSize.isSupported());
+        long feeds = RetainedSize.of(feedCache);
+
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        long moderateFeeds = RetainedSize.of(feedCache);
+        assertTrue(moderateFeeds + " not under " + feeds, moderateFeeds < feeds);
+
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        long lowFeeds = RetainedSize.of(feedCache);
+        assertTrue(lowFeeds + " not under " + moderateFeeds, lowFeeds < moderateFeeds);
+
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertTrue(RetainedSize.of(feedCache) < lowFeeds);
+    }
+
+    @Test
+    public void loweredLimits_holdUntilThePressureIsOver() {
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        //a milder signal doesn't undo a harsher one
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals(MemoryGovernor.Pressure.LOW, governor.getPressure());
+
+        //filling up again stops at the lowered limits
+        fill();
+        assertEquals(4 * BITMAP_BYTES, imageLoader.getMemoryCache().size());
+        assertEquals(FEEDS / 4, feedCache.size());
+        assertEquals(0, pool.pooledBytes());
+
+        Robolectric.getForegroundThreadScheduler().advanceBy(MemoryGovernor.RELAX_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals(MemoryGovernor.Pressure.NONE, governor.getPressure());
+        fill();
+        assertEquals(16 * BITMAP_BYTES, imageLoader.getMemoryCache().size());
+        assertEquals(FEEDS, feedCache.size());
+        assertTrue(pool.pooledBytes() > 0);
+    }
+
+    @Test
+    public void register_underPressure_trimsStraightAway() {
+        ByteBufferPool late = new ByteBufferPool(4, 64 * 1024);
+        late.release(new byte[1024]);
+        governor.onLowMemory();
+        governor.register(late);
+        governor.unregister(late);
+
+        assertEquals(0, late.pooledBytes());
+    }
+
+    @Test
+    public void dropPrefetches_dropsQueuedPrefetchesButNotLoads() throws Exception {
+        final CountDownLatch hold = new CountDownLatch(1);
+        LoopbackHttpServer server = new LoopbackHttpServer(new LoopbackHttpServer.Handler() {
+            @Override
+            public LoopbackHttpServer.Response handle(String path, Map<String, String> requestHeaders) {
+                try {
+                    hold.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+                return LoopbackHttpServer.Response.ok(new byte[0]);
+            }
+        });
+        try {
+            for (int i = 0; i < 10; i++) {
+                imageLoader.prefetch(server.url("/prefetch" + i + ".jpg"), 100, 100);
+            }
+            //waited for by a cell, so it stays
+            imageLoader.load(server.url("/shown.jpg"), 100, 100, new ImageLoader.OnImageLoaded() {
+                @Override
+                public void onImageLoaded(String url, Bitmap bitmap) {
+                }
+            });
+
+            int dropped = imageLoader.dropPrefetches();
+
+            //the ones already downloading are left to finish
+            assertTrue("dropped " + dropped, dropped >= 10 - 3 && dropped <= 10);
+            assertEquals(0, imageLoader.dropPrefetches());
+        } finally {
+            hold.countDown();
+            server.close();
+        }
+    }
+
+    //every cache full to its normal limit
+    private void fill() {
+        for (int i = 0; i < 32; i++) {
+            imageLoader.getMemoryCache().add("https://farm1.staticflickr.com/1/" + i + "_m.jpg",
+                    Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888));
+        }
+        for (int i = 0; i < FEEDS; i++) {
+            feedCache.get("https://api.flickr.com/services/feeds/photos_public.gne?tags=tag" + i
+                    + "&format=json&nojsoncallback=1");
+        }
+        for (int i = 1; i <= 4; i++) {
+            pool.release(new byte[i * 8 * 1024]);
+        }
+    }
+}
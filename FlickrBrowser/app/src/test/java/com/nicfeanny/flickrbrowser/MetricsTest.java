@@ -0,0 +1,86 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Scanner;
+
+import static org.junit.Assert.*;
+
+/**
+ * The pipelines record into {@link Metrics}, and its export is valid Prometheus text with
+ * the numbers in it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class MetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        Metrics.reset();
+    }
+
+    @Test
+    public void parsingAFeed_recordsItsTimeAndSize() throws Exception {
+        Metrics.reset();
+        byte[] feed = Fixtures.read("feeds/feed_android_nougat.json");
+
+        new FlickrFeedParser().parse(new ByteArrayInputStream(feed));
+        new FlickrFeedParser().parse(new ByteArrayInputStream(feed));
+
+        assertEquals(2, Metrics.get(Metrics.Metric.PARSE_MICROS).getCount());
+        assertEquals(20, Metrics.get(Metrics.Metric.FEED_ITEMS).percentile(50));
+    }
+
+    @Test
+    public void format_isPrometheusText() {
+        Metrics.reset();
+        for (int millis = 1; millis <= 100; millis++) {
+            Metrics.record(Metrics.Metric.DOWNLOAD_MILLIS, millis);
+        }
+        PerfCounters.add(PerfCounters.Counter.BYTES_READ, 1234);
+        FeedCache feedCache = new FeedCache(LocalFeedSource.recorded(new SyntheticFeed(1).generate("a", 1, 5), 0, 0), 60000, 2);
+        feedCache.get("feed");
+        feedCache.get("feed");
+
+        String text = Metrics.format(new ImageCacheStats(), feedCache);
+
+        //the top of 50's bucket, 50-51
+        assertTrue(text, text.contains("flickrbrowser_download_ms{quantile=\"0.5\"} 51\n"));
+        assertTrue(text, text.contains("flickrbrowser_download_ms_count 100\n"));
+        assertTrue(text, text.contains("flickrbrowser_download_ms_sum 5050\n"));
+        assertTrue(text, text.contains("flickrbrowser_bytes_read_total 1234\n"));
+        assertTrue(text, text.contains("flickrbrowser_feed_cache_hit_ratio 0.5000\n"));
+        assertTrue(text, text.contains("flickrbrowser_build_info{version=\""));
+        //every line is a comment or "name{labels} value"
+        for (String line : text.split("\n")) {
+            assertTrue(line, line.startsWith("# HELP ") || line.startsWith("# TYPE ")
+                    || line.matches("[a-z_]+(\\{[a-z_]+=\"[^\"]*\"(,[a-z_]+=\"[^\"]*\")*\\})? -?[0-9.]+"));
+        }
+    }
+
+    @Test
+    public void export_writesTheTextToANewFile() throws Exception {
+        File directory = new File(folder.getRoot(), "metrics");
+
+        File file = Metrics.export(directory, "flickrbrowser_feed_items_count 3\n");
+
+        assertTrue(file.getName(), file.getName().matches("metrics-\\d{8}-\\d{6}\\.prom"));
+        Scanner scanner = new Scanner(file, "UTF-8").useDelimiter("\\A");
+        try {
+            assertEquals("flickrbrowser_feed_items_count 3\n", scanner.next());
+        } finally {
+            scanner.close();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLog;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parse throughput with the old per photo Log.d(TAG, "..." + photo.toString()), with
+ * {@link DebugLog} turned on and with it turned off, plus what {@link PerfCounters} records
+ * and what a turned off DebugLog call with int/long arguments allocates.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class ParseLoggingBenchmark {
+    private static final String TAG = "ParseLoggingBenchmark";
+    private static final int COPIES = 50;
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 20;
+    private static final int ROUNDS = 3;
+
+    private byte[] feed;
+    private boolean wasEnabled;
+
+    @Before
+    public void setUp() throws Exception {
+        feed = FeedParserBenchmark.repeatItems(FeedParserBenchmark.readFixture("feeds/feed_android_nougat.json"), COPIES);
+        wasEnabled = DebugLog.isEnabled();
+        PerfCounters.reset();
+    }
+
+    @After
+    public void tearDown() {
+        DebugLog.setEnabled(wasEnabled);
+    }
+
+    @Test
+    public void counters_recordItemsAndParseTime() throws Exception {
+        new FlickrFeedParser().parse(new ByteArrayInputStream(feed));
+        GetFlickrJSONData.parseJSONData(new String(feed, "UTF-8"));
+
+        assertEquals(2, PerfCounters.get(PerfCounters.Counter.FEEDS_PARSED));
+        assertEquals(2 * 20 * COPIES, PerfCounters.get(PerfCounters.Counter.ITEMS_PARSED));
+        assertTrue(PerfCounters.get(PerfCounters.Counter.PARSE_NANOS) > 0);
+        assertTrue(PerfCounters.dump().contains("items_parsed=" + 2 * 20 * COPIES));
+    }
+
+    @Test
+    public void gatedLogging_parsesFasterThanPerItemLogging() throws Exception {
+        FlickrFeedParser.OnPhotoParsed oldLogging = new FlickrFeedParser.OnPhotoParsed() {
+            @Override
+            public void onPhotoParsed(Photo photo) {
+                Log.d(TAG, "onDownloadComplete" + photo.toString());
+            }
+        };
+        FlickrFeedParser.OnPhotoParsed gatedLogging = new FlickrFeedParser.OnPhotoParsed() {
+            @Override
+            public void onPhotoParsed(Photo photo) {
+                DebugLog.d(TAG, "onPhotoParsed: %s", photo);
+            }
+        };
+
+        //interleaved and best of a few rounds, so a GC or a busy core doesn't decide the result
+        double old = 0;
+        double on = 0;
+        double off = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            old = Math.max(old, itemsPerSecond(oldLogging));
+            DebugLog.setEnabled(true);
+            on = Math.max(on, itemsPerSecond(gatedLogging));
+            DebugLog.setEnabled(false);
+            off = Math.max(off, itemsPerSecond(gatedLogging));
+        }
+
+        System.out.println(String.format("%d items: per item Log.d %.0f items/s | DebugLog on %.0f items/s | DebugLog off %.0f items/s",
+                20 * COPIES, old, on, off));
+        assertTrue("logging off should out-parse per item logging", off > old);
+    }
+
+    @Test
+    public void loggingOff_primitiveArgumentsAreNotBoxed() {
+        DebugLog.setEnabled(false);
+        int calls = 100000;
+        //warm up, so the measured loop isn't interpreted
+        for (int i = 0; i < calls; i++) {
+            DebugLog.d(TAG, "frame %d took %dus", i * 1000L, i + 1000);
+            DebugLog.d(TAG, "frame %d took %dus", (Object) (i * 1000L), (Object) (i + 1000));
+        }
+
+        long before = allocatedBytes();
+        for (int i = 0; i < calls; i++) {
+            //past Integer/Long's cache of small values, so boxing would allocate
+            DebugLog.d(TAG, "frame %d took %dus", i * 1000L, i + 1000);
+        }
+        long primitive = allocatedBytes() - before;
+        before = allocatedBytes();
+        for (int i = 0; i < calls; i++) {
+            DebugLog.d(TAG, "frame %d took %dus", (Object) (i * 1000L), (Object) (i + 1000));
+        }
+        long boxed = allocatedBytes() - before;
+
+        System.out.println(String.format("%d calls with logging off: long overload %d bytes, Object overload %d bytes",
+                calls, primitive, boxed));
+        assertTrue("allocated " + primitive + " bytes", primitive < calls);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private double itemsPerSecond(FlickrFeedParser.OnPhotoParsed onPhotoParsed) throws Exception {
+        FlickrFeedParser parser = new FlickrFeedParser(onPhotoParsed);
+        for (int i = 0; i < WARMUP; i++) {
+            parser.parse(new ByteArrayInputStream(feed));
+            ShadowLog.reset();
+        }
+        long nanos = 0;
+        int items = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            items += parser.parse(new ByteArrayInputStream(feed)).size();
+            nanos += System.nanoTime() - start;
+            //Robolectric keeps every log line in memory, don't let that pile up
+            ShadowLog.reset();
+        }
+        return items * 1e9 / nanos;
+    }
+}
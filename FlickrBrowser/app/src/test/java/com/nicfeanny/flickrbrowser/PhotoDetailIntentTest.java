@@ -0,0 +1,72 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.content.Intent;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * What {@link PhotoDetailActivity} is handed: a window of photos around the tapped one,
+ * which survive being serialized into the Intent.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class PhotoDetailIntentTest {
+
+    private static List<Photo> photos(int count) {
+        List<Photo> photos = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            photos.add(new Photo("title " + i, "author", "1@N00", new String[]{"android", "tag" + i},
+                    "https://farm1.staticflickr.com/1/" + i + "_abc_m.jpg"));
+        }
+        return photos;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void intent_carriesAWindowAroundThePosition() {
+        List<Photo> photos = photos(500);
+        Intent intent = PhotoDetailActivity.intentFor(RuntimeEnvironment.application, photos, 300);
+
+        List<Photo> passed = (List<Photo>) intent.getSerializableExtra(PhotoDetailActivity.EXTRA_PHOTOS);
+        int position = intent.getIntExtra(PhotoDetailActivity.EXTRA_POSITION, -1);
+        assertEquals(2 * PhotoDetailActivity.MAX_NEIGHBOURS + 1, passed.size());
+        assertEquals(PhotoDetailActivity.MAX_NEIGHBOURS, position);
+        assertEquals("title 300", passed.get(position).getTitle());
+
+        intent = PhotoDetailActivity.intentFor(RuntimeEnvironment.application, photos(10), 2);
+        passed = (List<Photo>) intent.getSerializableExtra(PhotoDetailActivity.EXTRA_PHOTOS);
+        assertEquals(10, passed.size());
+        assertEquals(2, intent.getIntExtra(PhotoDetailActivity.EXTRA_POSITION, -1));
+    }
+
+    @Test
+    public void photo_survivesSerialization() throws Exception {
+        Photo photo = photos(1).get(0);
+        //fills in the cached URLs, which are transient
+        String medium = photo.getImageUrl(ImageSize.MEDIUM_640);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(photo);
+        out.close();
+        Photo copy = (Photo) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        assertEquals(photo.toString(), copy.toString());
+        assertEquals(photo.getTagList(), copy.getTagList());
+        assertEquals(medium, copy.getImageUrl(ImageSize.MEDIUM_640));
+        assertEquals(photo.getLink(), copy.getLink());
+    }
+}
@@ -0,0 +1,127 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Retained heap of 10k photos in the compact {@link Photo} compared with the old model of
+ * six independent Strings per photo, plus the behaviour the compact model must keep.
+ * Sizes come from walking the object graph ({@link RetainedSize}) rather than GC
+ * snapshots, which other tests' threads make too noisy to compare.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class PhotoFootprintTest {
+    private static final int PHOTOS = 10000;
+
+    //the Photo this app had before: every field its own String, link always stored
+    private static class LegacyPhoto {
+        final String title;
+        final String author;
+        final String authorID;
+        final String link;
+        final String tags;
+        final String image;
+
+        LegacyPhoto(String title, String author, String authorID, String link, String tags, String image) {
+            this.title = title;
+            this.author = author;
+            this.authorID = authorID;
+            this.link = link;
+            this.tags = tags;
+            this.image = image;
+        }
+    }
+
+    @Test
+    public void largeImageUrl_matchesRegexSwap() {
+        String[] urls = {
+                "https://farm5.staticflickr.com/4456/37521146891_6d2a3d2e2a_m.jpg",
+                "https://farm5.staticflickr.com/4456/37521146891_6d2a3d2e2a_b.jpg",
+                "https://example.com/no_suffix.png",
+        };
+        for (String url : urls) {
+            assertEquals(url.replaceFirst("_m.", "_b."), Photo.largeImageUrl(url));
+        }
+    }
+
+    @Test
+    public void tags_roundTripThroughTokenArray() {
+        Photo photo = new Photo("t", "a", "id", null, "android nougat  pixel", "x_m.jpg");
+
+        assertEquals("android nougat pixel", photo.getTags());
+        assertEquals(3, photo.getTagList().size());
+        assertEquals("x_b.jpg", photo.getLink());
+        assertEquals("", new Photo("t", "a", "id", null, "", "x_m.jpg").getTags());
+    }
+
+    @Test
+    public void explicitLink_isKeptWhenNotDerivable() {
+        Photo photo = new Photo("t", "a", "id", "https://example.com/big.jpg", "", "x_m.jpg");
+
+        assertEquals("https://example.com/big.jpg", photo.getLink());
+    }
+
+    @Test
+    public void parser_sharesRepeatedAuthorsAndTags() throws Exception {
+        byte[] feed = FeedParserBenchmark.repeatItems(FeedParserBenchmark.readFixture("feeds/feed_android_nougat.json"), 2);
+        List<Photo> photos = new FlickrFeedParser(null, new StringPool(StringPool.DEFAULT_MAX_SIZE))
+                .parse(new ByteArrayInputStream(feed));
+
+        Photo first = photos.get(0);
+        Photo repeat = photos.get(20);
+        assertSame(first.getAuthor(), repeat.getAuthor());
+        assertSame(first.getAuthorID(), repeat.getAuthorID());
+        assertSame(first.getTagList().get(0), repeat.getTagList().get(0));
+    }
+
+    @Test
+    public void compactPhotos_retainLessHeap() throws Exception {
+        assumeTrue("RetainedSize needs Java 8", RetainedSize.isSupported());
+        byte[] feed = FeedParserBenchmark.repeatItems(FeedParserBenchmark.readFixture("feeds/feed_android_nougat.json"),
+                PHOTOS / 20);
+
+        List<LegacyPhoto> legacy = parseLegacy(feed);
+        List<Photo> compact = new FlickrFeedParser(null, new StringPool(StringPool.DEFAULT_MAX_SIZE))
+                .parse(new ByteArrayInputStream(feed));
+        assertEquals(PHOTOS, legacy.size());
+        assertEquals(PHOTOS, compact.size());
+
+        long legacyBytes = RetainedSize.of(legacy);
+        long compactBytes = RetainedSize.of(compact);
+
+        assertTrue("compact photos should retain less heap: " + compactBytes + " bytes against " + legacyBytes,
+                compactBytes < legacyBytes);
+    }
+
+    /*
+    * Builds the old representation with the same independent Strings the old parser
+    * made: a fresh copy of every field, the link from the regex, the tags as one String.
+    * */
+    private static List<LegacyPhoto> parseLegacy(byte[] feed) throws Exception {
+        final List<LegacyPhoto> photos = new ArrayList<>();
+        new FlickrFeedParser(new FlickrFeedParser.OnPhotoParsed() {
+            @Override
+            public void onPhotoParsed(Photo photo) {
+                photos.add(new LegacyPhoto(copy(photo.getTitle()), copy(photo.getAuthor()),
+                        copy(photo.getAuthorID()), photo.getImage().replaceFirst("_m.", "_b."),
+                        photo.getTags(), copy(photo.getImage())));
+            }
+        }, new StringPool(StringPool.DEFAULT_MAX_SIZE)).parse(new ByteArrayInputStream(feed));
+        return photos;
+    }
+
+    //new String(String) shares the characters with the original, this really is a separate copy
+    private static String copy(String s) {
+        return new String(s.toCharArray());
+    }
+}
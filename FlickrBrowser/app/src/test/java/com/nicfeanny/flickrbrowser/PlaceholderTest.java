@@ -0,0 +1,65 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link Placeholder} picks the colour most of the photo is, not the average of it, and its
+ * drawable has the photo's shape.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class PlaceholderTest {
+
+    @Test
+    public void dominantColour_isTheBiggestAreaNotTheAverage() {
+        //the top 5/8 sky blue, the rest red
+        Bitmap bitmap = Bitmap.createBitmap(80, 60, Bitmap.Config.ARGB_8888);
+        fill(bitmap, 0, 0, 80, 38, Color.rgb(70, 130, 200));
+        fill(bitmap, 0, 38, 80, 60, Color.rgb(200, 20, 20));
+
+        Placeholder placeholder = Placeholder.of(bitmap, 240, 180);
+
+        assertEquals(Color.rgb(70, 130, 200), placeholder.getColor());
+        assertEquals(240 / 180f, placeholder.getAspectRatio(), 0.001f);
+    }
+
+    @Test
+    public void nearlyTheSameColours_countAsOne() {
+        //a gradient that all falls into one group beats a flat colour covering more than a third
+        Bitmap bitmap = Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888);
+        for (int x = 0; x < 40; x++) {
+            fill(bitmap, x, 0, x + 1, 64, Color.rgb(200 + x / 4, 200 + x / 4, 200));
+        }
+        fill(bitmap, 40, 0, 64, 64, Color.BLACK);
+
+        int color = Placeholder.of(bitmap, 64, 64).getColor();
+
+        assertTrue(Integer.toHexString(color), Color.red(color) >= 200 && Color.blue(color) == 200);
+    }
+
+    @Test
+    public void drawable_hasThePhotosShape() {
+        Drawable wide = new Placeholder(Color.RED, 1.5f).newDrawable();
+        Drawable tall = new Placeholder(Color.RED, 0.5f).newDrawable();
+
+        assertEquals(1.5f, wide.getIntrinsicWidth() / (float) wide.getIntrinsicHeight(), 0.01f);
+        assertEquals(0.5f, tall.getIntrinsicWidth() / (float) tall.getIntrinsicHeight(), 0.01f);
+    }
+
+    private static void fill(Bitmap bitmap, int left, int top, int right, int bottom, int color) {
+        for (int y = top; y < bottom; y++) {
+            for (int x = left; x < right; x++) {
+                bitmap.setPixel(x, y, color);
+            }
+        }
+    }
+}
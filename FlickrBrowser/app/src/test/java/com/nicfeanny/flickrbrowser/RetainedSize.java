@@ -0,0 +1,105 @@
+package com.nicfeanny.flickrbrowser;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Estimates the heap retained by an object graph by walking its fields, counting every object
+ * reachable from the root once (so shared Strings are only paid for once). Uses the usual
+ * 64 bit HotSpot layout with compressed references: 12 byte headers, 16 byte array headers,
+ * 4 byte references, everything rounded up to 8 bytes. Static fields are not followed.
+ *
+ * The walk reads private fields of JDK classes (String's chars, HashMap's table...), which
+ * the module system refuses from Java 9 on; tests using it should assume {@link #isSupported}.
+ */
+final class RetainedSize {
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+
+    private RetainedSize() {
+    }
+
+    //Java 8 and before report their version as 1.x
+    static boolean isSupported() {
+        return System.getProperty("java.specification.version", "").startsWith("1.");
+    }
+
+    static long of(Object root) {
+        Map<Object, Boolean> seen = new IdentityHashMap<>();
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        long total = 0;
+        try {
+            while (!pending.isEmpty()) {
+                Object object = pending.pop();
+                if (seen.put(object, Boolean.TRUE) != null || object instanceof Class) {
+                    continue;
+                }
+                total += shallowSize(object, pending);
+            }
+        } catch (IllegalAccessException e) {
+            throw new AssertionError(e);
+        }
+        return total;
+    }
+
+    private static long shallowSize(Object object, Deque<Object> pending) throws IllegalAccessException {
+        Class<?> type = object.getClass();
+        if (type.isArray()) {
+            Class<?> component = type.getComponentType();
+            int length = Array.getLength(object);
+            if (!component.isPrimitive()) {
+                for (Object element : (Object[]) object) {
+                    if (element != null) {
+                        pending.push(element);
+                    }
+                }
+            }
+            return align(ARRAY_HEADER + (long) length * sizeOf(component));
+        }
+
+        long size = OBJECT_HEADER;
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                size += sizeOf(field.getType());
+                if (!field.getType().isPrimitive()) {
+                    field.setAccessible(true);
+                    Object value = field.get(object);
+                    if (value != null) {
+                        pending.push(value);
+                    }
+                }
+            }
+        }
+        return align(size);
+    }
+
+    private static int sizeOf(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return REFERENCE;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
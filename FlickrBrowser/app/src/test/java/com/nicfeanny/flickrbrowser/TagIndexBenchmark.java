@@ -0,0 +1,132 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Build time and AND / OR / prefix query times of {@link TagIndex} over 50,000 photos.
+ *
+ * The tags are drawn from a skewed vocabulary (a few tags on most photos, a long tail on a
+ * handful each) the way real flickr tags are, so the common tags have long posting lists.
+ */
+public class TagIndexBenchmark {
+    private static final int PHOTOS = 50000;
+    private static final int VOCABULARY = 5000;
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 1000;
+    //what "instant" has to mean for filtering as the user types
+    private static final double MAX_QUERY_MILLIS = 1.0;
+
+    private static String[] vocabulary;
+    private static Photo[] photos;
+    private static TagIndex index;
+
+    @BeforeClass
+    public static void buildIndex() {
+        Random random = new Random(42);
+        vocabulary = new String[VOCABULARY];
+        for (int i = 0; i < VOCABULARY; i++) {
+            vocabulary[i] = "tag" + i;
+        }
+        vocabulary[0] = "android";
+        vocabulary[1] = "nougat";
+        vocabulary[2] = "pixel";
+        vocabulary[3] = "landscape";
+
+        photos = new Photo[PHOTOS];
+        for (int i = 0; i < PHOTOS; i++) {
+            String[] tags = new String[2 + random.nextInt(9)];
+            for (int t = 0; t < tags.length; t++) {
+                //cubing a uniform number skews the picks towards the start of the vocabulary
+                double r = random.nextDouble();
+                tags[t] = vocabulary[(int) (r * r * r * VOCABULARY)];
+            }
+            photos[i] = new Photo("title " + i, "author", "1@N00", tags,
+                    "https://farm1.staticflickr.com/1/" + i + "_m.jpg");
+        }
+
+        long start = System.nanoTime();
+        index = new TagIndex();
+        for (Photo photo : photos) {
+            index.add(photo);
+        }
+        System.out.printf("TagIndex: %d photos, %d tags built in %.1fms%n",
+                index.size(), index.tagCount(), (System.nanoTime() - start) / 1e6);
+    }
+
+    @Test
+    public void and_isSubMillisecond() {
+        double millis = time(new Query() {
+            @Override
+            public int[] run() {
+                return index.and("android", "nougat");
+            }
+        });
+        report("and(android, nougat)", index.and("android", "nougat").length, millis);
+        assertTrue(index.and("android", "nougat").length > 0);
+        assertTrue("took " + millis + "ms", millis < MAX_QUERY_MILLIS);
+    }
+
+    @Test
+    public void or_isSubMillisecond() {
+        double millis = time(new Query() {
+            @Override
+            public int[] run() {
+                return index.or("pixel", "landscape", "tag100");
+            }
+        });
+        report("or(pixel, landscape, tag100)", index.or("pixel", "landscape", "tag100").length, millis);
+        assertTrue("took " + millis + "ms", millis < MAX_QUERY_MILLIS);
+    }
+
+    @Test
+    public void prefix_isSubMillisecond() {
+        double millis = time(new Query() {
+            @Override
+            public int[] run() {
+                return index.prefix("tag12");
+            }
+        });
+        report("prefix(tag12)", index.prefix("tag12").length, millis);
+        assertTrue(index.prefix("tag12").length > 0);
+        assertTrue("took " + millis + "ms", millis < MAX_QUERY_MILLIS);
+    }
+
+    @Test
+    public void and_matchesALinearScan() {
+        int expected = 0;
+        for (Photo photo : photos) {
+            if (photo.getTagList().contains("android") && photo.getTagList().contains("pixel")) {
+                expected++;
+            }
+        }
+        assertEquals(expected, index.and("pixel", "android").length);
+    }
+
+    private interface Query {
+        int[] run();
+    }
+
+    //average milliseconds per query
+    private static double time(Query query) {
+        int sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += query.run().length;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += query.run().length;
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+        assertTrue(sink > 0);
+        return millis;
+    }
+
+    private static void report(String query, int matches, double millis) {
+        System.out.printf("TagIndex: %s -> %d photos in %.3fms%n", query, matches, millis);
+    }
+}
@@ -0,0 +1,133 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * AND / OR / prefix queries over {@link TagIndex}, building it while a feed is parsed, and
+ * keeping it within its limit.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class TagIndexTest {
+
+    private static Photo photo(int n, String... tags) {
+        return new Photo("title " + n, "author", "1@N00", tags, "https://farm1.staticflickr.com/1/" + n + "_m.jpg");
+    }
+
+    private static TagIndex sample() {
+        TagIndex index = new TagIndex();
+        index.add(photo(0, "android", "nougat", "pixel"));
+        index.add(photo(1, "android", "oreo"));
+        index.add(photo(2, "nougat", "pixel"));
+        index.add(photo(3, "android", "nougat", "nexus"));
+        index.add(photo(4, "landscape"));
+        return index;
+    }
+
+    @Test
+    public void and_keepsPhotosWithEveryTag() {
+        TagIndex index = sample();
+
+        assertArrayEquals(new int[]{0, 3}, index.and("android", "nougat"));
+        assertArrayEquals(new int[]{0}, index.and("pixel", "android", "nougat"));
+        assertArrayEquals(new int[0], index.and("android", "landscape"));
+        assertArrayEquals(new int[0], index.and("android", "nosuchtag"));
+        assertArrayEquals(new int[]{0, 1, 3}, index.and("Android "));
+    }
+
+    @Test
+    public void or_keepsPhotosWithAnyTag() {
+        TagIndex index = sample();
+
+        assertArrayEquals(new int[]{0, 1, 2, 4}, index.or("landscape", "oreo", "nosuchtag", "oreo", "pixel"));
+        assertArrayEquals(new int[0], index.or());
+        assertEquals(2, index.or("pixel", "nosuchtag").length);
+    }
+
+    @Test
+    public void prefix_matchesEveryTagStartingWithIt() {
+        TagIndex index = sample();
+
+        assertArrayEquals(new int[]{0, 2, 3}, index.prefix("n"));
+        assertArrayEquals(new int[]{3}, index.prefix("nex"));
+        assertArrayEquals(new int[]{0, 1, 3}, index.prefix("android"));
+        assertArrayEquals(new int[0], index.prefix("z"));
+        assertEquals(index.size(), index.prefix("").length);
+    }
+
+    @Test
+    public void samePhotoTwice_keepsItsFirstId() {
+        TagIndex index = sample();
+
+        assertEquals(1, index.add(photo(1, "android", "oreo")));
+        assertEquals(5, index.size());
+        assertArrayEquals(new int[]{1}, index.and("oreo"));
+        assertEquals("title 3", index.get(index.and("nexus")).get(0).getTitle());
+    }
+
+    @Test
+    public void full_keepsWhatItHasAndIndexesNoMore() {
+        TagIndex index = new TagIndex(8);
+        for (int i = 0; i < 8; i++) {
+            index.add(photo(i, "android", i % 2 == 0 ? "even" : "odd"));
+        }
+        assertEquals(8, index.size());
+
+        assertEquals(-1, index.add(photo(8, "even")));
+        //one it has still answers with its id
+        assertEquals(2, index.add(photo(2, "android", "even")));
+
+        assertEquals(8, index.size());
+        assertEquals("title 0", index.get(0).getTitle());
+        assertEquals(4, index.and("even").length);
+        assertEquals(8, index.or("android").length);
+        assertEquals("title 6", index.getAny("even").get(3).getTitle());
+    }
+
+    @Test
+    public void memoryPressure_shrinksItUntilOver() {
+        TagIndex index = new TagIndex(8);
+        for (int i = 0; i < 8; i++) {
+            index.add(photo(i, "android"));
+        }
+
+        index.onMemoryPressure(MemoryGovernor.Pressure.MODERATE);
+        assertEquals(4, index.size());
+        assertEquals("title 4", index.get(0).getTitle());
+
+        index.onMemoryPressure(MemoryGovernor.Pressure.CRITICAL);
+        assertEquals(0, index.size());
+        assertEquals(-1, index.add(photo(9, "android")));
+        assertEquals(0, index.tagCount());
+
+        index.onMemoryPressure(MemoryGovernor.Pressure.NONE);
+        assertEquals(0, index.add(photo(9, "android")));
+    }
+
+    @Test
+    public void parsedFeed_isIndexedAsItIsParsed() throws Exception {
+        TagIndex index = new TagIndex();
+        byte[] feed = FeedParserBenchmark.readFixture("feeds/feed_android_nougat.json");
+        List<Photo> photos = new FlickrFeedParser(index).parse(new ByteArrayInputStream(feed));
+
+        assertEquals(photos.size(), index.size());
+        for (int id : index.and("android")) {
+            assertTrue(index.get(id).getTagList().contains("android"));
+        }
+        int withAndroid = 0;
+        for (Photo photo : photos) {
+            if (photo.getTagList().contains("android")) {
+                withAndroid++;
+            }
+        }
+        assertEquals(withAndroid, index.and("android").length);
+    }
+}
@@ -0,0 +1,200 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.net.Uri;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Splitting, parallel fetching and merging in {@link TagSearch}, against a loopback server
+ * which answers each tag slowly and with photos that partly overlap the other tags'.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class TagSearchTest {
+    private static final long RESPONSE_MILLIS = 300;
+
+    private LoopbackHttpServer server;
+    private String fixture;
+    private final List<Integer> updates = new ArrayList<>();
+    private int completions;
+    private int failures;
+    //every tag fails while set
+    private volatile boolean down;
+
+    private final TagSearch.Listener listener = new TagSearch.Listener() {
+        @Override
+        public void onResultsUpdated(List<Photo> results, int added) {
+            updates.add(added);
+        }
+
+        @Override
+        public void onSearchComplete(List<Photo> results, int failed) {
+            completions++;
+            failures = failed;
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        fixture = new String(FeedParserBenchmark.readFixture("feeds/feed_android_nougat.json"), "UTF-8");
+        server = new LoopbackHttpServer(new LoopbackHttpServer.Handler() {
+            @Override
+            public LoopbackHttpServer.Response handle(String path, Map<String, String> requestHeaders) {
+                String tag = Uri.parse("http://x" + path).getQueryParameter("tags");
+                try {
+                    Thread.sleep(RESPONSE_MILLIS);
+                    if (tag.equals("broken") || down) {
+                        LoopbackHttpServer.Response error = new LoopbackHttpServer.Response();
+                        error.code = 500;
+                        return error;
+                    }
+                    return LoopbackHttpServer.Response.ok(feedFor(tag).getBytes("UTF-8"));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void split_makesOneRequestPerDistinctTagAndLanguage() {
+        List<FeedRequest> requests = TagSearch.split("http://f", "android, Nougat  android,,pixel", "en-us", "de-de");
+
+        assertEquals(6, requests.size());
+        assertEquals("android", requests.get(0).getSearchCriteria());
+        assertEquals("de-de", requests.get(1).getLanguage());
+        assertEquals("nougat", requests.get(2).getSearchCriteria());
+    }
+
+    @Test
+    public void split_isCapped() {
+        assertEquals(TagSearch.MAX_REQUESTS, TagSearch.split("http://f", "a b c d e f g h i j").size());
+    }
+
+    @Test
+    public void results_areMergedWithoutDuplicates() throws Exception {
+        TagSearch search = new TagSearch(new FetchScheduler(4, new FeedCache(0, 1)), server.url("/feed"), listener);
+        search.search("android nougat pixel");
+        await(search);
+
+        //every tag shares its first ten photos with the others and has ten of its own
+        assertEquals(10 + 3 * 10, search.getResults().size());
+        assertEquals(1, completions);
+        assertEquals(3, updates.size());
+        assertEquals(20, (int) updates.get(0));
+    }
+
+    @Test
+    public void parallelRequests_takeAboutAsLongAsOne() throws Exception {
+        TagSearch search = new TagSearch(new FetchScheduler(4, new FeedCache(0, 1)), server.url("/feed"), listener);
+
+        long start = System.nanoTime();
+        search.search("a b c d");
+        await(search);
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(4, server.requests());
+        assertTrue("took " + millis + "ms", millis < 2 * RESPONSE_MILLIS);
+    }
+
+    @Test
+    public void failedRequest_stillCompletesWithTheOthers() throws Exception {
+        TagSearch search = new TagSearch(new FetchScheduler(4, new FeedCache(0, 1)), server.url("/feed"), listener);
+        search.search("android broken");
+        await(search);
+
+        assertEquals(1, completions);
+        assertEquals(1, failures);
+        assertEquals(20, search.getResults().size());
+    }
+
+    @Test
+    public void indexedPhotos_areTheFirstResults() throws Exception {
+        TagIndex index = new TagIndex();
+        index.add(new Photo("mine", "author", "1@N00", new String[]{"android"}, "https://farm1.staticflickr.com/1/1_m.jpg"));
+        index.add(new Photo("other", "author", "1@N00", new String[]{"landscape"}, "https://farm1.staticflickr.com/1/2_m.jpg"));
+        TagSearch search = new TagSearch(new FetchScheduler(4, new FeedCache(0, 1)), server.url("/feed"), index, listener);
+
+        search.search("Android");
+        //before any response
+        assertEquals(1, updates.size());
+        assertEquals(1, (int) updates.get(0));
+        assertEquals("mine", search.getResults().get(0).getTitle());
+
+        await(search);
+        assertEquals(1 + 20, search.getResults().size());
+        assertEquals(20, (int) updates.get(1));
+    }
+
+    @Test
+    public void failedRequest_withAStaleCopy_stillGivesItsPhotos() throws Exception {
+        //no TTL, the second search revalidates what the first one cached
+        TagSearch search = new TagSearch(new FetchScheduler(4, new FeedCache(0, 4)), server.url("/feed"), listener);
+        search.search("android");
+        await(search);
+
+        down = true;
+        search.search("android");
+        await(search);
+
+        assertEquals(2, completions);
+        assertEquals(1, failures);
+        assertEquals(20, search.getResults().size());
+    }
+
+    @Test
+    public void newSearch_dropsTheOldOnesResults() throws Exception {
+        TagSearch search = new TagSearch(new FetchScheduler(4, new FeedCache(0, 1)), server.url("/feed"), listener);
+        search.search("android nougat");
+        search.search("pixel");
+        await(search);
+        //give any stray answers from the first search time to arrive
+        Thread.sleep(RESPONSE_MILLIS);
+        Robolectric.flushForegroundThreadScheduler();
+
+        assertEquals(20, search.getResults().size());
+        assertEquals(1, completions);
+    }
+
+    /*
+    * The recorded feed with the media URLs of its last ten photos made unique to tag, so
+    * every tag's feed overlaps every other tag's by ten photos.
+    * */
+    private String feedFor(String tag) {
+        StringBuilder feed = new StringBuilder(fixture);
+        int from = 0;
+        for (int item = 0; item < 20; item++) {
+            int index = feed.indexOf("_m.jpg", feed.indexOf("\"m\":", from));
+            if (item >= 10) {
+                feed.insert(index, "_" + tag);
+            }
+            from = index + 1;
+        }
+        return feed.toString();
+    }
+
+    private static void await(TagSearch search) throws InterruptedException {
+        for (int i = 0; i < 1000 && search.isSearching(); i++) {
+            Thread.sleep(5);
+            Robolectric.flushForegroundThreadScheduler();
+        }
+        assertFalse("search did not finish", search.isSearching());
+    }
+}
@@ -0,0 +1,217 @@
+package com.nicfeanny.flickrbrowser;
+
+import android.graphics.Bitmap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * A scripted scroll over a grid of thumbnails served with a mobile-like latency, with and
+ * without {@link ThumbnailPrefetcher}, measuring how long cells spend on screen without their
+ * image (blank time, in cell-milliseconds) and how many images were downloaded.
+ *
+ * The script: a slow read-along scroll, a pause, a faster scroll, a fling that slows to a
+ * stop, and a slow scroll back up. The grid is simulated frame by frame on the main thread
+ * the way FlickrRecyclerViewAdapter binds and recycles cells; downloads and decodes are real.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class ThumbnailPrefetchBenchmark {
+    private static final int SPAN = 3;
+    private static final int CELL_PX = 100;
+    //rows on screen, the last one partly
+    private static final float VISIBLE_ROWS = 5.5f;
+    private static final int PHOTOS = 900;
+    private static final long FRAME_MILLIS = 16;
+    private static final long LATENCY_MILLIS = 60;
+
+    //rows per second for each step of the script, and how long it lasts
+    private static final float[][] SCRIPT = {
+            {3, 2000},
+            {0, 500},
+            {10, 1500},
+            {40, 300},
+            {20, 300},
+            {8, 300},
+            {0, 600},
+            {-3, 1500},
+            {0, 300},
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LoopbackHttpServer server;
+    private final List<Photo> photos = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LoopbackHttpServer(new LoopbackHttpServer.Handler() {
+            @Override
+            public LoopbackHttpServer.Response handle(String path, Map<String, String> requestHeaders) {
+                try {
+                    Thread.sleep(LATENCY_MILLIS);
+                } catch (InterruptedException ignored) {
+                }
+                return LoopbackHttpServer.Response.ok(new byte[4 * 1024]);
+            }
+        });
+        for (int i = 0; i < PHOTOS; i++) {
+            photos.add(new Photo("title", "author", "1@N00", new String[0], server.url("/" + i + "_abc_m.jpg")));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void scriptedScroll_blankTime() throws Exception {
+        Run withoutPrefetch = scroll(false);
+        Run withPrefetch = scroll(true);
+
+        System.out.println("ThumbnailPrefetchBenchmark without prefetch: " + withoutPrefetch);
+        System.out.println("ThumbnailPrefetchBenchmark with prefetch:    " + withPrefetch);
+        assertTrue(withPrefetch + " vs " + withoutPrefetch, withPrefetch.blankCellMillis < withoutPrefetch.blankCellMillis);
+    }
+
+    private static final class Run {
+        long blankCellMillis;
+        long visibleCellMillis;
+        int cellsShown;
+        int downloads;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d cells shown, blank %dms (%.1f%% of cell time, %.0fms/cell), %d downloads",
+                    cellsShown, blankCellMillis, 100.0 * blankCellMillis / visibleCellMillis,
+                    (double) blankCellMillis / cellsShown, downloads);
+        }
+    }
+
+    private Run scroll(boolean prefetch) throws Exception {
+        final ImageLoader imageLoader = new ImageLoader(32 * 1024 * 1024,
+                folder.newFolder(prefetch ? "prefetch" : "plain"), 64 * 1024 * 1024);
+        ThumbnailPrefetcher prefetcher = new ThumbnailPrefetcher(imageLoader, new ThumbnailPrefetcher.Photos() {
+            @Override
+            public int getItemCount() {
+                return photos.size();
+            }
+
+            @Override
+            public Photo getPhoto(int position) {
+                return photos.get(position);
+            }
+        }, SPAN, CELL_PX);
+
+        int requestsBefore = server.requests();
+        Run run = new Run();
+        //bound cells by position, as the adapter's view holders would be
+        Map<Integer, ImageLoader.Request> bound = new HashMap<>();
+        final Set<String> arrived = new HashSet<>();
+        ImageLoader.OnImageLoaded cell = new ImageLoader.OnImageLoaded() {
+            @Override
+            public void onImageLoaded(String url, Bitmap bitmap) {
+                if (bitmap != null) {
+                    arrived.add(url);
+                }
+            }
+        };
+
+        float rows = 0;
+        long start = System.nanoTime();
+        long frame = 0;
+        for (float[] step : SCRIPT) {
+            float rowsPerSecond = step[0];
+            long frames = (long) step[1] / FRAME_MILLIS;
+            for (long f = 0; f < frames; f++, frame++) {
+                //real time, so the downloads get the time they would have
+                long due = start / 1000000 + frame * FRAME_MILLIS;
+                long wait = due - System.nanoTime() / 1000000;
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                }
+                Robolectric.flushForegroundThreadScheduler();
+
+                float dRows = rowsPerSecond * FRAME_MILLIS / 1000;
+                rows = Math.max(0, rows + dRows);
+                int first = (int) rows * SPAN;
+                int last = Math.min(photos.size(), (int) Math.ceil(rows + VISIBLE_ROWS) * SPAN) - 1;
+
+                //recycled
+                List<Integer> gone = new ArrayList<>();
+                for (int position : bound.keySet()) {
+                    if (position < first || position > last) {
+                        gone.add(position);
+                    }
+                }
+                for (int position : gone) {
+                    ImageLoader.Request request = bound.remove(position);
+                    if (request != null) {
+                        request.cancel();
+                    }
+                }
+                //bound
+                for (int position = first; position <= last; position++) {
+                    if (bound.containsKey(position)) {
+                        continue;
+                    }
+                    String url = url(imageLoader, position);
+                    run.cellsShown++;
+                    if (imageLoader.getCached(url) != null) {
+                        arrived.add(url);
+                        bound.put(position, null);
+                    } else {
+                        bound.put(position, imageLoader.load(url, CELL_PX, CELL_PX, cell));
+                    }
+                }
+
+                if (prefetch) {
+                    if (rowsPerSecond == 0) {
+                        prefetcher.onScrollIdle(first, last);
+                    } else {
+                        prefetcher.onScrolled(first, last, Math.round(dRows * CELL_PX), due);
+                    }
+                }
+
+                for (int position = first; position <= last; position++) {
+                    run.visibleCellMillis += FRAME_MILLIS;
+                    if (!arrived.contains(url(imageLoader, position))) {
+                        run.blankCellMillis += FRAME_MILLIS;
+                    }
+                }
+            }
+        }
+        prefetcher.cancelAll();
+        for (ImageLoader.Request request : bound.values()) {
+            if (request != null) {
+                request.cancel();
+            }
+        }
+        run.downloads = server.requests() - requestsBefore;
+        return run;
+    }
+
+    //what the adapter would ask for
+    private String url(ImageLoader imageLoader, int position) {
+        return imageLoader.urlFor(photos.get(position), CELL_PX, CELL_PX, true);
+    }
+}
@@ -0,0 +1,189 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * What {@link ThumbnailPrefetcher} asks the ImageLoader for as the grid scrolls: how far
+ * ahead and in which order, the cap on downloads, cancelling and metered networks.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class ThumbnailPrefetcherTest {
+    private static final int SPAN = 3;
+    private static final int SIZE = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CountDownLatch hold = new CountDownLatch(1);
+    private LoopbackHttpServer server;
+    private ImageLoader imageLoader;
+    private ThumbnailPrefetcher prefetcher;
+    private final List<Photo> photos = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LoopbackHttpServer(new LoopbackHttpServer.Handler() {
+            @Override
+            public LoopbackHttpServer.Response handle(String path, Map<String, String> requestHeaders) {
+                try {
+                    hold.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+                return LoopbackHttpServer.Response.ok(new byte[]{1, 2, 3, 4});
+            }
+        });
+        for (int i = 0; i < 300; i++) {
+            photos.add(new Photo("title", "author", "1@N00", new String[0], server.url("/" + i + "_abc_m.jpg")));
+        }
+        imageLoader = new ImageLoader(1024 * 1024, folder.newFolder("images"), 1024 * 1024);
+        prefetcher = new ThumbnailPrefetcher(imageLoader, new ThumbnailPrefetcher.Photos() {
+            @Override
+            public int getItemCount() {
+                return photos.size();
+            }
+
+            @Override
+            public Photo getPhoto(int position) {
+                return photos.get(position);
+            }
+        }, SPAN, SIZE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        prefetcher.cancelAll();
+        hold.countDown();
+        server.close();
+    }
+
+    @Test
+    public void idle_prefetchesMinRowsBelowThenOneAbove() {
+        prefetcher.onScrollIdle(30, 44);
+
+        List<Integer> wanted = prefetcher.wanted();
+        //two rows below, nearest first, then the row above
+        assertEquals(Arrays.asList(45, 46, 47, 48, 49, 50, 29, 28, 27), wanted);
+        assertEquals(ThumbnailPrefetcher.MAX_IN_FLIGHT, prefetcher.getInFlight());
+    }
+
+    @Test
+    public void fasterScrolling_looksFurtherAhead() {
+        prefetcher.onScrolled(30, 44, 0, 1000);
+        //5 rows a second
+        scroll(5 * SIZE, 1000);
+        int slow = prefetcher.wanted().size();
+
+        prefetcher.onScrollIdle(30, 44);
+        prefetcher.onScrolled(30, 44, 0, 1000);
+        //20 rows a second, more than MAX_ROWS_AHEAD
+        scroll(20 * SIZE, 1000);
+        List<Integer> fast = prefetcher.wanted();
+
+        assertEquals((5 + ThumbnailPrefetcher.ROWS_BEHIND) * SPAN, slow);
+        assertEquals((ThumbnailPrefetcher.MAX_ROWS_AHEAD + ThumbnailPrefetcher.ROWS_BEHIND) * SPAN, fast.size());
+        assertEquals(45, (int) fast.get(0));
+    }
+
+    @Test
+    public void scrollingUp_prefetchesAboveFirst() {
+        prefetcher.onScrolled(30, 44, 0, 1000);
+        scroll(-3 * SIZE, 1000);
+
+        List<Integer> wanted = prefetcher.wanted();
+        assertTrue(prefetcher.getVelocity() < 0);
+        assertEquals(29, (int) wanted.get(0));
+        assertEquals(45, (int) wanted.get(wanted.size() - SPAN));
+    }
+
+    @Test
+    public void fling_prefetchesNothingAndCancels() {
+        prefetcher.onScrollIdle(30, 44);
+        assertEquals(ThumbnailPrefetcher.MAX_IN_FLIGHT, prefetcher.getInFlight());
+
+        prefetcher.onScrolled(30, 44, 0, 1000);
+        //a row every frame
+        prefetcher.onScrolled(33, 47, SIZE, 1016);
+        prefetcher.onScrolled(36, 50, SIZE, 1032);
+
+        assertTrue(prefetcher.getVelocity() > ThumbnailPrefetcher.FLING_ROWS_PER_SECOND);
+        assertTrue(prefetcher.wanted().isEmpty());
+        assertEquals(0, prefetcher.getInFlight());
+    }
+
+    @Test
+    public void scrolledOutOfRange_cancelsAndMovesOn() {
+        prefetcher.onScrollIdle(30, 44);
+        prefetcher.onScrollIdle(150, 164);
+
+        assertEquals(ThumbnailPrefetcher.MAX_IN_FLIGHT, prefetcher.getInFlight());
+        assertFalse(prefetcher.isPrefetching(url(45)));
+        assertTrue(prefetcher.isPrefetching(url(165)));
+        assertTrue(prefetcher.isPrefetching(url(166)));
+    }
+
+    @Test
+    public void metered_prefetchesNothing() {
+        prefetcher.setMetered(true);
+        prefetcher.onScrollIdle(30, 44);
+
+        assertTrue(prefetcher.wanted().isEmpty());
+        assertEquals(0, prefetcher.getInFlight());
+
+        prefetcher.setMetered(false);
+        assertEquals(ThumbnailPrefetcher.MAX_IN_FLIGHT, prefetcher.getInFlight());
+    }
+
+    @Test
+    public void finishedPrefetch_queuesTheNext() throws Exception {
+        prefetcher.onScrollIdle(30, 44);
+        hold.countDown();
+
+        //all nine wanted are loaded, two at a time
+        long deadline = System.currentTimeMillis() + 5000;
+        while (countCached(prefetcher.wanted()) < 9 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            Robolectric.flushForegroundThreadScheduler();
+        }
+        assertEquals(9, countCached(prefetcher.wanted()));
+        assertEquals(0, prefetcher.getInFlight());
+    }
+
+    //dy pixels over millis, in a few onScrolled calls
+    private void scroll(int dy, long millis) {
+        for (int i = 1; i <= 4; i++) {
+            prefetcher.onScrolled(30, 44, dy / 4, 1000 + millis * i / 4);
+        }
+    }
+
+    private String url(int position) {
+        return imageLoader.urlFor(photos.get(position), SIZE, SIZE, true);
+    }
+
+    private int countCached(List<Integer> positions) {
+        int cached = 0;
+        for (int position : positions) {
+            if (imageLoader.getCached(url(position)) != null) {
+                cached++;
+            }
+        }
+        return cached;
+    }
+}
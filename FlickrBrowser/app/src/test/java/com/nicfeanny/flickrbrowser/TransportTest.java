@@ -0,0 +1,127 @@
+package com.nicfeanny.flickrbrowser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Connection reuse, timeouts and per-request timing of {@link HttpURLConnectionTransport},
+ * checked by counting the connections a loopback server accepts.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class TransportTest {
+    private static final int REQUESTS = 10;
+
+    private LoopbackHttpServer server;
+    private byte[] feed;
+    private volatile long delayMillis;
+    private volatile boolean gzip;
+
+    @Before
+    public void setUp() throws Exception {
+        feed = FeedParserBenchmark.readFixture("feeds/feed_android_nougat.json");
+        server = new LoopbackHttpServer(new LoopbackHttpServer.Handler() {
+            @Override
+            public LoopbackHttpServer.Response handle(String path, Map<String, String> requestHeaders) {
+                try {
+                    if (delayMillis > 0) {
+                        Thread.sleep(delayMillis);
+                    }
+                    LoopbackHttpServer.Response response = LoopbackHttpServer.Response.ok(feed);
+                    return gzip ? response.gzip() : response;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void keepAlive_reusesOneConnection() {
+        Transport transport = new HttpURLConnectionTransport();
+        for (int i = 0; i < REQUESTS; i++) {
+            download(transport);
+        }
+
+        assertEquals(REQUESTS, server.requests());
+        assertEquals(1, server.acceptedConnections());
+    }
+
+    @Test
+    public void keepAlive_reusesConnectionForGzipAndStreamedBodies() {
+        gzip = true;
+        Transport transport = new HttpURLConnectionTransport();
+        for (int i = 0; i < REQUESTS; i++) {
+            DownloadStatus status = new GetRawData(transport).streamInSameThread(server.url("/feed"),
+                    new GetRawData.OnStreamAvailable() {
+                        @Override
+                        public void onStreamAvailable(InputStream stream) throws IOException {
+                            assertEquals(20, new FlickrFeedParser().parse(stream).size());
+                        }
+                    });
+            assertEquals(DownloadStatus.OK, status);
+        }
+
+        assertEquals(1, server.acceptedConnections());
+    }
+
+    @Test
+    public void withoutKeepAlive_connectsEveryTime() {
+        Transport transport = new HttpURLConnectionTransport(1000, 1000, false);
+        for (int i = 0; i < REQUESTS; i++) {
+            download(transport);
+        }
+
+        assertEquals(REQUESTS, server.acceptedConnections());
+    }
+
+    @Test
+    public void readTimeout_failsInsteadOfBlocking() {
+        delayMillis = 2000;
+        Transport transport = new HttpURLConnectionTransport(1000, 200, true);
+
+        long start = System.nanoTime();
+        GetRawData getRawData = new GetRawData(transport);
+        RawResponse body = getRawData.downloadInSameThread(server.url("/slow"));
+
+        assertNull(body);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1500);
+    }
+
+    @Test
+    public void timing_isRecordedPerRequest() {
+        delayMillis = 50;
+        GetRawData getRawData = new GetRawData(new HttpURLConnectionTransport());
+        RawResponse body = getRawData.downloadInSameThread(server.url("/feed"));
+        body.release();
+
+        RequestTiming timing = getRawData.getLastTiming();
+        assertNotNull(timing);
+        assertTrue(timing.toString(), TimeUnit.NANOSECONDS.toMillis(timing.getTtfbNanos()) >= 40);
+        assertTrue(timing.getBodyNanos() >= 0);
+        assertTrue(timing.getTotalNanos() >= timing.getTtfbNanos());
+    }
+
+    private void download(Transport transport) {
+        RawResponse body = new GetRawData(transport).downloadInSameThread(server.url("/feed"));
+        assertNotNull(body);
+        assertEquals(feed.length, body.length());
+        body.release();
+    }
+}